@@ -0,0 +1,78 @@
+package Benchmark;
+
+// Small measurement loop shared by the benchmarks: warm-up iterations to let the JIT settle,
+// then timed iterations reported as average time per iteration and operations per second.
+public class BenchmarkRunner {
+
+    // Results are written here so the JIT cannot drop the measured work as dead code
+    public static volatile double sink;
+
+    // Body of a benchmark iteration
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    // Outcome of one measured benchmark
+    public static class Result {
+        public final String name;
+        public final double millisPerIteration;
+        public final double operationsPerSecond;
+        public final double relativeError;   // standard deviation of the iteration times / their mean
+
+        public Result(String name, double millisPerIteration, double operationsPerSecond, double relativeError) {
+            this.name = name;
+            this.millisPerIteration = millisPerIteration;
+            this.operationsPerSecond = operationsPerSecond;
+            this.relativeError = relativeError;
+        }
+    }
+
+    // Method to run the warm-up and measured iterations and print one result line.
+    // Every measured iteration is timed on its own, so the spread between iterations is reported as well.
+    public static Result measure(String name, int warmupIterations, int measuredIterations,
+                                 long operationsPerIteration, Body body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            body.run();
+        }
+
+        long[] times = new long[measuredIterations];
+        long elapsed = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            long startTime = System.nanoTime();
+            body.run();
+            times[i] = System.nanoTime() - startTime;
+            elapsed += times[i];
+        }
+
+        double mean = (double) elapsed / measuredIterations;
+        double variance = 0;
+        for (long time : times) {
+            variance += (time - mean) * (time - mean);
+        }
+        double relativeError = measuredIterations > 1 ? Math.sqrt(variance / (measuredIterations - 1)) / mean : 0;
+
+        double millisPerIteration = mean / 1_000_000.0;
+        double operationsPerSecond = operationsPerIteration * measuredIterations / (elapsed / 1_000_000_000.0);
+        System.out.printf("%-45s %12.3f ms/iter %16.0f ops/s  +/- %4.1f%%%n",
+                name, millisPerIteration, operationsPerSecond, relativeError * 100);
+        return new Result(name, millisPerIteration, operationsPerSecond, relativeError);
+    }
+
+    // Method to read the heap currently in use after asking for a GC (approximate, for footprint reports)
+    public static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Method to read the bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
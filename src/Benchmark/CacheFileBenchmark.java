@@ -0,0 +1,95 @@
+package Benchmark;
+
+import main.DistanceCache;
+import main.DistanceCacheFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Compares the Java-serialized Map<String, Double> cache file with the binary DistanceCacheFile:
+// file size, time to save, and time from startup until the first lookup can be answered.
+// Usage: CacheFileBenchmark [entries]  (default 2,000,000)
+public class CacheFileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Random random = new Random(3);
+
+        Map<String, Double> legacy = new HashMap<>();
+        DistanceCacheFile.RecordBuffer binary = new DistanceCacheFile.RecordBuffer();
+        long probeFrom = 0, probeTo = 0;
+        long[] hitFrom = new long[Math.min(entries, 100_000)];
+        long[] hitTo = new long[hitFrom.length];
+        for (int i = 0; i < entries; i++) {
+            double lat1 = 35.6 + random.nextInt(200_000) * 1e-6;
+            double lng1 = 51.3 + random.nextInt(200_000) * 1e-6;
+            double lat2 = lat1 + random.nextInt(2_000) * 1e-6;
+            double lng2 = lng1 + random.nextInt(2_000) * 1e-6;
+            double distance = random.nextDouble();
+            legacy.put(lat1 + "," + lng1 + "," + lat2 + "," + lng2, distance);
+            probeFrom = DistanceCache.packPoint(lat1, lng1);
+            probeTo = DistanceCache.packPoint(lat2, lng2);
+            binary.add(probeFrom, probeTo, distance);
+            if (i < hitFrom.length) {
+                hitFrom[i] = probeFrom;
+                hitTo[i] = probeTo;
+            }
+        }
+
+        Path serPath = Files.createTempFile("distanceCache", ".ser");
+        Path binPath = Files.createTempFile("distanceCache", ".bin");
+        try {
+            long start = System.nanoTime();
+            try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serPath.toFile())))) {
+                oos.writeObject(legacy);
+            }
+            long serSave = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            DistanceCacheFile.write(binPath, binary);
+            long binSave = System.nanoTime() - start;
+            legacy = null;
+
+            start = System.nanoTime();
+            double serValue;
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serPath.toFile())))) {
+                @SuppressWarnings("unchecked")
+                Map<String, Double> loaded = (Map<String, Double>) ois.readObject();
+                serValue = loaded.size();
+            }
+            long serLoad = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double binValue;
+            try (DistanceCacheFile file = DistanceCacheFile.open(binPath)) {
+                binValue = file.lookup(probeFrom, probeTo);
+            }
+            long binLoad = System.nanoTime() - start;
+            BenchmarkRunner.sink = serValue + binValue;
+
+            System.out.printf("Entries: %d%n", entries);
+            System.out.printf(".ser (Java serialization): %8.1f MB, save %7d ms, load until first lookup %7d ms%n",
+                    Files.size(serPath) / 1e6, serSave / 1_000_000, serLoad / 1_000_000);
+            System.out.printf(".bin (mapped, checksummed): %7.1f MB, save %7d ms, open until first lookup %7d ms%n",
+                    Files.size(binPath) / 1e6, binSave / 1_000_000, binLoad / 1_000_000);
+
+            // Lookup throughput in the mapped file
+            try (DistanceCacheFile file = DistanceCacheFile.open(binPath)) {
+                BenchmarkRunner.measure(".bin lookups (hits)", 3, 5, hitFrom.length, () -> {
+                    double total = 0;
+                    for (int i = 0; i < hitFrom.length; i++) {
+                        total += file.lookup(hitFrom[i], hitTo[i]);
+                    }
+                    BenchmarkRunner.sink = total;
+                });
+            }
+        } finally {
+            Files.deleteIfExists(serPath);
+            Files.deleteIfExists(binPath);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package Benchmark;
+
+import main.CheckpointedRun;
+import main.DeliveryFareEstimation;
+
+import java.io.File;
+
+// Measures the checkpoint overhead: the streaming mode against CheckpointedRun with the default interval
+// (32 MB of input) and with a checkpoint every 1 MB, each checkpoint forcing the output and the checkpoint to disk.
+// Usage: CheckpointBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class CheckpointBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("checkpoint", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File output = File.createTempFile("checkpoint", ".out.csv");
+        output.deleteOnExit();
+        int points = DeliveryFareEstimation.readData(path).size();
+
+        BenchmarkRunner.measure("streaming", 2, 5, points,
+                () -> DeliveryFareEstimation.processStreaming(path, output.getPath()));
+        BenchmarkRunner.measure("checkpointed, every 32 MB", 2, 5, points,
+                () -> new CheckpointedRun(32L << 20).run(path, output.getPath()));
+        BenchmarkRunner.measure("checkpointed, every 1 MB", 2, 5, points,
+                () -> new CheckpointedRun(1L << 20).run(path, output.getPath()));
+    }
+}
@@ -0,0 +1,52 @@
+package Benchmark;
+
+import main.DistanceCalculator;
+
+import java.util.Random;
+
+// Measures DistanceCalculator.haversine with the cache off and on for inputs with different amounts of
+// repetition, to show when the cache beats recomputing the distance.
+public class DistanceCacheBenchmark {
+
+    private static final int LOOKUPS = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        // Number of distinct coordinate pairs in the lookup stream: from a few hot routes to all unique
+        for (int distinctPairs : new int[]{1_000, 100_000, LOOKUPS}) {
+            double[] coordinates = pairs(distinctPairs, LOOKUPS, new Random(11));
+            System.out.println("Distinct pairs: " + distinctPairs + " in " + LOOKUPS + " lookups");
+
+            DistanceCalculator.disableCache();
+            BenchmarkRunner.measure("  haversine, cache off", 3, 5, LOOKUPS, () -> run(coordinates));
+
+            DistanceCalculator.enableCache(1 << 20);
+            BenchmarkRunner.measure("  haversine, cache on (1M entries)", 3, 5, LOOKUPS, () -> run(coordinates));
+            System.out.printf("  hit ratio: %.3f%n", DistanceCalculator.getCache().hitRatio());
+            DistanceCalculator.disableCache();
+        }
+    }
+
+    // Method to build a lookup stream of lat1,lng1,lat2,lng2 drawn from a pool of distinct pairs
+    private static double[] pairs(int distinctPairs, int lookups, Random random) {
+        double[] pool = new double[distinctPairs * 4];
+        for (int i = 0; i < pool.length; i += 4) {
+            pool[i] = 35.6 + random.nextInt(200_000) * 1e-6;
+            pool[i + 1] = 51.3 + random.nextInt(200_000) * 1e-6;
+            pool[i + 2] = pool[i] + (random.nextDouble() - 0.5) * 0.002;
+            pool[i + 3] = pool[i + 1] + (random.nextDouble() - 0.5) * 0.002;
+        }
+        double[] stream = new double[lookups * 4];
+        for (int i = 0; i < lookups; i++) {
+            System.arraycopy(pool, random.nextInt(distinctPairs) * 4, stream, i * 4, 4);
+        }
+        return stream;
+    }
+
+    private static void run(double[] coordinates) {
+        double total = 0;
+        for (int i = 0; i < coordinates.length; i += 4) {
+            total += DistanceCalculator.haversine(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+        }
+        BenchmarkRunner.sink = total;
+    }
+}
@@ -0,0 +1,70 @@
+package Benchmark;
+
+import main.MultiFileProcessor;
+import main.MultiFileProcessor.ExecutionMode;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Compares the fixed pool, fork/join and virtual-thread modes of MultiFileProcessor on many input files:
+// once with local files only (CPU and local disk), once with 100 ms of extra blocking latency per file, as if
+// every file were fetched from a remote store first. Platform pools get one thread per core.
+public class ExecutionModeBenchmark {
+
+    private static final int FILES = 32;
+    private static final int POINTS_PER_FILE = 50_000;
+    private static final long LATENCY_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("executionModes").toFile();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            String path = new File(directory, "city" + i + ".csv").getPath();
+            SyntheticData.writeTrips(path, POINTS_PER_FILE, i);
+            inputs.add(path);
+        }
+        File outputDir = new File(directory, "out");
+        outputDir.mkdirs();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(FILES + " files of " + POINTS_PER_FILE + " points, " + cores + " core(s)");
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            BenchmarkRunner.measure(mode + ", local files", 1, 3, FILES, () -> BenchmarkRunner.sink =
+                    MultiFileProcessor.process(inputs, outputDir.getPath(), mode, cores, 256L * 1024 * 1024).size());
+        }
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            BenchmarkRunner.measure(mode + ", +" + LATENCY_MILLIS + " ms latency per file", 1, 3, FILES,
+                    () -> BenchmarkRunner.sink = withLatency(inputs, outputDir.getPath(), mode, cores));
+        }
+
+        for (File file : outputDir.listFiles()) {
+            file.delete();
+        }
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    // Method to process every file on the executor of the mode after a blocking wait, like a remote fetch
+    private static int withLatency(List<String> inputs, String outputDir, ExecutionMode mode, int parallelism) throws Exception {
+        try (ExecutorService executor = MultiFileProcessor.newExecutor(mode, parallelism)) {
+            List<Future<MultiFileProcessor.FileResult>> futures = new ArrayList<>();
+            for (String input : inputs) {
+                futures.add(executor.submit(() -> {
+                    Thread.sleep(LATENCY_MILLIS);
+                    return MultiFileProcessor.processFile(input, MultiFileProcessor.outputPathFor(input, outputDir));
+                }));
+            }
+            int deliveries = 0;
+            for (Future<MultiFileProcessor.FileResult> future : futures) {
+                deliveries += future.get().deliveries;
+            }
+            return deliveries;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Benchmark;
+
+import main.FareAccumulator;
+
+import java.util.Random;
+
+// Measures the heap used per open FareAccumulator and the update rate of a live feed where the points
+// of many open deliveries arrive interleaved.
+public class FareAccumulatorBenchmark {
+
+    private static final int OPEN_DELIVERIES = 500_000;
+    private static final int UPDATES = 5_000_000;
+
+    public static void main(String[] args) throws Exception {
+        long baseline = BenchmarkRunner.usedHeapBytes();
+        FareAccumulator[] accumulators = new FareAccumulator[OPEN_DELIVERIES];
+        for (int i = 0; i < OPEN_DELIVERIES; i++) {
+            accumulators[i] = new FareAccumulator(i);
+        }
+        long bytes = BenchmarkRunner.usedHeapBytes() - baseline;
+        System.out.printf("%d open deliveries: %.1f MB, %.1f bytes per delivery (including the array slot)%n",
+                OPEN_DELIVERIES, bytes / 1e6, (double) bytes / OPEN_DELIVERIES);
+
+        // Each update moves a random delivery by up to ~100 m, 30 s after its previous point
+        Random random = new Random(5);
+        int[] order = new int[UPDATES];
+        double[] steps = new double[UPDATES * 2];
+        for (int i = 0; i < UPDATES; i++) {
+            order[i] = random.nextInt(OPEN_DELIVERIES);
+            steps[i * 2] = (random.nextDouble() - 0.5) * 0.001;
+            steps[i * 2 + 1] = (random.nextDouble() - 0.5) * 0.001;
+        }
+        double[] lats = new double[OPEN_DELIVERIES];
+        double[] lngs = new double[OPEN_DELIVERIES];
+        long[] timestamps = new long[OPEN_DELIVERIES];
+        for (int i = 0; i < OPEN_DELIVERIES; i++) {
+            lats[i] = 35.6 + random.nextDouble() * 0.2;
+            lngs[i] = 51.3 + random.nextDouble() * 0.2;
+            timestamps[i] = 1723600000L + random.nextInt(86400);
+        }
+
+        BenchmarkRunner.measure("FareAccumulator.accept, interleaved", 2, 5, UPDATES, () -> {
+            double total = 0;
+            for (int i = 0; i < UPDATES; i++) {
+                int d = order[i];
+                lats[d] += steps[i * 2];
+                lngs[d] += steps[i * 2 + 1];
+                timestamps[d] += 30;
+                accumulators[d].accept(lats[d], lngs[d], timestamps[d]);
+                total += accumulators[d].currentFare();
+            }
+            BenchmarkRunner.sink = total;
+        });
+    }
+}
@@ -0,0 +1,133 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareMetrics;
+import main.FareService;
+import main.ForkJoinPricer;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load test of FareService over localhost: closed-loop clients on virtual threads each POST requests of a few
+// deliveries taken from generated trips, and the latency of every request is recorded. Without a url it starts the
+// service in process, once micro-batched (-Dfare.service.batchDeliveries, default 256) and once with batching off,
+// after an unreported round of both.
+// Usage: FareServiceLoadTest [clients] [deliveriesPerRequest] [seconds] [url]  (default 64 1 10)
+public class FareServiceLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int deliveriesPerRequest = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        FareService.enableNoDelay();
+
+        File tempFile = File.createTempFile("loadtest", ".csv");
+        tempFile.deleteOnExit();
+        SyntheticData.writeTrips(tempFile.getPath(), 200_000, 42);
+        List<String> bodies = requestBodies(DeliveryFareEstimation.readData(tempFile.getPath()), deliveriesPerRequest);
+
+        if (args.length > 3) {
+            run(args[3], "service at " + args[3], bodies, clients, seconds, true);
+            return;
+        }
+        // The first round of both configurations only warms up the JIT (client and server share the JVM)
+        int batchDeliveries = Integer.getInteger("fare.service.batchDeliveries", 256);
+        for (boolean report : new boolean[]{false, true}) {
+            for (int maxBatch : new int[]{batchDeliveries, 1}) {
+                try (FareService service = new FareService(0, ForkJoinPricer.defaultParallelism(), maxBatch,
+                        Long.getLong("fare.service.batchDelayMicros", 0))) {
+                    service.start();
+                    String label = maxBatch == 1 ? "no batching" : "batches up to " + maxBatch + " deliveries";
+                    run("http://localhost:" + service.port() + "/fares", label, bodies, clients, seconds, report);
+                    if (report) {
+                        System.out.printf("  %.1f deliveries per batch%n",
+                                (double) service.deliveries() / Math.max(1, service.batches()));
+                    }
+                }
+            }
+        }
+    }
+
+    // Method to run the clients for a warmup of a quarter of the time, then measure for the given seconds
+    private static void run(String url, String label, List<String> bodies, int clients, int seconds,
+                            boolean report) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create(url);
+        load(client, uri, bodies, clients, Math.max(1, seconds / 4) * 1_000_000_000L, new FareMetrics.LatencyHistogram(), new LongAdder());
+
+        FareMetrics.LatencyHistogram latency = new FareMetrics.LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        load(client, uri, bodies, clients, seconds * 1_000_000_000L, latency, errors);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        if (!report) {
+            return;
+        }
+
+        System.out.printf("%-40s %6d clients  %9.0f req/s  p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms  %d errors%n",
+                label, clients, latency.count() / elapsed, latency.percentile(0.50) / 1e6,
+                latency.percentile(0.99) / 1e6, latency.max() / 1e6, errors.sum());
+    }
+
+    private static void load(HttpClient client, URI uri, List<String> bodies, int clients, long durationNanos,
+                             FareMetrics.LatencyHistogram latency, LongAdder errors) throws InterruptedException {
+        long end = System.nanoTime() + durationNanos;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                int first = c;
+                executor.submit(() -> {
+                    for (int i = first; System.nanoTime() < end; i += clients) {
+                        HttpRequest request = HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofString(bodies.get(i % bodies.size()))).build();
+                        long requestStart = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                errors.increment();
+                            }
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                        latency.record(System.nanoTime() - requestStart);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    // Method to cut the trips into request bodies of deliveriesPerRequest whole deliveries each
+    private static List<String> requestBodies(List<DeliveryPoint> points, int deliveriesPerRequest) {
+        Map<Integer, StringBuilder> deliveries = new LinkedHashMap<>();
+        for (DeliveryPoint point : points) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new StringBuilder()).append(point.idDelivery).append(',')
+                    .append(point.lat).append(',').append(point.lng).append(',').append(point.timestamp).append('\n');
+        }
+        List<String> bodies = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        int count = 0;
+        for (StringBuilder delivery : deliveries.values()) {
+            body.append(delivery);
+            if (++count == deliveriesPerRequest) {
+                bodies.add(body.toString());
+                body.setLength(0);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            bodies.add(body.toString());
+        }
+        return bodies;
+    }
+}
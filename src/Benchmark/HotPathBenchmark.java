@@ -0,0 +1,122 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.DistanceCalculator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Measures every stage of the pricing path separately, so I/O, JIT warm-up and pool startup do not blur
+// into the single "Execution time" that main prints:
+// readData, filterInvalidPoints, haversine / calculateSpeed with the cache off and on, calculateFare for
+// day, night, midnight-crossing and idle segments, and the full DeliveryTask.
+// Usage: HotPathBenchmark [1M|10M|100M|points|input.csv]  (default 1M generated points)
+public class HotPathBenchmark {
+
+    // Local midnight of 2024-08-14 in Tehran (+03:30)
+    private static final long MIDNIGHT = 1723580000L - Math.floorMod(1723580000L + 12600, 86400);
+
+    private static final int SEGMENTS_PER_CLASS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("hotpath", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData(path);
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : points) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        int rows = points.size();
+        int segments = rows - 1;
+        System.out.println("Input: " + path + " (" + rows + " points, " + deliveries.size() + " deliveries)");
+
+        int iterations = rows > 20_000_000 ? 2 : 5;
+        BenchmarkRunner.measure("readData", 1, iterations, rows,
+                () -> BenchmarkRunner.sink = DeliveryFareEstimation.readData(path).size());
+
+        BenchmarkRunner.measure("filterInvalidPoints", 2, iterations, rows, () -> {
+            long kept = 0;
+            for (List<DeliveryPoint> delivery : deliveries.values()) {
+                kept += DeliveryFareEstimation.filterInvalidPoints(delivery).size();
+            }
+            BenchmarkRunner.sink = kept;
+        });
+
+        // Distances between consecutive rows, with the cache off and then on; the second pass over the same
+        // pairs shows the cost of a hit
+        DistanceCalculator.disableCache();
+        measureDistances("cache off", points, segments, iterations);
+        DistanceCalculator.enableCache(1 << 22);
+        measureDistances("cache on", points, segments, iterations);
+        System.out.printf("  cache hit ratio: %.3f%n", DistanceCalculator.getCache().hitRatio());
+        DistanceCalculator.disableCache();
+
+        // calculateFare for two-point deliveries of one tariff class each
+        measureFares("calculateFare, day segments", segmentsAt(MIDNIGHT + 12 * 3600, 60, 0.3));
+        measureFares("calculateFare, night segments", segmentsAt(MIDNIGHT + 2 * 3600, 60, 0.3));
+        measureFares("calculateFare, midnight-crossing segments", segmentsAt(MIDNIGHT - 30, 60, 0.3));
+        measureFares("calculateFare, night-to-day segments", segmentsAt(MIDNIGHT + 5 * 3600 - 30, 60, 0.3));
+        measureFares("calculateFare, idle segments", segmentsAt(MIDNIGHT + 12 * 3600, 60, 0.1));
+
+        // The full per-batch path: filter and price every delivery into a map
+        BenchmarkRunner.measure("DeliveryTask.call (filter + fare)", 2, iterations, deliveries.size(),
+                () -> BenchmarkRunner.sink = new DeliveryFareEstimation.DeliveryTask(deliveries).call().size());
+    }
+
+    private static void measureDistances(String label, List<DeliveryPoint> points, int segments, int iterations) throws Exception {
+        BenchmarkRunner.measure("haversine, " + label, 1, iterations, segments, () -> {
+            double total = 0;
+            for (int i = 1; i < points.size(); i++) {
+                DeliveryPoint p1 = points.get(i - 1);
+                DeliveryPoint p2 = points.get(i);
+                total += DistanceCalculator.haversine(p1.lat, p1.lng, p2.lat, p2.lng);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("calculateSpeed, " + label, 1, iterations, segments, () -> {
+            double total = 0;
+            for (int i = 1; i < points.size(); i++) {
+                total += DistanceCalculator.calculateSpeed(points.get(i - 1), points.get(i));
+            }
+            BenchmarkRunner.sink = total;
+        });
+    }
+
+    private static void measureFares(String name, List<List<DeliveryPoint>> segments) throws Exception {
+        BenchmarkRunner.measure(name, 3, 5, segments.size(), () -> {
+            double total = 0;
+            for (List<DeliveryPoint> segment : segments) {
+                total += DeliveryFareEstimation.calculateFare(segment);
+            }
+            BenchmarkRunner.sink = total;
+        });
+    }
+
+    // Method to build two-point deliveries starting at the given local time (moved by up to 20 minutes),
+    // lasting durationSeconds and covering about distanceKm
+    private static List<List<DeliveryPoint>> segmentsAt(long start, int durationSeconds, double distanceKm) {
+        List<List<DeliveryPoint>> segments = new ArrayList<>(SEGMENTS_PER_CLASS);
+        for (int i = 0; i < SEGMENTS_PER_CLASS; i++) {
+            long timestamp = start + i % 20 - (i % 7) * 86400L;
+            double lat = 35.7 + (i % 1000) * 1e-4;
+            List<DeliveryPoint> segment = new ArrayList<>(2);
+            segment.add(new DeliveryPoint(i, lat, 51.4, timestamp));
+            segment.add(new DeliveryPoint(i, lat + distanceKm / 111.2, 51.4, timestamp + durationSeconds));
+            segments.add(segment);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,82 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ForkJoinPricer;
+import main.IncrementalPricer;
+import main.ParallelCsvReader;
+import main.SortedFareRuns;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares a full batch run with incremental runs against the index of the original input, where 0%, 1% and 10%
+// of the deliveries changed (their timestamps moved by one second). The index is restored before every iteration.
+// Usage: IncrementalBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class IncrementalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("incremental", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File output = File.createTempFile("incremental", ".out.csv");
+        output.deleteOnExit();
+        File index = new File(output.getPath() + ".index");
+        index.deleteOnExit();
+        File baseIndex = File.createTempFile("incremental", ".base.index");
+        baseIndex.deleteOnExit();
+
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData(path);
+        int parallelism = ForkJoinPricer.defaultParallelism();
+        IncrementalPricer.run(path, output.getPath(), index.getPath(), parallelism);
+        Files.copy(index.toPath(), baseIndex.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        BenchmarkRunner.measure("batch (read, group, price all, sorted write)", 1, 5, points.size(), () -> {
+            Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+            for (List<DeliveryPoint> run : ParallelCsvReader.readDeliveries(path)) {
+                deliveries.computeIfAbsent(run.get(0).idDelivery, k -> new ArrayList<>()).addAll(run);
+            }
+            try (SortedFareRuns runs = new SortedFareRuns(Long.MAX_VALUE)) {
+                ForkJoinPricer.priceToRuns(deliveries, parallelism, runs);
+                runs.mergeTo(output.getPath());
+            }
+        });
+
+        for (int percent : new int[]{0, 1, 10}) {
+            File changed = File.createTempFile("incremental", ".changed.csv");
+            changed.deleteOnExit();
+            writeChanged(points, changed, percent);
+            BenchmarkRunner.measure("incremental, " + percent + "% changed", 1, 5, points.size(), () -> {
+                Files.copy(baseIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                BenchmarkRunner.sink = IncrementalPricer.run(changed.getPath(), output.getPath(), index.getPath(), parallelism).repriced;
+            });
+        }
+    }
+
+    // Method to write the points with the timestamps of every delivery whose id falls in the first percent moved
+    private static void writeChanged(List<DeliveryPoint> points, File file, int percent) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            writer.println("id_delivery,lat,lng,timestamp");
+            for (DeliveryPoint point : points) {
+                long shift = Math.floorMod(point.idDelivery * 0x9E3779B1, 100) < percent ? 1 : 0;
+                writer.println(point.idDelivery + "," + point.lat + "," + point.lng + "," + (point.timestamp + shift));
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.MappedCsvReader;
+import main.ParallelCsvReader;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Compares the BufferedReader/String.split reader with the memory-mapped byte parser,
+// and the mapped parser on one thread with the parallel chunked reader.
+// Usage: IngestionBenchmark [input.csv]  (without an argument a 2M-row synthetic file is generated)
+public class IngestionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String path;
+        if (args.length > 0) {
+            path = args[0];
+        } else {
+            File tempFile = File.createTempFile("ingestion", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeCsv(path, 20_000, 100, 42);
+        }
+        long rows = DeliveryFareEstimation.readDataBuffered(path).size();
+        System.out.println("Input: " + path + " (" + rows + " rows, " + new File(path).length() / 1024 + " KB)");
+
+        BenchmarkRunner.measure("readDataBuffered (BufferedReader + split)", 3, 5, rows,
+                () -> BenchmarkRunner.sink = DeliveryFareEstimation.readDataBuffered(path).size());
+        BenchmarkRunner.measure("readData (mapped, DeliveryPoint list)", 3, 5, rows,
+                () -> BenchmarkRunner.sink = MappedCsvReader.readData(path).size());
+
+        // Primitive callback only, which is what the streaming mode consumes
+        double[] checksum = new double[1];
+        BenchmarkRunner.measure("MappedCsvReader.forEachRow (primitives)", 3, 5, rows, () -> {
+            MappedCsvReader.forEachRow(path, (idDelivery, lat, lng, timestamp) -> checksum[0] += lat + lng);
+            BenchmarkRunner.sink = checksum[0];
+        });
+
+        // Parallel chunked ingestion, from one thread up to one thread per core
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            int chunks = threads;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                BenchmarkRunner.measure("ParallelCsvReader.readData, " + threads + " thread(s)", 3, 5, rows,
+                        () -> BenchmarkRunner.sink = ParallelCsvReader.readData(path, executor, chunks).size());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareMetrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Measures the cost of FareMetrics on the hot path: parsing and pricing every delivery with the counters off
+// and on, alternating so JIT and GC state are shared, and prints the snapshot of the instrumented runs.
+// Usage: MetricsOverheadBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class MetricsOverheadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("metrics", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData(path);
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : points) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        List<List<DeliveryPoint>> pointLists = new ArrayList<>(deliveries.values());
+
+        for (int round = 0; round < 2; round++) {
+            FareMetrics.enable(false);
+            BenchmarkRunner.measure("readData, metrics off", 2, 5, points.size(),
+                    () -> BenchmarkRunner.sink = DeliveryFareEstimation.readData(path).size());
+            BenchmarkRunner.measure("priceDelivery, metrics off", 2, 5, points.size(), () -> price(pointLists));
+
+            FareMetrics.enable(true);
+            FareMetrics.resetAll();
+            BenchmarkRunner.measure("readData, metrics on", 2, 5, points.size(),
+                    () -> BenchmarkRunner.sink = DeliveryFareEstimation.readData(path).size());
+            BenchmarkRunner.measure("priceDelivery, metrics on", 2, 5, points.size(), () -> price(pointLists));
+        }
+        System.out.println(FareMetrics.snapshot().toText());
+    }
+
+    private static void price(List<List<DeliveryPoint>> pointLists) {
+        double total = 0;
+        for (List<DeliveryPoint> delivery : pointLists) {
+            total += DeliveryFareEstimation.priceDelivery(delivery);
+        }
+        BenchmarkRunner.sink = total;
+    }
+}
@@ -0,0 +1,50 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FarePipeline;
+import main.ForkJoinPricer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares the stages run one after another (read, group, price, write) and the streaming mode with the
+// pipelined FarePipeline, and prints the per-stage statistics of the last pipeline run: with enough cores the
+// wall time approaches the busy time of the slowest stage.
+// Usage: PipelineBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class PipelineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("pipeline", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File output = File.createTempFile("pipeline", ".out.csv");
+        output.deleteOnExit();
+
+        BenchmarkRunner.measure("sequential stages", 1, 3, 1, () -> {
+            Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+            for (DeliveryPoint point : DeliveryFareEstimation.readData(path)) {
+                deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+            }
+            DeliveryFareEstimation.writeOutputToCSV(ForkJoinPricer.priceDeliveries(deliveries), output.getPath());
+        });
+        BenchmarkRunner.measure("streaming", 1, 3, 1,
+                () -> DeliveryFareEstimation.processStreaming(path, output.getPath()));
+
+        FarePipeline pipeline = FarePipeline.fromSystemProperties();
+        BenchmarkRunner.measure("pipeline", 1, 3, 1, () -> pipeline.run(path, output.getPath()));
+        for (FarePipeline.StageStats stage : pipeline.stats()) {
+            System.out.println("  " + stage);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ForkJoinPricer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Compares the fixed 3-way batch split with the fork/join pricer on a skewed workload:
+// most deliveries are short, a few are two orders of magnitude longer.
+// The measured time is the completion time of the slowest worker, i.e. the tail of the run.
+public class SchedulerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(7);
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        long points = 0;
+        for (int id = 1; id <= 3_000; id++) {
+            // 1% of the deliveries carry roughly 2/3 of all points
+            int length = id % 100 == 0 ? 2_000 : 10 + random.nextInt(10);
+            deliveries.put(id, SyntheticData.delivery(id, length, random));
+            points += length;
+        }
+        System.out.println("Deliveries: " + deliveries.size() + ", points: " + points);
+
+        // Both paths must produce the same fares
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            if (!DeliveryFareEstimation.priceInFixedBatches(deliveries, executor, 3)
+                    .equals(ForkJoinPricer.priceDeliveries(deliveries, 3))) {
+                throw new IllegalStateException("Fork/join fares differ from the fixed batch fares");
+            }
+
+            BenchmarkRunner.measure("fixed pool, 3 batches by delivery count", 2, 5, deliveries.size(),
+                    () -> BenchmarkRunner.sink = DeliveryFareEstimation.priceInFixedBatches(deliveries, executor, 3).size());
+        } finally {
+            executor.shutdown();
+        }
+
+        BenchmarkRunner.measure("fork/join, 3 workers, split by points", 2, 5, deliveries.size(),
+                () -> BenchmarkRunner.sink = ForkJoinPricer.priceDeliveries(deliveries, 3).size());
+        int cores = ForkJoinPricer.defaultParallelism();
+        BenchmarkRunner.measure("fork/join, " + cores + " workers, split by points", 2, 5, deliveries.size(),
+                () -> BenchmarkRunner.sink = ForkJoinPricer.priceDeliveries(deliveries, cores).size());
+    }
+}
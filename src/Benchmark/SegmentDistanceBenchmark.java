@@ -0,0 +1,90 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DistanceCalculator;
+import main.TripStore;
+
+import java.io.File;
+
+// Measures the per-segment distance cost (haversine, haversine with precomputed cos(lat), equirectangular)
+// and the pricing of whole deliveries with the two-pass filter + fare and the one-pass priceDelivery.
+// Usage: SegmentDistanceBenchmark [input.csv]  (without an argument a 1M-row synthetic file is generated)
+public class SegmentDistanceBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String path;
+        if (args.length > 0) {
+            path = args[0];
+        } else {
+            File tempFile = File.createTempFile("segments", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeCsv(path, 10_000, 100, 42);
+        }
+
+        TripStore store = TripStore.load(path);
+        store.trimToSize();
+        double[] lats = store.lats();
+        double[] lngs = store.lngs();
+        int segments = store.pointCount() - 1;
+
+        // cos(lat) of every point, computed once like priceDelivery does
+        double[] cosLats = new double[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            cosLats[i] = Math.cos(Math.toRadians(lats[i]));
+        }
+
+        BenchmarkRunner.measure("haversine", 3, 5, segments, () -> {
+            double total = 0;
+            for (int i = 1; i < lats.length; i++) {
+                total += DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("haversine, precomputed cos(lat)", 3, 5, segments, () -> {
+            double total = 0;
+            for (int i = 1; i < lats.length; i++) {
+                total += DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], cosLats[i - 1], lats[i], lngs[i], cosLats[i]);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("equirectangular", 3, 5, segments, () -> {
+            double total = 0;
+            for (int i = 1; i < lats.length; i++) {
+                total += DistanceCalculator.equirectangular(lats[i - 1], lngs[i - 1], cosLats[i - 1], lats[i], lngs[i], cosLats[i]);
+            }
+            BenchmarkRunner.sink = total;
+        });
+
+        // Whole deliveries; the columns are not modified by priceDelivery, so filtering a copy keeps runs comparable
+        int deliveries = store.deliveryCount();
+        BenchmarkRunner.measure("filter + fare, two passes", 3, 5, deliveries, () -> {
+            double[] latsCopy = lats.clone();
+            double[] lngsCopy = lngs.clone();
+            long[] timestampsCopy = store.timestamps().clone();
+            double total = 0;
+            for (int d = 0; d < deliveries; d++) {
+                int length = DeliveryFareEstimation.filterInvalidPoints(latsCopy, lngsCopy, timestampsCopy, store.offset(d), store.length(d));
+                total += DeliveryFareEstimation.calculateFare(latsCopy, lngsCopy, timestampsCopy, store.offset(d), length);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("priceDelivery, one pass", 3, 5, deliveries, () -> {
+            double total = 0;
+            for (int d = 0; d < deliveries; d++) {
+                total += store.priceDelivery(d);
+            }
+            BenchmarkRunner.sink = total;
+        });
+
+        DistanceCalculator.setApproximation(1);
+        BenchmarkRunner.measure("priceDelivery, equirectangular below 1 km", 3, 5, deliveries, () -> {
+            double total = 0;
+            for (int d = 0; d < deliveries; d++) {
+                total += store.priceDelivery(d);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        DistanceCalculator.setApproximation(0);
+    }
+}
@@ -0,0 +1,60 @@
+package Benchmark;
+
+import main.SegmentKernel;
+import main.TripStore;
+
+import java.io.File;
+
+// Compares the scalar and the Vector API SegmentKernel on every delivery of a TripStore, and one-pass
+// TripStore.priceDelivery with kernel-fed TripStore.priceAll. Per-core numbers (single thread).
+// Run with --add-modules jdk.incubator.vector for the vector kernel; without it both kernel lines are scalar.
+// Usage: SegmentKernelBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class SegmentKernelBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("kernel", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+
+        TripStore store = TripStore.load(path);
+        store.trimToSize();
+        int longest = 0;
+        for (int delivery = 0; delivery < store.deliveryCount(); delivery++) {
+            longest = Math.max(longest, store.length(delivery));
+        }
+        double[] distances = new double[longest];
+        double[] speeds = new double[longest];
+        System.out.println("Vector API kernel: " + (SegmentKernel.isVectorized() ? "on" : "off (scalar fallback)"));
+
+        BenchmarkRunner.measure("distances + speeds, scalar kernel", 3, 5, store.pointCount(), () -> {
+            for (int delivery = 0; delivery < store.deliveryCount(); delivery++) {
+                SegmentKernel.scalarSegments(store.lats(), store.lngs(), store.timestamps(),
+                        store.offset(delivery), store.length(delivery), distances, speeds);
+            }
+            BenchmarkRunner.sink = speeds[1];
+        });
+        BenchmarkRunner.measure("distances + speeds, SegmentKernel.segments", 3, 5, store.pointCount(), () -> {
+            for (int delivery = 0; delivery < store.deliveryCount(); delivery++) {
+                SegmentKernel.segments(store.lats(), store.lngs(), store.timestamps(),
+                        store.offset(delivery), store.length(delivery), distances, speeds);
+            }
+            BenchmarkRunner.sink = speeds[1];
+        });
+        BenchmarkRunner.measure("filter + fare, TripStore.priceDelivery", 3, 5, store.pointCount(), () -> {
+            double total = 0;
+            for (int delivery = 0; delivery < store.deliveryCount(); delivery++) {
+                total += store.priceDelivery(delivery);
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("filter + fare, TripStore.priceAll", 3, 5, store.pointCount(),
+                () -> BenchmarkRunner.sink = store.priceAll()[0]);
+    }
+}
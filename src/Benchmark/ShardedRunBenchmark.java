@@ -0,0 +1,46 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.ShardedRun;
+
+import java.io.File;
+
+// Scaling of the sharded batch mode from 1 to maxWorkers worker JVMs on this machine, against an in-process batch
+// run: time per run, with the partition / worker / merge split of the last run, speedup over one worker and
+// efficiency (speedup / workers). Every worker JVM starts cold, so small inputs mostly measure JVM start-up.
+// Usage: ShardedRunBenchmark [1M|10M|points|input.csv] [maxWorkers]  (default 1M generated points, one per core)
+public class ShardedRunBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        int maxWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("sharded", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File output = File.createTempFile("sharded", ".out.csv");
+        output.deleteOnExit();
+
+        BenchmarkRunner.measure("batch in this JVM", 1, 3, 1,
+                () -> DeliveryFareEstimation.processBatch(path, output.getPath(), false));
+
+        double oneWorkerMillis = 0;
+        for (int workers = 1; workers <= maxWorkers; workers++) {
+            ShardedRun run = new ShardedRun(ShardedRun.localWorkerCommand(workers), workers, workers, 0, 0, null);
+            ShardedRun.Result[] last = new ShardedRun.Result[1];
+            BenchmarkRunner.Result result = BenchmarkRunner.measure("sharded, " + workers + " workers", 1, 3, 1,
+                    () -> last[0] = run.run(path, output.getPath()));
+            if (workers == 1) {
+                oneWorkerMillis = result.millisPerIteration;
+            }
+            double speedup = oneWorkerMillis / result.millisPerIteration;
+            System.out.printf("  partition %d ms, workers %d ms, merge %d ms; speedup %.2fx, efficiency %.0f%%%n",
+                    last[0].partitionMillis, last[0].workerMillis, last[0].mergeMillis, speedup, speedup / workers * 100);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ForkJoinPricer;
+import main.SortedFareRuns;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares pricing into one HashMap written in hash order with pricing into sorted runs merged k-way into an
+// output ordered by id_delivery, once with every run in memory and once with every run spilled to disk.
+// Usage: SortedRunBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class SortedRunBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("runs", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File output = File.createTempFile("runs", ".out.csv");
+        output.deleteOnExit();
+
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : DeliveryFareEstimation.readData(path)) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        int parallelism = ForkJoinPricer.defaultParallelism();
+
+        BenchmarkRunner.measure("HashMap merge, hash order", 2, 5, deliveries.size(),
+                () -> DeliveryFareEstimation.writeOutputToCSV(ForkJoinPricer.priceDeliveries(deliveries, parallelism), output.getPath()));
+        BenchmarkRunner.measure("sorted runs in memory, k-way merge", 2, 5, deliveries.size(), () -> {
+            try (SortedFareRuns runs = new SortedFareRuns(Long.MAX_VALUE)) {
+                ForkJoinPricer.priceToRuns(deliveries, parallelism, runs);
+                runs.mergeTo(output.getPath());
+                BenchmarkRunner.sink = runs.runCount();
+            }
+        });
+        BenchmarkRunner.measure("sorted runs spilled, k-way merge", 2, 5, deliveries.size(), () -> {
+            try (SortedFareRuns runs = new SortedFareRuns(0)) {
+                ForkJoinPricer.priceToRuns(deliveries, parallelism, runs);
+                runs.mergeTo(output.getPath());
+                BenchmarkRunner.sink = runs.runCount();
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package Benchmark;
+
+import main.AreaFilter;
+import main.DistanceCalculator;
+import main.SpatialGridIndex;
+import main.TripFile;
+import main.TripStore;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.Random;
+
+// Measures SpatialGridIndex against full scans of the TripStore: building the index, district box queries and
+// radius queries, and the out-of-area pre-filter (scalar against the active AreaFilter, vectorized with
+// --add-modules jdk.incubator.vector). Generated input goes through a TripFile, whose loader allocates the columns
+// at their final size, so 100M points fit in about 3 GB of heap (run with -Xmx4g).
+// Usage: SpatialGridBenchmark [1M|10M|100M|points|input.csv|input.trips]  (default 10M generated points)
+public class SpatialGridBenchmark {
+
+    // The area the generated trips cover (the longest ones wander far from the city), cut into cells of about 1 km
+    private static final double MIN_LAT = 34.5, MIN_LNG = 50.5, MAX_LAT = 36.7, MAX_LNG = 52.4, CELL = 0.01;
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "10M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File csv = File.createTempFile("spatial", ".csv");
+            File trips = File.createTempFile("spatial", ".trips");
+            trips.deleteOnExit();
+            SyntheticData.writeTrips(csv.getPath(), SyntheticData.parsePointCount(argument), 42);
+            TripFile.convert(csv.getPath(), trips.getPath());
+            csv.delete();
+            path = trips.getPath();
+        }
+        TripStore store = TripStore.load(path);
+        long points = store.pointCount();
+        System.out.println("Input: " + points + " points, " + store.deliveryCount() + " deliveries");
+
+        // GPS fixes at 0,0 in about one delivery in eight, i.e. roughly 0.1% of the points
+        Random random = new Random(42);
+        int[] outlierDeliveries = random.ints(store.deliveryCount() / 8, 0, store.deliveryCount()).distinct().toArray();
+        injectOutliers(store, outlierDeliveries);
+
+        SpatialGridIndex[] index = new SpatialGridIndex[1];
+        BenchmarkRunner.measure("build index (" + CELL + " degree cells)", 1, 3, points,
+                () -> index[0] = SpatialGridIndex.build(store, MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG, CELL));
+        System.out.println("  " + index[0].cellCount() + " cells, " + index[0].outsidePoints().length + " points outside the area");
+
+        // Districts of about 2 x 2 km and circles of 1 km around random points of the city
+        int queries = 20;
+        double[] lats = new double[queries];
+        double[] lngs = new double[queries];
+        for (int q = 0; q < queries; q++) {
+            lats[q] = 35.62 + random.nextDouble() * 0.16;
+            lngs[q] = 51.32 + random.nextDouble() * 0.16;
+        }
+        long[] found = new long[1];
+        BenchmarkRunner.measure("box query, full scan", 1, 3, queries, () -> {
+            for (int q = 0; q < queries; q++) {
+                found[0] = scanBox(store, lats[q], lngs[q], lats[q] + 0.018, lngs[q] + 0.022);
+            }
+        });
+        BenchmarkRunner.measure("box query, grid index", 5, 20, queries, () -> {
+            for (int q = 0; q < queries; q++) {
+                found[0] = index[0].deliveriesInBox(lats[q], lngs[q], lats[q] + 0.018, lngs[q] + 0.022).length;
+            }
+        });
+        System.out.println("  " + found[0] + " deliveries in the last box");
+        // A haversine per point is slow enough that two queries make the point
+        BenchmarkRunner.measure("radius query (1 km), full scan", 0, 1, 2, () -> {
+            for (int q = 0; q < 2; q++) {
+                found[0] = scanRadius(store, lats[q], lngs[q], 1);
+            }
+        });
+        BenchmarkRunner.measure("radius query (1 km), grid index", 3, 10, queries, () -> {
+            for (int q = 0; q < queries; q++) {
+                found[0] = index[0].deliveriesWithinRadius(lats[q], lngs[q], 1).length;
+            }
+        });
+
+        // Every iteration puts the outliers back first (the same cost for both), so each pass has points to drop
+        BenchmarkRunner.measure("out-of-area filter, scalar", 5, 5, points, () -> {
+            injectOutliers(store, outlierDeliveries);
+            long dropped = 0;
+            for (int d = 0; d < store.deliveryCount(); d++) {
+                int kept = AreaFilter.scalarFilter(store.lats(), store.lngs(), store.timestamps(), store.offset(d),
+                        store.length(d), MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG);
+                dropped += store.length(d) - kept;
+            }
+            BenchmarkRunner.sink = dropped;
+        });
+        BenchmarkRunner.measure("out-of-area filter, " + (AreaFilter.isVectorized() ? "vector" : "scalar (no vector module)"),
+                5, 5, points, () -> {
+                    injectOutliers(store, outlierDeliveries);
+                    BenchmarkRunner.sink = store.dropOutsideArea(MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG);
+                });
+    }
+
+    // Method to move the middle point of each listed delivery to 0,0
+    private static void injectOutliers(TripStore store, int[] deliveries) {
+        for (int d : deliveries) {
+            if (store.length(d) > 0) {
+                int i = store.offset(d) + store.length(d) / 2;
+                store.lats()[i] = 0;
+                store.lngs()[i] = 0;
+            }
+        }
+    }
+
+    // Method to count the deliveries with a point in the box by checking every point
+    private static long scanBox(TripStore store, double minLat, double minLng, double maxLat, double maxLng) {
+        BitSet found = new BitSet(store.deliveryCount());
+        double[] lats = store.lats();
+        double[] lngs = store.lngs();
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                if (lats[i] >= minLat && lats[i] <= maxLat && lngs[i] >= minLng && lngs[i] <= maxLng) {
+                    found.set(d);
+                    break;
+                }
+            }
+        }
+        return found.cardinality();
+    }
+
+    // Method to count the deliveries with a point within radiusKm by computing the distance of every point
+    private static long scanRadius(TripStore store, double lat, double lng, double radiusKm) {
+        BitSet found = new BitSet(store.deliveryCount());
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                if (DistanceCalculator.haversine(lat, lng, store.lats()[i], store.lngs()[i]) <= radiusKm) {
+                    found.set(d);
+                    break;
+                }
+            }
+        }
+        return found.cardinality();
+    }
+}
@@ -0,0 +1,168 @@
+package Benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import main.DeliveryPoint;
+
+// Generates delivery CSV files in the "id_delivery,lat,lng,timestamp" input format.
+// writeCsv and delivery produce uniform random walks around Tehran with one GPS fix every 30 seconds;
+// writeTrips produces trips with realistic lengths, stops and GPS glitches for reproducible large inputs.
+// Usage: SyntheticData <output.csv> <1M|10M|100M|points> [seed]
+public class SyntheticData {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticData <output.csv> <1M|10M|100M|points> [seed]");
+            System.exit(2);
+        }
+        long points = parsePointCount(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        long startTime = System.nanoTime();
+        long deliveries = writeTrips(args[0], points, seed);
+        System.out.println("Wrote " + points + " points in " + deliveries + " deliveries to " + args[0]
+                + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    // Method to parse a point count like 1M, 10M, 100M or a plain number
+    public static long parsePointCount(String count) {
+        if (count.endsWith("M") || count.endsWith("m")) {
+            return Long.parseLong(count.substring(0, count.length() - 1)) * 1_000_000L;
+        }
+        if (count.endsWith("K") || count.endsWith("k")) {
+            return Long.parseLong(count.substring(0, count.length() - 1)) * 1_000L;
+        }
+        return Long.parseLong(count);
+    }
+
+    // Method to write exactly totalPoints rows of realistic trips and return the number of deliveries.
+    // - trip lengths are log-normal: a median of about 30 minutes with a long tail of multi-hour trips
+    // - fixes come every 10 to 40 seconds
+    // - start times are spread over a week, so day, night and midnight-crossing segments all occur
+    // - vehicles alternate between driving (15 to 45 km/h) and stops (under 2 km/h, priced as idle time)
+    // - about 0.3% of the fixes are GPS glitches a few kilometres off, which the 100 km/h filter drops
+    public static long writeTrips(String path, long totalPoints, long seed) throws IOException {
+        Random random = new Random(seed);
+        long rows = 0;
+        int id = 0;
+        StringBuilder line = new StringBuilder(64);
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            writer.write("id_delivery,lat,lng,timestamp\n");
+            while (rows < totalPoints) {
+                id++;
+                int length = (int) Math.min(totalPoints - rows, tripLength(random));
+
+                double lat = 35.6 + random.nextDouble() * 0.2;
+                double lng = 51.3 + random.nextDouble() * 0.2;
+                long timestamp = 1723580000L + random.nextInt(7 * 86400);
+                double heading = random.nextDouble() * 2 * Math.PI;
+                boolean stopped = false;
+
+                for (int i = 0; i < length; i++) {
+                    line.setLength(0);
+                    line.append(id).append(',');
+                    if (i > 0 && random.nextInt(1000) < 3) {
+                        // Glitch: reported far away, the vehicle itself does not move there
+                        appendMicroDegrees(line, lat + (random.nextDouble() - 0.5) * 0.1).append(',');
+                        appendMicroDegrees(line, lng + (random.nextDouble() - 0.5) * 0.1).append(',');
+                    } else {
+                        appendMicroDegrees(line, lat).append(',');
+                        appendMicroDegrees(line, lng).append(',');
+                    }
+                    line.append(timestamp).append('\n');
+                    writer.append(line);
+                    rows++;
+
+                    // Switch between driving and stops now and then
+                    if (stopped ? random.nextInt(100) < 30 : random.nextInt(100) < 5) {
+                        stopped = !stopped;
+                    }
+                    int interval = 10 + random.nextInt(31);
+                    double speedKmh = stopped ? random.nextDouble() * 2 : 15 + random.nextDouble() * 30;
+                    heading += (random.nextDouble() - 0.5) * 0.6;
+
+                    // About 111 km per degree of latitude, and cos(35.7) times that per degree of longitude
+                    double stepKm = speedKmh * interval / 3600.0;
+                    lat += stepKm * Math.cos(heading) / 111.2;
+                    lng += stepKm * Math.sin(heading) / 90.3;
+                    timestamp += interval;
+                }
+            }
+        }
+        return id;
+    }
+
+    // Method to draw a trip length in fixes: log-normal with a median of 72 fixes (about 30 minutes)
+    static long tripLength(Random random) {
+        double length = Math.exp(Math.log(72) + 0.8 * random.nextGaussian());
+        return Math.max(2, Math.min(5_000, Math.round(length)));
+    }
+
+    // Method to write a CSV file with the given number of deliveries and points per delivery
+    public static long writeCsv(String path, int deliveries, int pointsPerDelivery, long seed) throws IOException {
+        Random random = new Random(seed);
+        long rows = 0;
+        StringBuilder line = new StringBuilder(64);
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 16)) {
+            writer.write("id_delivery,lat,lng,timestamp\n");
+            for (int id = 1; id <= deliveries; id++) {
+                double lat = 35.6 + random.nextDouble() * 0.2;
+                double lng = 51.3 + random.nextDouble() * 0.2;
+                long timestamp = 1723600000L + random.nextInt(86400);
+
+                for (int i = 0; i < pointsPerDelivery; i++) {
+                    line.setLength(0);
+                    line.append(id).append(',');
+                    appendMicroDegrees(line, lat).append(',');
+                    appendMicroDegrees(line, lng).append(',');
+                    line.append(timestamp).append('\n');
+                    writer.append(line);
+                    rows++;
+
+                    // About 150 m per fix on average, i.e. roughly 18 km/h
+                    lat += (random.nextDouble() - 0.5) * 0.002;
+                    lng += (random.nextDouble() - 0.5) * 0.002;
+                    timestamp += 30;
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Method to generate one delivery in memory with the same random walk as the CSV files
+    public static List<DeliveryPoint> delivery(int id, int points, Random random) {
+        List<DeliveryPoint> delivery = new ArrayList<>(points);
+        double lat = 35.6 + random.nextDouble() * 0.2;
+        double lng = 51.3 + random.nextDouble() * 0.2;
+        long timestamp = 1723600000L + random.nextInt(86400);
+        for (int i = 0; i < points; i++) {
+            delivery.add(new DeliveryPoint(id, lat, lng, timestamp));
+            lat += (random.nextDouble() - 0.5) * 0.002;
+            lng += (random.nextDouble() - 0.5) * 0.002;
+            timestamp += 30;
+        }
+        return delivery;
+    }
+
+    // Method to append a coordinate with six decimals, like the GPS feed (without String.format)
+    static StringBuilder appendMicroDegrees(StringBuilder sb, double degrees) {
+        long micro = Math.round(degrees * 1_000_000);
+        if (micro < 0) {
+            sb.append('-');
+            micro = -micro;
+        }
+        sb.append(micro / 1_000_000).append('.');
+        String fraction = Long.toString(micro % 1_000_000);
+        for (int i = fraction.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
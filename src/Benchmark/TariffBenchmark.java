@@ -0,0 +1,94 @@
+package Benchmark;
+
+import main.Tariff;
+import main.TariffEngine;
+
+import java.util.Properties;
+import java.util.Random;
+
+// Compares the java.time segment pricing (segmentFareReference) with the epoch-second TariffEngine:
+// time per segment and bytes allocated per segment. Then prices the same segments with a configured Tariff, and
+// with the tariff switched every batch of 1000 segments, to show that configurable rates cost nothing per segment.
+public class TariffBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private static final int SEGMENTS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        // Fixes 30 s apart at any time of the day, moving 0 to 300 m, so every branch is taken
+        Random random = new Random(9);
+        long[] timestamps = new long[SEGMENTS + 1];
+        double[] distances = new double[SEGMENTS];
+        timestamps[0] = 1723600000L;
+        for (int i = 0; i < SEGMENTS; i++) {
+            timestamps[i + 1] = timestamps[i] + 30;
+            distances[i] = random.nextDouble() * 0.3;
+        }
+
+        BenchmarkRunner.measure("segmentFareReference (java.time)", 3, 5, SEGMENTS,
+                () -> BenchmarkRunner.sink = reference(timestamps, distances));
+        BenchmarkRunner.measure("segmentFare (epoch seconds)", 3, 5, SEGMENTS,
+                () -> BenchmarkRunner.sink = engine(timestamps, distances));
+
+        Properties properties = new Properties();
+        properties.setProperty("surge.flag", "1.95");
+        properties.setProperty("surge.dayRatePerKm", "1.11");
+        properties.setProperty("surge.nightRatePerKm", "1.95");
+        properties.setProperty("surge.nightEnd", "06:00");
+        Tariff surge = Tariff.compile("surge", properties);
+        BenchmarkRunner.measure("segmentFare (Tariff.TEHRAN)", 3, 5, SEGMENTS,
+                () -> BenchmarkRunner.sink = engine(Tariff.TEHRAN, timestamps, distances));
+        BenchmarkRunner.measure("segmentFare (configured tariff)", 3, 5, SEGMENTS,
+                () -> BenchmarkRunner.sink = engine(surge, timestamps, distances));
+        BenchmarkRunner.measure("segmentFare (tariff switched per batch)", 3, 5, SEGMENTS,
+                () -> BenchmarkRunner.sink = switching(new Tariff[]{Tariff.TEHRAN, surge}, timestamps, distances));
+
+        long before = BenchmarkRunner.allocatedBytes();
+        BenchmarkRunner.sink = reference(timestamps, distances);
+        long referenceBytes = BenchmarkRunner.allocatedBytes() - before;
+        before = BenchmarkRunner.allocatedBytes();
+        BenchmarkRunner.sink = engine(timestamps, distances);
+        long engineBytes = BenchmarkRunner.allocatedBytes() - before;
+        System.out.printf("allocated per segment: java.time %.1f bytes, epoch seconds %.1f bytes%n",
+                (double) referenceBytes / SEGMENTS, (double) engineBytes / SEGMENTS);
+    }
+
+    private static double reference(long[] timestamps, double[] distances) {
+        double fare = 1.30;
+        for (int i = 0; i < distances.length; i++) {
+            fare = TariffEngine.segmentFareReference(fare, distances[i], timestamps[i], timestamps[i + 1]);
+        }
+        return fare;
+    }
+
+    private static double engine(long[] timestamps, double[] distances) {
+        double fare = 1.30;
+        for (int i = 0; i < distances.length; i++) {
+            fare = TariffEngine.segmentFare(fare, distances[i], timestamps[i], timestamps[i + 1]);
+        }
+        return fare;
+    }
+
+    private static double engine(Tariff tariff, long[] timestamps, double[] distances) {
+        double fare = tariff.flag();
+        for (int i = 0; i < distances.length; i++) {
+            fare = TariffEngine.segmentFare(tariff, fare, distances[i], timestamps[i], timestamps[i + 1]);
+        }
+        return fare;
+    }
+
+    // Like a pricing call per batch that reads the tariff once, with the tariff changing between batches
+    private static double switching(Tariff[] tariffs, long[] timestamps, double[] distances) {
+        double total = 0;
+        for (int from = 0; from < distances.length; from += BATCH) {
+            Tariff tariff = tariffs[(from / BATCH) % tariffs.length];
+            double fare = tariff.flag();
+            for (int i = from; i < Math.min(from + BATCH, distances.length); i++) {
+                fare = TariffEngine.segmentFare(tariff, fare, distances[i], timestamps[i], timestamps[i + 1]);
+            }
+            total += fare;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+package Benchmark;
+
+import main.MappedCsvReader;
+import main.TripFile;
+import main.TripStore;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Compares the CSV input with the same trips in the binary TripFile format: file size, readData into DeliveryPoint
+// objects, the primitive row callback and loading a TripStore (single-threaded and with parallel block decoding).
+// Usage: TripFileBenchmark [1M|10M|points|input.csv]  (default 1M generated points)
+public class TripFileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String argument = args.length > 0 ? args[0] : "1M";
+        String path;
+        if (new File(argument).isFile()) {
+            path = argument;
+        } else {
+            File tempFile = File.createTempFile("tripfile", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeTrips(path, SyntheticData.parsePointCount(argument), 42);
+        }
+        File trips = File.createTempFile("tripfile", ".trips");
+        trips.deleteOnExit();
+        BenchmarkRunner.measure("convert CSV to TripFile", 1, 3, 1, () -> TripFile.convert(path, trips.getPath(), true));
+
+        long rows = MappedCsvReader.readData(path).size();
+        long csvBytes = new File(path).length();
+        System.out.printf("Input: %d rows, CSV %d KB, TripFile %d KB (%.1fx smaller, %.1f bytes per point)%n",
+                rows, csvBytes / 1024, trips.length() / 1024, (double) csvBytes / trips.length(), (double) trips.length() / rows);
+
+        BenchmarkRunner.measure("CSV readData", 3, 5, rows,
+                () -> BenchmarkRunner.sink = MappedCsvReader.readData(path).size());
+        BenchmarkRunner.measure("TripFile readData", 3, 5, rows,
+                () -> BenchmarkRunner.sink = TripFile.readData(trips.getPath()).size());
+
+        double[] checksum = new double[1];
+        BenchmarkRunner.measure("CSV forEachRow (primitives)", 3, 5, rows, () -> {
+            MappedCsvReader.forEachRow(path, (idDelivery, lat, lng, timestamp) -> checksum[0] += lat + lng);
+            BenchmarkRunner.sink = checksum[0];
+        });
+        BenchmarkRunner.measure("TripFile forEachRow (primitives)", 3, 5, rows, () -> {
+            try (TripFile file = TripFile.open(trips.getPath())) {
+                file.forEachRow((idDelivery, lat, lng, timestamp) -> checksum[0] += lat + lng);
+            }
+            BenchmarkRunner.sink = checksum[0];
+        });
+
+        BenchmarkRunner.measure("CSV TripStore.load", 3, 5, rows,
+                () -> BenchmarkRunner.sink = TripStore.load(path).pointCount());
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int poolSize : threads > 1 ? new int[]{1, threads} : new int[]{1}) {
+            ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+            try {
+                BenchmarkRunner.measure("TripFile toStore, " + poolSize + " thread(s)", 3, 5, rows, () -> {
+                    try (TripFile file = TripFile.open(trips.getPath())) {
+                        BenchmarkRunner.sink = file.toStore(executor).pointCount();
+                    }
+                });
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
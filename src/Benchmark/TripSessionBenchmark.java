@@ -0,0 +1,56 @@
+package Benchmark;
+
+import main.TripSessionStore;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// Measures TripSessionStore update throughput with 1, 8 and 32 writer threads. Every thread feeds the points of
+// its own random deliveries out of a shared pool of open deliveries, while the expiry timer runs.
+public class TripSessionBenchmark {
+
+    private static final int OPEN_DELIVERIES = 200_000;
+    private static final int UPDATES = 4_000_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Cores: " + Runtime.getRuntime().availableProcessors());
+        for (int threads : new int[]{1, 8, 32}) {
+            LongAdder finished = new LongAdder();
+            try (TripSessionStore store = new TripSessionStore(64, 60_000, (delivery, reason) -> finished.increment())) {
+                store.startExpiryTimer();
+                BenchmarkRunner.measure("TripSessionStore.accept, " + threads + " writer(s)", 2, 5, UPDATES,
+                        () -> run(store, threads));
+                System.out.printf("  open deliveries: %d%n", store.size());
+                store.flush();
+            }
+        }
+    }
+
+    // Method to run UPDATES updates split over the given number of threads and wait for all of them
+    private static void run(TripSessionStore store, int threads) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            writers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long timestamp = 1723600000L;
+                for (int i = 0; i < UPDATES / threads; i++) {
+                    int id = random.nextInt(OPEN_DELIVERIES);
+                    store.accept(id, 35.7 + (id % 1000) * 1e-4 + (i & 63) * 1e-5, 51.4, timestamp + i);
+                }
+            });
+            writers[t].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.TripStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compares heap footprint and pricing throughput of List<DeliveryPoint> deliveries and the columnar TripStore.
+// Usage: TripStoreBenchmark [input.csv]  (without an argument a 1M-row synthetic file is generated)
+public class TripStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String path;
+        if (args.length > 0) {
+            path = args[0];
+        } else {
+            File tempFile = File.createTempFile("tripstore", ".csv");
+            tempFile.deleteOnExit();
+            path = tempFile.getPath();
+            SyntheticData.writeCsv(path, 10_000, 100, 42);
+        }
+
+        // Footprint of the object-based path: points plus the per-delivery lists
+        long baseline = BenchmarkRunner.usedHeapBytes();
+        List<List<DeliveryPoint>> objectDeliveries = groupConsecutive(DeliveryFareEstimation.readData(path));
+        long objectBytes = BenchmarkRunner.usedHeapBytes() - baseline;
+        long points = 0;
+        for (List<DeliveryPoint> delivery : objectDeliveries) {
+            points += delivery.size();
+        }
+
+        // Footprint of the columnar store holding the same data
+        baseline = BenchmarkRunner.usedHeapBytes();
+        TripStore store = TripStore.load(path);
+        store.trimToSize();
+        long columnarBytes = BenchmarkRunner.usedHeapBytes() - baseline;
+
+        System.out.printf("Points: %d, deliveries: %d%n", points, store.deliveryCount());
+        System.out.printf("List<DeliveryPoint> heap: %8.1f MB (%.1f bytes/point)%n", objectBytes / 1e6, (double) objectBytes / points);
+        System.out.printf("TripStore heap:           %8.1f MB (%.1f bytes/point)%n", columnarBytes / 1e6, (double) columnarBytes / points);
+
+        // Pricing throughput; filtering in the store is in place, so each iteration prices the already filtered data
+        int deliveries = objectDeliveries.size();
+        BenchmarkRunner.measure("filter + fare, List<DeliveryPoint>", 3, 5, deliveries, () -> {
+            double total = 0;
+            for (List<DeliveryPoint> delivery : objectDeliveries) {
+                total += DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(delivery));
+            }
+            BenchmarkRunner.sink = total;
+        });
+        BenchmarkRunner.measure("filter + fare, TripStore", 3, 5, deliveries, () -> {
+            double total = 0;
+            for (int d = 0; d < store.deliveryCount(); d++) {
+                store.filterInvalidPoints(d);
+                total += store.calculateFare(d);
+            }
+            BenchmarkRunner.sink = total;
+        });
+    }
+
+    // Method to group consecutive rows of the same delivery, the object equivalent of TripStore.add
+    private static List<List<DeliveryPoint>> groupConsecutive(List<DeliveryPoint> points) {
+        List<List<DeliveryPoint>> deliveries = new ArrayList<>();
+        for (DeliveryPoint point : points) {
+            if (deliveries.isEmpty() || deliveries.get(deliveries.size() - 1).get(0).idDelivery != point.idDelivery) {
+                deliveries.add(new ArrayList<>());
+            }
+            deliveries.get(deliveries.size() - 1).add(point);
+        }
+        return deliveries;
+    }
+}
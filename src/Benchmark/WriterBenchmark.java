@@ -0,0 +1,45 @@
+package Benchmark;
+
+import main.DeliveryFareEstimation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Compares the previous BufferedWriter + String.format output with the FareCsvWriter-based writeOutputToCSV,
+// unsorted and sorted by id_delivery.
+public class WriterBenchmark {
+
+    private static final int DELIVERIES = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(17);
+        Map<Integer, Double> fares = new HashMap<>();
+        for (int id = 1; id <= DELIVERIES; id++) {
+            fares.put(id, 3.47 + random.nextDouble() * 200);
+        }
+        File output = File.createTempFile("writer", ".csv");
+        output.deleteOnExit();
+
+        BenchmarkRunner.measure("BufferedWriter + String.format", 2, 5, DELIVERIES,
+                () -> writeWithFormat(fares, output.getPath()));
+        BenchmarkRunner.measure("FareCsvWriter", 2, 5, DELIVERIES,
+                () -> DeliveryFareEstimation.writeOutputToCSV(fares, output.getPath()));
+        BenchmarkRunner.measure("FareCsvWriter, sorted by id", 2, 5, DELIVERIES,
+                () -> DeliveryFareEstimation.writeOutputToCSV(fares, output.getPath(), true));
+    }
+
+    // The writer as it was before FareCsvWriter, kept here as the baseline
+    private static void writeWithFormat(Map<Integer, Double> fareEstimates, String outputPath) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
+            writer.write("id_delivery,fare_estimate\n");
+            for (Map.Entry<Integer, Double> entry : fareEstimates.entrySet()) {
+                writer.write(entry.getKey() + "," + String.format("%.2f", entry.getValue()) + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package Test;
+
+import main.CheckpointedRun;
+import main.DeliveryFareEstimation;
+import main.TripFile;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class CheckpointedRunTest {
+
+    // With a checkpoint after every delivery the output is still the streaming output, and no checkpoint is left
+    @Test
+    public void testMatchesStreaming() throws IOException {
+        File expected = File.createTempFile("streaming", ".csv");
+        DeliveryFareEstimation.processStreaming("src/expanded_delivery_data.csv", expected.getPath());
+
+        File output = File.createTempFile("checkpointed", ".csv");
+        CheckpointedRun.Result result = new CheckpointedRun(1).run("src/expanded_delivery_data.csv", output.getPath());
+        assertEquals(0, result.resumedFromOffset);
+        assertEquals(Files.readAllLines(expected.toPath()).size() - 1, result.deliveries);
+        assertTrue(result.checkpoints > 0);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath()));
+        assertFalse(new File(CheckpointedRun.checkpointPathFor(output.getPath())).exists());
+
+        expected.delete();
+        output.delete();
+    }
+
+    // A run killed in the middle (with a torn last write) and resumed produces the output of an uninterrupted run
+    @Test
+    public void testResumeAfterKill() throws Exception {
+        File input = File.createTempFile("trips", ".csv");
+        writeTrips(input, 300_000);
+        File expected = File.createTempFile("streaming", ".csv");
+        DeliveryFareEstimation.processStreaming(input.getPath(), expected.getPath());
+
+        File output = File.createTempFile("checkpointed", ".csv");
+        File checkpoint = new File(CheckpointedRun.checkpointPathFor(output.getPath()));
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-Dfare.checkpoint.intervalKb=64", "main.DeliveryFareEstimation", "checkpoint", input.getPath(), output.getPath())
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+
+        // Kill the run as soon as its first checkpoint is on disk
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (!checkpoint.exists() && process.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        process.destroyForcibly();
+        process.waitFor();
+        boolean interrupted = checkpoint.exists();
+
+        // Rows written after the checkpoint, including a half-written one, must be discarded on resume
+        try (FileWriter writer = new FileWriter(output, true)) {
+            writer.write("999999,12.3");
+        }
+
+        CheckpointedRun.Result result = new CheckpointedRun(64 * 1024).run(input.getPath(), output.getPath());
+        if (interrupted) {
+            assertTrue(result.resumedFromOffset > 0);
+        }
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath()));
+        assertFalse(checkpoint.exists());
+
+        input.delete();
+        expected.delete();
+        output.delete();
+    }
+
+    @Test
+    public void testRejectsCheckpointOfAnotherInput() throws IOException {
+        File output = File.createTempFile("checkpointed", ".csv");
+        File checkpoint = new File(CheckpointedRun.checkpointPathFor(output.getPath()));
+        Properties properties = new Properties();
+        properties.setProperty("inputPath", new File("src/sample_data.csv").getAbsolutePath());
+        properties.setProperty("inputSize", "1");
+        properties.setProperty("inputModified", "1");
+        properties.setProperty("inputOffset", "30");
+        properties.setProperty("outputLength", "26");
+        properties.setProperty("deliveries", "0");
+        try (FileOutputStream out = new FileOutputStream(checkpoint)) {
+            properties.store(out, null);
+        }
+
+        try {
+            new CheckpointedRun(1024).run("src/sample_data.csv", output.getPath());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected: resuming against a different input would corrupt the output
+        }
+        checkpoint.delete();
+        output.delete();
+    }
+
+    // A trip file is refused before the output is created
+    @Test
+    public void testRejectsTripFile() throws IOException {
+        File trips = File.createTempFile("sample", ".trips");
+        File output = new File(trips.getPath() + ".out.csv");
+        TripFile.convert("src/sample_data.csv", trips.getPath());
+        try {
+            new CheckpointedRun(1024).run(trips.getPath(), output.getPath());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("needs CSV input"));
+        }
+        assertFalse(output.exists());
+        trips.delete();
+    }
+
+    // Method to write contiguous random trips of 10 to 60 points
+    private static void writeTrips(File file, int points) throws IOException {
+        Random random = new Random(23);
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            writer.println("id_delivery,lat,lng,timestamp");
+            int id = 0;
+            int written = 0;
+            while (written < points) {
+                id++;
+                double lat = 35.6 + random.nextDouble() * 0.2;
+                double lng = 51.3 + random.nextDouble() * 0.2;
+                long timestamp = 1_700_000_000L + random.nextInt(7 * 86_400);
+                for (int i = 10 + random.nextInt(51); i > 0 && written < points; i--, written++) {
+                    writer.println(id + "," + lat + "," + lng + "," + timestamp);
+                    lat += (random.nextDouble() - 0.5) * 0.004;
+                    lng += (random.nextDouble() - 0.5) * 0.004;
+                    timestamp += 10 + random.nextInt(30);
+                }
+            }
+        }
+    }
+}
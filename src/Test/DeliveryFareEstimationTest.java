@@ -48,6 +48,40 @@ public class DeliveryFareEstimationTest {
         tempFile.delete();
     }
 
+    @Test
+    public void testProcessStreamingMatchesBatch() throws IOException {
+        // Two deliveries in the order they appear in the input file
+        String csvData = "id_delivery,lat,lng,timestamp\n" +
+                "2,35.695694,51.400285,1723637520\n" +
+                "2,35.695604,51.401953,1723637550\n" +
+                "2,35.695406,51.401923,1723637580\n" +
+                "1,35.696694,51.410285,1723640000\n" +
+                "1,35.705604,51.421953,1723640600\n";
+
+        File inputFile = File.createTempFile("testStreamInput", ".csv");
+        File outputFile = File.createTempFile("testStreamOutput", ".csv");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(inputFile));
+        writer.write(csvData);
+        writer.close();
+
+        DeliveryFareEstimation.processStreaming(inputFile.getPath(), outputFile.getPath());
+
+        // Expected fares computed with the in-memory path
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData(inputFile.getPath());
+        double fare2 = DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(points.subList(0, 3)));
+        double fare1 = DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(points.subList(3, 5)));
+
+        BufferedReader reader = new BufferedReader(new FileReader(outputFile));
+        assertEquals("id_delivery,fare_estimate", reader.readLine());
+        assertEquals("2," + String.format("%.2f", fare2), reader.readLine());
+        assertEquals("1," + String.format("%.2f", fare1), reader.readLine());
+        assertNull(reader.readLine());
+        reader.close();
+
+        inputFile.delete();
+        outputFile.delete();
+    }
+
     @Test
     public void testFilterInvalidPoints() {
         // Test with two delivery points, where the speed exceeds 100 km/h between them
@@ -60,6 +94,20 @@ public class DeliveryFareEstimationTest {
         assertEquals(1, validPoints.size());  // Only the first point should remain
     }
 
+    @Test
+    public void testPriceDeliverySkipsInvalidPoints() {
+        // London -> Paris in 5 minutes is too fast; the next Paris points are priced from London
+        List<DeliveryPoint> points = Arrays.asList(
+                new DeliveryPoint(1, 51.5074, -0.1278, 1609459200),
+                new DeliveryPoint(1, 48.8566, 2.3522, 1609459500),
+                new DeliveryPoint(1, 48.8567, 2.3523, 1609459800),
+                new DeliveryPoint(1, 48.8569, 2.3525, 1609460100)
+        );
+
+        double expected = DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(points));
+        assertEquals(expected, DeliveryFareEstimation.priceDelivery(points), 0);
+    }
+
     @Test
     public void testCalculateFareEdgeCaseNightToDay() {
         // Test fare calculation with valid filtered points 11:30 pm to 00:30 am
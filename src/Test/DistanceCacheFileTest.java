@@ -0,0 +1,135 @@
+package Test;
+
+import main.DistanceCache;
+import main.DistanceCacheFile;
+import main.DistanceCalculator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+public class DistanceCacheFileTest {
+
+    // Helper to create a temporary path that does not exist yet
+    private Path tempPath() throws IOException {
+        File tempFile = File.createTempFile("distanceCache", ".bin");
+        tempFile.delete();
+        tempFile.deleteOnExit();
+        return tempFile.toPath();
+    }
+
+    // Helper to build entries whose distance is derived from the key
+    private DistanceCacheFile.RecordBuffer entries(int first, int count) {
+        DistanceCacheFile.RecordBuffer entries = new DistanceCacheFile.RecordBuffer();
+        for (int i = first; i < first + count; i++) {
+            entries.add(DistanceCache.packPoint(35 + i * 1e-5, 51), DistanceCache.packPoint(35, 51 + i * 1e-5), i * 0.5);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testWriteOpenAndLookup() throws IOException {
+        Path path = tempPath();
+        DistanceCacheFile.write(path, entries(0, 10_000));
+        assertEquals(32 + 10_000 * 24, Files.size(path));
+
+        try (DistanceCacheFile file = DistanceCacheFile.open(path)) {
+            assertEquals(10_000, file.sortedCount());
+            for (int i = 0; i < 10_000; i += 37) {
+                assertEquals(i * 0.5, file.lookup(DistanceCache.packPoint(35 + i * 1e-5, 51), DistanceCache.packPoint(35, 51 + i * 1e-5)), 0);
+            }
+            assertTrue(Double.isNaN(file.lookup(DistanceCache.packPoint(1, 1), DistanceCache.packPoint(2, 2))));
+        }
+    }
+
+    @Test
+    public void testAppendSurvivesReopenAndCompaction() throws IOException {
+        Path path = tempPath();
+        DistanceCacheFile.write(path, entries(0, 100));
+
+        DistanceCacheFile file = DistanceCacheFile.open(path);
+        file.append(entries(100, 50));
+        assertEquals(125 * 0.5, file.lookup(DistanceCache.packPoint(35 + 125 * 1e-5, 51), DistanceCache.packPoint(35, 51 + 125 * 1e-5)), 0);
+        file.close();
+
+        file = DistanceCacheFile.open(path);
+        assertEquals(100, file.sortedCount());
+        assertEquals(50, file.appendedCount());
+
+        file = file.compact();
+        assertEquals(150, file.sortedCount());
+        assertEquals(0, file.appendedCount());
+        assertEquals(149 * 0.5, file.lookup(DistanceCache.packPoint(35 + 149 * 1e-5, 51), DistanceCache.packPoint(35, 51 + 149 * 1e-5)), 0);
+        file.close();
+    }
+
+    @Test
+    public void testTornAppendIsIgnored() throws IOException {
+        Path path = tempPath();
+        DistanceCacheFile.write(path, entries(0, 10));
+        try (DistanceCacheFile file = DistanceCacheFile.open(path)) {
+            file.append(entries(10, 5));
+        }
+
+        // Simulate a crash in the middle of a second append
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 3, 1, 2, 3, 4, 9, 9, 9}));
+        }
+
+        try (DistanceCacheFile file = DistanceCacheFile.open(path)) {
+            assertEquals(5, file.appendedCount());
+            file.append(entries(15, 1));
+        }
+        try (DistanceCacheFile file = DistanceCacheFile.open(path)) {
+            assertEquals(6, file.appendedCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptSortedRegionIsDetected() throws IOException {
+        Path path = tempPath();
+        DistanceCacheFile.write(path, entries(0, 10));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 40);
+        }
+        DistanceCacheFile.open(path);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersionIsRejected() throws IOException {
+        Path path = tempPath();
+        DistanceCacheFile.write(path, entries(0, 1));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+        }
+        DistanceCacheFile.open(path);
+    }
+
+    @Test
+    public void testCalculatorSavesAndLoadsThroughFile() throws IOException {
+        Path path = tempPath();
+        double expected = DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953);
+        try {
+            DistanceCalculator.enableCache(1024);
+            DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953);
+            DistanceCalculator.saveCacheToFile(path.toString());
+            DistanceCalculator.disableCache();
+
+            // A fresh cache answers from the mapped file, without recomputing
+            DistanceCalculator.loadCacheFromFile(path.toString());
+            assertEquals(expected, DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953), 0);
+
+            // New distances are appended on the next save
+            DistanceCalculator.haversine(35.695604, 51.401953, 35.695406, 51.401923);
+            DistanceCalculator.saveCacheToFile(path.toString());
+        } finally {
+            DistanceCalculator.disableCache();
+        }
+        try (DistanceCacheFile file = DistanceCacheFile.open(path)) {
+            assertEquals(1, file.sortedCount());
+            assertEquals(1, file.appendedCount());
+        }
+    }
+}
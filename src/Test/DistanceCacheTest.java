@@ -0,0 +1,94 @@
+package Test;
+
+import main.DistanceCache;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class DistanceCacheTest {
+
+    @Test
+    public void testPackPointRoundTrip() {
+        long packed = DistanceCache.packPoint(35.695694, -151.400285);
+        assertEquals(35.695694, DistanceCache.unpackLat(packed), 1e-7);
+        assertEquals(-151.400285, DistanceCache.unpackLng(packed), 1e-7);
+
+        // Coordinates closer than the 1e-7 degree quantum share a key
+        assertEquals(DistanceCache.packPoint(35.69569400001, 51.4), DistanceCache.packPoint(35.695694, 51.4));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        DistanceCache cache = new DistanceCache(1024);
+        long from = DistanceCache.packPoint(35.1, 51.1);
+        long to = DistanceCache.packPoint(35.2, 51.2);
+
+        assertTrue(Double.isNaN(cache.get(from, to)));
+        cache.put(from, to, 14.2);
+        assertEquals(14.2, cache.get(from, to), 0);
+
+        // The key is directional
+        assertTrue(Double.isNaN(cache.get(to, from)));
+
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1.0 / 3, cache.hitRatio(), 1e-12);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        DistanceCache cache = new DistanceCache(4096);
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(DistanceCache.packPoint(i * 1e-4, 0), DistanceCache.packPoint(0, i * 1e-4), i);
+        }
+        assertTrue(cache.size() <= 4096);
+        assertEquals(cache.capacity(), cache.size());
+        assertEquals(100_000 - cache.size(), cache.evictions());
+    }
+
+    @Test
+    public void testRecentlyUsedEntriesSurviveEviction() {
+        DistanceCache cache = new DistanceCache(1024);
+        long hotFrom = DistanceCache.packPoint(1, 1);
+        long hotTo = DistanceCache.packPoint(2, 2);
+        cache.put(hotFrom, hotTo, 42);
+
+        // Touch the hot entry between inserts so CLOCK always finds a colder victim
+        for (int i = 0; i < 50_000; i++) {
+            assertEquals(42, cache.get(hotFrom, hotTo), 0);
+            cache.put(DistanceCache.packPoint(i * 1e-4, 5), DistanceCache.packPoint(5, i * 1e-4), i);
+        }
+        assertEquals(42, cache.get(hotFrom, hotTo), 0);
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriters() throws Exception {
+        DistanceCache cache = new DistanceCache(1 << 14);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                int wrong = 0;
+                for (int i = 0; i < 50_000; i++) {
+                    long from = DistanceCache.packPoint(i % 5000 * 1e-4, thread % 2);
+                    long to = DistanceCache.packPoint(thread % 2, i % 5000 * 1e-4);
+                    double cached = cache.get(from, to);
+                    // A hit must always return the value stored for exactly this key
+                    if (!Double.isNaN(cached) && cached != (i % 5000) * 10.0 + thread % 2) {
+                        wrong++;
+                    }
+                    cache.put(from, to, (i % 5000) * 10.0 + thread % 2);
+                }
+                return wrong;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(0, future.get().intValue());
+        }
+        executor.shutdown();
+        assertEquals(8 * 50_000, cache.hits() + cache.misses());
+    }
+}
@@ -4,6 +4,8 @@ import main.DeliveryPoint;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import main.DeliveryFareEstimation;
 import main.DistanceCalculator;
 
@@ -25,6 +27,77 @@ public class DistanceCalculatorTest {
         assertEquals(343, distance, 5);
     }
 
+    // The cache must return exactly what the uncached computation returns
+    @Test
+    public void testHaversineWithCache() {
+        double uncached = DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953);
+
+        DistanceCalculator.enableCache(1024);
+        try {
+            assertEquals(uncached, DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953), 0);
+            assertEquals(uncached, DistanceCalculator.haversine(35.695694, 51.400285, 35.695604, 51.401953), 0);
+            assertEquals(1, DistanceCalculator.getCache().hits());
+            assertEquals(1, DistanceCalculator.getCache().misses());
+        } finally {
+            DistanceCalculator.disableCache();
+        }
+        assertNull(DistanceCalculator.getCache());
+    }
+
+    // The overload taking precomputed cos(lat) must return exactly the same distance as haversine
+    @Test
+    public void testHaversineWithPrecomputedCosine() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            double lat1 = random.nextDouble() * 170 - 85;
+            double lng1 = random.nextDouble() * 360 - 180;
+            double lat2 = lat1 + (random.nextDouble() - 0.5) * 0.02;
+            double lng2 = lng1 + (random.nextDouble() - 0.5) * 0.02;
+            double cosLat1 = Math.cos(Math.toRadians(lat1));
+            double cosLat2 = Math.cos(Math.toRadians(lat2));
+
+            assertEquals(DistanceCalculator.haversine(lat1, lng1, lat2, lng2),
+                    DistanceCalculator.haversine(lat1, lng1, cosLat1, lat2, lng2, cosLat2), 0);
+        }
+    }
+
+    // The equirectangular approximation must stay within the documented 1e-6 relative error for hops up to 1 km
+    // between latitudes -70 and 70, and must only be used for hops shorter than the configured length
+    @Test
+    public void testEquirectangularErrorBound() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            double lat1 = random.nextDouble() * 140 - 70;
+            double lng1 = random.nextDouble() * 360 - 180;
+            double cosLat1 = Math.cos(Math.toRadians(lat1));
+            // A hop of up to 1 km in a random direction
+            double hopKm = random.nextDouble();
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double lat2 = lat1 + Math.toDegrees(hopKm * Math.cos(bearing) / 6371);
+            double lng2 = lng1 + Math.toDegrees(hopKm * Math.sin(bearing) / (6371 * cosLat1));
+            double cosLat2 = Math.cos(Math.toRadians(lat2));
+
+            double exact = DistanceCalculator.haversine(lat1, lng1, lat2, lng2);
+            double approximate = DistanceCalculator.equirectangular(lat1, lng1, cosLat1, lat2, lng2, cosLat2);
+            assertEquals(exact, approximate, exact * 1e-6 + 1e-12);
+        }
+
+        DistanceCalculator.setApproximation(1);
+        try {
+            // A 300 m hop is approximated, a London -> Paris hop is not
+            double shortHop = DistanceCalculator.haversine(35.6957, 51.4003, Math.cos(Math.toRadians(35.6957)),
+                    35.6960, 51.4033, Math.cos(Math.toRadians(35.6960)));
+            assertEquals(DistanceCalculator.equirectangular(35.6957, 51.4003, Math.cos(Math.toRadians(35.6957)),
+                    35.6960, 51.4033, Math.cos(Math.toRadians(35.6960))), shortHop, 0);
+
+            double longHop = DistanceCalculator.haversine(51.5074, -0.1278, Math.cos(Math.toRadians(51.5074)),
+                    48.8566, 2.3522, Math.cos(Math.toRadians(48.8566)));
+            assertEquals(DistanceCalculator.haversine(51.5074, -0.1278, 48.8566, 2.3522), longHop, 0);
+        } finally {
+            DistanceCalculator.setApproximation(0);
+        }
+    }
+
     // Unit test for the calculateSpeed method
     @Test
     public void testCalculateSpeed() {
@@ -0,0 +1,59 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareAccumulator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.*;
+
+public class FareAccumulatorTest {
+
+    @Test
+    public void testMatchesBatchFareWithoutInvalidPoints() {
+        List<DeliveryPoint> points = new ArrayList<>();
+        Random random = new Random(3);
+        double lat = 35.7;
+        double lng = 51.4;
+        // Starts before midnight in Tehran, so day, midnight-crossing, night and idle segments all occur
+        long timestamp = 1723667400L;
+        for (int i = 0; i < 500; i++) {
+            points.add(new DeliveryPoint(1, lat, lng, timestamp));
+            lat += (random.nextDouble() - 0.5) * 0.002;
+            lng += (random.nextDouble() - 0.5) * 0.002;
+            timestamp += 30;
+        }
+
+        FareAccumulator accumulator = new FareAccumulator(1);
+        for (int i = 0; i < points.size(); i++) {
+            assertTrue(accumulator.accept(points.get(i)));
+            // The running fare is the batch fare of the points seen so far
+            if (i % 50 == 0) {
+                assertEquals(DeliveryFareEstimation.priceDelivery(points.subList(0, i + 1)), accumulator.currentFare(), 0);
+            }
+        }
+        assertEquals(DeliveryFareEstimation.priceDelivery(points), accumulator.currentFare(), 0);
+        assertEquals(500, accumulator.acceptedPoints());
+        assertEquals(0, accumulator.rejectedPoints());
+    }
+
+    @Test
+    public void testGlitchIsCheckedAgainstLastAcceptedPoint() {
+        FareAccumulator accumulator = new FareAccumulator(7);
+        assertEquals(1.30, accumulator.currentFare(), 0);
+
+        assertTrue(accumulator.accept(48.8566, 2.3522, 1609459200));
+        // London, 5 minutes later: far too fast
+        assertFalse(accumulator.accept(51.5074, -0.1278, 1609459500));
+        // Back in Paris: valid from the last accepted point, although it is too fast from the glitch
+        assertTrue(accumulator.accept(48.8567, 2.3523, 1609459800));
+
+        List<DeliveryPoint> accepted = Arrays.asList(
+                new DeliveryPoint(7, 48.8566, 2.3522, 1609459200),
+                new DeliveryPoint(7, 48.8567, 2.3523, 1609459800));
+        assertEquals(DeliveryFareEstimation.calculateFare(accepted), accumulator.currentFare(), 0);
+        assertEquals(2, accumulator.acceptedPoints());
+        assertEquals(1, accumulator.rejectedPoints());
+        assertEquals(1609459800, accumulator.lastTimestamp());
+    }
+}
@@ -0,0 +1,70 @@
+package Test;
+
+import main.FareCsvWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class FareCsvWriterTest {
+
+    // Fares must be written exactly as String.format("%.2f") writes them, ties and large values included
+    @Test
+    public void testFormattingMatchesStringFormat() throws IOException {
+        List<Double> fares = new ArrayList<>(Arrays.asList(0.0, 0.004, 0.005, 0.015, 0.125, 1.005, 1.015, 2.675,
+                3.47, 5.5, 8.75, 9.995, 99.995, 1234.565, 9_999_999.994, 9_999_999.995, 1e7, 1.5e12, 1e300,
+                -0.001, -3.456, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE));
+        Random random = new Random(13);
+        for (int i = 0; i < 200_000; i++) {
+            switch (i % 4) {
+                case 0: fares.add(random.nextDouble() * 100); break;
+                case 1: fares.add(random.nextDouble() * 1e7); break;
+                // Values at or next to a tie of the third decimal
+                case 2: fares.add((random.nextInt(1_000_000) * 10 + 5) / 1000.0); break;
+                default: fares.add(Math.nextUp((random.nextInt(1_000_000) * 10 + 5) / 1000.0)); break;
+            }
+        }
+
+        File file = File.createTempFile("fares", ".csv");
+        try (FareCsvWriter writer = new FareCsvWriter(file.getPath())) {
+            for (int i = 0; i < fares.size(); i++) {
+                writer.write(i - 5, fares.get(i));
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals("id_delivery,fare_estimate", lines.get(0));
+        assertEquals(fares.size() + 1, lines.size());
+        for (int i = 0; i < fares.size(); i++) {
+            assertEquals((i - 5) + "," + String.format(Locale.ROOT, "%.2f", fares.get(i)), lines.get(i + 1));
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testWriteAllSortedById() throws IOException {
+        Map<Integer, Double> fares = new HashMap<>();
+        for (int id : new int[]{42, -1, 7, 100_000, 3}) {
+            fares.put(id, id * 0.5);
+        }
+
+        File file = File.createTempFile("fares", ".csv");
+        try (FareCsvWriter writer = new FareCsvWriter(file.getPath())) {
+            writer.writeAll(fares, true);
+        }
+        assertEquals(Arrays.asList("id_delivery,fare_estimate", "-1,-0.50", "3,1.50", "7,3.50", "42,21.00", "100000,50000.00"),
+                Files.readAllLines(file.toPath()));
+        file.delete();
+    }
+
+    @Test
+    public void testMissingDirectoryFails() {
+        try {
+            new FareCsvWriter(new File("does_not_exist", "fares.csv").getPath()).close();
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected: the error reaches the caller instead of being printed
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareFingerprintIndex;
+import main.ForkJoinPricer;
+import main.IncrementalPricer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class FareFingerprintIndexTest {
+
+    @Test
+    public void testFingerprintChangesWithAnyPoint() {
+        List<DeliveryPoint> points = new ArrayList<>(Arrays.asList(
+                new DeliveryPoint(1, 35.7, 51.3, 100),
+                new DeliveryPoint(1, 35.71, 51.31, 130)));
+        long fingerprint = FareFingerprintIndex.fingerprint(points);
+        assertEquals(fingerprint, FareFingerprintIndex.fingerprint(new ArrayList<>(points)));
+
+        assertNotEquals(fingerprint, FareFingerprintIndex.fingerprint(Arrays.asList(points.get(1), points.get(0))));
+        assertNotEquals(fingerprint, FareFingerprintIndex.fingerprint(Arrays.asList(points.get(0),
+                new DeliveryPoint(1, 35.71, 51.31, 131))));
+        assertNotEquals(fingerprint, FareFingerprintIndex.fingerprint(Arrays.asList(points.get(0),
+                new DeliveryPoint(1, Math.nextUp(35.71), 51.31, 130))));
+        assertNotEquals(fingerprint, FareFingerprintIndex.fingerprint(points.subList(0, 1)));
+    }
+
+    // Unchanged deliveries are reused, changed and new ones priced, and the output always equals the batch output
+    @Test
+    public void testIncrementalRunsMatchBatch() throws IOException {
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData("src/expanded_delivery_data.csv");
+        File input = File.createTempFile("input", ".csv");
+        File output = File.createTempFile("incremental", ".csv");
+        File index = File.createTempFile("fares", ".index");
+        index.delete();
+
+        writePoints(input, points);
+        IncrementalPricer.Result first = IncrementalPricer.run(input.getPath(), output.getPath(), index.getPath(), 2);
+        assertEquals(0, first.reused);
+        assertEquals(first.deliveries, first.repriced);
+        assertEquals(batchOutput(input), Files.readAllLines(output.toPath()));
+
+        IncrementalPricer.Result second = IncrementalPricer.run(input.getPath(), output.getPath(), index.getPath(), 2);
+        assertEquals(second.deliveries, second.reused);
+        assertEquals(0, second.repriced);
+        assertEquals(batchOutput(input), Files.readAllLines(output.toPath()));
+
+        // Move one point of the first delivery, drop the last delivery and add a new one
+        List<DeliveryPoint> changed = new ArrayList<>(points);
+        DeliveryPoint moved = changed.get(1);
+        changed.set(1, new DeliveryPoint(moved.idDelivery, moved.lat + 0.001, moved.lng, moved.timestamp));
+        int lastId = changed.get(changed.size() - 1).idDelivery;
+        changed.removeIf(point -> point.idDelivery == lastId);
+        changed.add(new DeliveryPoint(999_999, 35.7, 51.3, 1_700_000_000L));
+        changed.add(new DeliveryPoint(999_999, 35.71, 51.31, 1_700_000_300L));
+        writePoints(input, changed);
+
+        IncrementalPricer.Result third = IncrementalPricer.run(input.getPath(), output.getPath(), index.getPath(), 2);
+        assertEquals(2, third.repriced);
+        assertEquals(first.deliveries, third.deliveries);
+        assertEquals(batchOutput(input), Files.readAllLines(output.toPath()));
+        assertEquals(third.deliveries, FareFingerprintIndex.load(index.toPath()).size());
+
+        // A damaged index is ignored: everything is priced again
+        try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        IncrementalPricer.Result fourth = IncrementalPricer.run(input.getPath(), output.getPath(), index.getPath(), 2);
+        assertEquals(fourth.deliveries, fourth.repriced);
+        assertEquals(batchOutput(input), Files.readAllLines(output.toPath()));
+
+        input.delete();
+        output.delete();
+        index.delete();
+    }
+
+    private static List<String> batchOutput(File input) throws IOException {
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : DeliveryFareEstimation.readData(input.getPath())) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        File output = File.createTempFile("batch", ".csv");
+        DeliveryFareEstimation.writeOutputToCSV(ForkJoinPricer.priceDeliveries(deliveries, 1), output.getPath(), true);
+        List<String> lines = Files.readAllLines(output.toPath());
+        output.delete();
+        return lines;
+    }
+
+    private static void writePoints(File file, List<DeliveryPoint> points) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            writer.println("id_delivery,lat,lng,timestamp");
+            for (DeliveryPoint point : points) {
+                writer.println(point.idDelivery + "," + point.lat + "," + point.lng + "," + point.timestamp);
+            }
+        }
+    }
+}
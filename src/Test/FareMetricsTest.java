@@ -0,0 +1,94 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareMetrics;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class FareMetricsTest {
+
+    // Dropped points, segment branches and parsed rows are counted while enabled, and nothing while disabled
+    @Test
+    public void testCountsWhileEnabled() throws Exception {
+        List<DeliveryPoint> points = Arrays.asList(
+                new DeliveryPoint(1, 35.6997, 51.3380, 1704096000L),   // 12:30 Tehran time
+                new DeliveryPoint(1, 35.7000, 51.3400, 1704096060L),
+                new DeliveryPoint(1, 36.7000, 52.3400, 1704096120L),   // far away: > 100 km/h, dropped
+                new DeliveryPoint(1, 35.7050, 51.3450, 1704096180L),   // compared with the glitch: dropped too
+                new DeliveryPoint(1, 35.7060, 51.3460, 1704096480L));  // slow since the last kept point: idle
+
+        try {
+            FareMetrics.enable(false);
+            FareMetrics.resetAll();
+            DeliveryFareEstimation.priceDelivery(points);
+            assertEquals(0, FareMetrics.snapshot().deliveriesPriced);
+
+            FareMetrics.enable(true);
+            DeliveryFareEstimation.priceDelivery(points);
+            FareMetrics.Snapshot snapshot = FareMetrics.snapshot();
+            assertEquals(1, snapshot.deliveriesPriced);
+            assertEquals(3, snapshot.pointsKept);
+            assertEquals(2, snapshot.pointsDropped);
+            assertEquals(1, snapshot.segments[FareMetrics.DAY]);
+            assertEquals(1, snapshot.segments[FareMetrics.IDLE]);
+
+            File file = File.createTempFile("metrics", ".csv");
+            try (PrintWriter writer = new PrintWriter(file)) {
+                writer.println("id_delivery,lat,lng,timestamp");
+                for (DeliveryPoint point : points) {
+                    writer.println(point.idDelivery + "," + point.lat + "," + point.lng + "," + point.timestamp);
+                }
+            }
+            DeliveryFareEstimation.readData(file.getPath());
+            assertEquals(points.size(), FareMetrics.snapshot().rowsParsed);
+            file.delete();
+        } finally {
+            FareMetrics.enable(false);
+            FareMetrics.resetAll();
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        FareMetrics.LatencyHistogram histogram = new FareMetrics.LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+
+        // Reported as the upper bound of the bucket: never below the exact value, at most 12.5% above it
+        long p50 = histogram.percentile(0.5);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p50 >= 500_000 && p50 <= 562_500);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000);
+        assertEquals(1_000_000, histogram.percentile(1.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+
+    @Test
+    public void testJsonAndJmx() throws Exception {
+        String json = FareMetrics.snapshot().toJson();
+        assertTrue(json.startsWith("{\"elapsedSeconds\":"));
+        assertTrue(json.contains("\"segments\":{\"idle\":"));
+        assertTrue(json.contains("\"batchLatencyMillis\":{\"p50\":"));
+        assertTrue(json.endsWith("}"));
+        assertTrue(FareMetrics.snapshot().toText().startsWith("[metrics "));
+
+        FareMetrics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("main:type=FareMetrics");
+        assertTrue(server.isRegistered(name));
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Enabled"));
+        assertTrue(server.getAttribute(name, "PointsDropped") instanceof Long);
+    }
+}
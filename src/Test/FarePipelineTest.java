@@ -0,0 +1,87 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.FarePipeline;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class FarePipelineTest {
+
+    @Test
+    public void testOutputMatchesStreamingInInputOrder() throws IOException {
+        File expected = File.createTempFile("streaming", ".csv");
+        File actual = File.createTempFile("pipeline", ".csv");
+        for (String path : new String[]{"src/sample_data.csv", "src/expanded_delivery_data.csv"}) {
+            DeliveryFareEstimation.processStreaming(path, expected.getPath());
+
+            // From the smallest queues and chunks, where every hand-off blocks, to a roomy configuration
+            int[][] configurations = {{1, 1, 1, 1}, {2, 3, 1, 1}, {1, 4, 2, 3}, {2, 2, 16, 256}};
+            for (int[] configuration : configurations) {
+                FarePipeline pipeline = new FarePipeline(configuration[0], configuration[1], configuration[2], configuration[3]);
+                pipeline.run(path, actual.getPath());
+                assertEquals(Files.readAllLines(expected.toPath()), Files.readAllLines(actual.toPath()));
+
+                int deliveries = Files.readAllLines(expected.toPath()).size() - 1;
+                for (FarePipeline.StageStats stage : pipeline.stats()) {
+                    assertEquals(stage.name, deliveries, stage.deliveries);
+                    assertTrue(stage.name, stage.maxQueueDepth <= stage.queueCapacity || stage.queueCapacity == 0);
+                }
+            }
+        }
+        expected.delete();
+        actual.delete();
+    }
+
+    // One very long delivery holds a price worker while the others race ahead with short ones: the chunks waiting
+    // for it to be written stay within the in-flight window instead of growing with the rest of the input
+    @Test
+    public void testSlowChunkKeepsReorderBufferBounded() throws IOException {
+        File input = File.createTempFile("slowChunk", ".csv");
+        File expected = File.createTempFile("streaming", ".csv");
+        File actual = File.createTempFile("pipeline", ".csv");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(input))) {
+            writer.write("id_delivery,lat,lng,timestamp\n");
+            for (int i = 0; i < 300_000; i++) {
+                writer.write("1," + (35.7 + i * 1e-5) + ",51.4," + (1723600000L + i * 5) + "\n");
+            }
+            for (int id = 2; id < 20_000; id++) {
+                writer.write(id + ",35.7,51.4,1723600000\n" + id + ",35.701,51.4,1723600030\n");
+            }
+        }
+
+        FarePipeline pipeline = new FarePipeline(2, 3, 2, 1);
+        pipeline.run(input.getPath(), actual.getPath());
+        DeliveryFareEstimation.processStreaming(input.getPath(), expected.getPath());
+        assertEquals(Files.readAllLines(expected.toPath()), Files.readAllLines(actual.toPath()));
+        assertTrue(pipeline.maxReorderChunks() + " > " + pipeline.maxInFlightChunks(),
+                pipeline.maxReorderChunks() <= pipeline.maxInFlightChunks());
+        input.delete();
+        expected.delete();
+        actual.delete();
+    }
+
+    @Test
+    public void testParseErrorStopsPipeline() throws IOException {
+        File input = File.createTempFile("broken", ".csv");
+        File output = File.createTempFile("pipeline", ".csv");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(input))) {
+            writer.write("id_delivery,lat,lng,timestamp\n");
+            for (int i = 0; i < 1000; i++) {
+                writer.write(i + ",35.7,51.4,1723600000\n");
+            }
+            writer.write("1000,35.7\n");
+        }
+
+        try {
+            new FarePipeline(1, 2, 1, 1).run(input.getPath(), output.getPath());
+            fail("Expected the parse error to be rethrown");
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage().contains("Missing column"));
+        }
+        input.delete();
+        output.delete();
+    }
+}
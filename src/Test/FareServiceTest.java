@@ -0,0 +1,186 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareService;
+import main.ForkJoinPricer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FareServiceTest {
+
+    // A whole file posted at once is priced like the batch mode, in order of first appearance
+    @Test
+    public void testPostFile() throws Exception {
+        try (FareService service = new FareService(0, 2, 256, 0)) {
+            service.start();
+            HttpClient client = HttpClient.newHttpClient();
+            HttpResponse<String> response = client.send(post(service, Files.readString(Paths.get("src/sample_data.csv"))),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+
+            Map<Integer, List<DeliveryPoint>> deliveries = new LinkedHashMap<>();
+            for (DeliveryPoint point : DeliveryFareEstimation.readData("src/sample_data.csv")) {
+                deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+            }
+            Map<Integer, Double> fares = ForkJoinPricer.priceDeliveries(deliveries, 1);
+            StringBuilder expected = new StringBuilder("id_delivery,fare_estimate\n");
+            for (Integer id : deliveries.keySet()) {
+                expected.append(id).append(',').append(String.format(Locale.ROOT, "%.2f", fares.get(id))).append('\n');
+            }
+            assertEquals(expected.toString(), response.body());
+        }
+    }
+
+    // Concurrent requests are batched together and every caller still gets its own fares
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        List<DeliveryPoint> points = DeliveryFareEstimation.readData("src/expanded_delivery_data.csv");
+        Map<Integer, List<DeliveryPoint>> deliveries = new LinkedHashMap<>();
+        for (DeliveryPoint point : points) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        Map<Integer, Double> fares = ForkJoinPricer.priceDeliveries(deliveries, 1);
+        List<Integer> ids = new ArrayList<>(deliveries.keySet());
+
+        try (FareService service = new FareService(0, 2, 64, 200)) {
+            service.start();
+            HttpClient client = HttpClient.newHttpClient();
+            ExecutorService clients = Executors.newFixedThreadPool(16);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int request = 0; request < 200; request++) {
+                int id = ids.get(request % ids.size());
+                futures.add(clients.submit(() -> {
+                    StringBuilder body = new StringBuilder();
+                    for (DeliveryPoint point : deliveries.get(id)) {
+                        body.append(point.idDelivery).append(',').append(point.lat).append(',')
+                                .append(point.lng).append(',').append(point.timestamp).append('\n');
+                    }
+                    HttpResponse<String> response = client.send(post(service, body.toString()), HttpResponse.BodyHandlers.ofString());
+                    assertEquals(200, response.statusCode());
+                    assertEquals("id_delivery,fare_estimate\n" + id + "," + String.format(Locale.ROOT, "%.2f", fares.get(id)) + "\n",
+                            response.body());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            clients.shutdown();
+            assertEquals(200, service.requests());
+            assertEquals(200, service.deliveries());
+            assertTrue(service.batches() <= 200);
+        }
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        try (FareService service = new FareService(0, 1, 16, 0)) {
+            service.start();
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals(400, client.send(post(service, "1,35.7,not-a-number,1700000000\n"),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(405, client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + service.port() + "/fares")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals("ok\n", client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + service.port() + "/health")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()).body());
+        }
+    }
+
+    // Callers racing with close() all get an answer: their fares or "Service closed", never a hang
+    @Test
+    public void testCloseWhilePricing() throws Exception {
+        List<List<DeliveryPoint>> delivery = Collections.singletonList(
+                DeliveryFareEstimation.readData("src/sample_data.csv").subList(0, 2));
+        for (int round = 0; round < 20; round++) {
+            FareService service = new FareService(0, 1, 16, 0);
+            service.start();
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(callers.submit(() -> {
+                    while (true) {
+                        try {
+                            service.price(delivery);
+                        } catch (ExecutionException e) {
+                            return null;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(5);
+            service.close();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            callers.shutdown();
+        }
+    }
+
+    // An error while pricing fails that request with the error; the dispatcher keeps serving the next ones
+    @Test
+    public void testPricingErrorKeepsServing() throws Exception {
+        List<List<DeliveryPoint>> failing = new AbstractList<List<DeliveryPoint>>() {
+            @Override
+            public List<DeliveryPoint> get(int index) {
+                throw new StackOverflowError();
+            }
+
+            @Override
+            public int size() {
+                return 1;
+            }
+        };
+        List<List<DeliveryPoint>> delivery = Collections.singletonList(
+                DeliveryFareEstimation.readData("src/sample_data.csv").subList(0, 2));
+        try (FareService service = new FareService(0, 1, 16, 0)) {
+            service.start();
+            double expected = service.price(delivery)[0];
+            try {
+                service.price(failing);
+                fail("The failing request was priced");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            assertEquals(expected, service.price(delivery)[0], 0);
+        }
+    }
+
+    // Bodies over the limit are refused with 413, with or without a Content-Length
+    @Test
+    public void testBodyLimit() throws Exception {
+        try (FareService service = new FareService(0, 1, 16, 0, 1024)) {
+            service.start();
+            HttpClient client = HttpClient.newHttpClient();
+            StringBuilder large = new StringBuilder();
+            while (large.length() <= 4096) {
+                large.append("1,35.7,51.4,1700000000\n");
+            }
+            assertEquals(413, client.send(post(service, large.toString()), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpRequest chunked = HttpRequest.newBuilder(URI.create("http://localhost:" + service.port() + "/fares"))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(large.toString().getBytes())))
+                    .build();
+            assertEquals(413, client.send(chunked, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpResponse<String> small = client.send(post(service, "1,35.7,51.4,1700000000\n1,35.71,51.41,1700000300\n"),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, small.statusCode());
+            assertTrue(small.body().startsWith("id_delivery,fare_estimate\n1,"));
+        }
+    }
+
+    private static HttpRequest post(FareService service, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + service.port() + "/fares"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+}
@@ -0,0 +1,57 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ForkJoinPricer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ForkJoinPricerTest {
+
+    // Helper to group the sample file by id_delivery like main does
+    private Map<Integer, List<DeliveryPoint>> loadDeliveries(String path) throws Exception {
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : DeliveryFareEstimation.readData(path)) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        return deliveries;
+    }
+
+    @Test
+    public void testMatchesFixedBatchPath() throws Exception {
+        Map<Integer, List<DeliveryPoint>> deliveries = loadDeliveries("src/expanded_delivery_data.csv");
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Map<Integer, Double> expected = DeliveryFareEstimation.priceInFixedBatches(deliveries, executor, 3);
+            for (int parallelism : new int[]{1, 2, 3, 8}) {
+                assertEquals(expected, ForkJoinPricer.priceDeliveries(deliveries, parallelism));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFewerDeliveriesThanWorkers() throws Exception {
+        // Fewer deliveries than batches used to divide by zero in the fixed split
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        deliveries.put(1, Arrays.asList(
+                new DeliveryPoint(1, 51.5074, -0.1278, 1727830800),
+                new DeliveryPoint(1, 51.5074, -0.1278, 1727834400)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Map<Integer, Double> fixed = DeliveryFareEstimation.priceInFixedBatches(deliveries, executor, 3);
+            assertEquals(fixed, ForkJoinPricer.priceDeliveries(deliveries, 4));
+            assertEquals(1, fixed.size());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(ForkJoinPricer.priceDeliveries(new HashMap<>(), 4).isEmpty());
+    }
+}
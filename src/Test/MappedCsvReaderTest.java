@@ -0,0 +1,74 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.MappedCsvReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+
+public class MappedCsvReaderTest {
+
+    // Helper to write CSV content to a temporary file
+    private File writeTempCsv(String content) throws IOException {
+        File tempFile = File.createTempFile("testMapped", ".csv");
+        tempFile.deleteOnExit();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
+        writer.write(content);
+        writer.close();
+        return tempFile;
+    }
+
+    // Helper to check that two lists hold bit-identical points
+    private void assertSamePoints(List<DeliveryPoint> expected, List<DeliveryPoint> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).idDelivery, actual.get(i).idDelivery);
+            assertEquals(Double.doubleToLongBits(expected.get(i).lat), Double.doubleToLongBits(actual.get(i).lat));
+            assertEquals(Double.doubleToLongBits(expected.get(i).lng), Double.doubleToLongBits(actual.get(i).lng));
+            assertEquals(expected.get(i).timestamp, actual.get(i).timestamp);
+        }
+    }
+
+    @Test
+    public void testMatchesBufferedReaderOnSampleFiles() throws IOException {
+        for (String path : new String[]{"src/sample_data.csv", "src/expanded_delivery_data.csv"}) {
+            assertSamePoints(DeliveryFareEstimation.readDataBuffered(path), MappedCsvReader.readData(path));
+        }
+    }
+
+    @Test
+    public void testUnusualNumberFormats() throws IOException {
+        // Negative values, long mantissas, exponents and a missing trailing newline
+        File tempFile = writeTempCsv("id_delivery,lat,lng,timestamp\n" +
+                "7,-33.868820,-151.209296,1609459200\n" +
+                "7,35.604895664479514,51.379106091043695,1609459260\n" +
+                "8,1.5e1,-0.0,0\n" +
+                "8,.5,12.,-42\n" +
+                "2147483647,0.1000000000000000055511151231257827,51.4,9223372036854775807");
+
+        assertSamePoints(DeliveryFareEstimation.readDataBuffered(tempFile.getPath()),
+                MappedCsvReader.readData(tempFile.getPath()));
+    }
+
+    @Test
+    public void testHeaderOnlyAndEmptyFiles() throws IOException {
+        assertEquals(0, MappedCsvReader.readData(writeTempCsv("id_delivery,lat,lng,timestamp\n").getPath()).size());
+        assertEquals(0, MappedCsvReader.readData(writeTempCsv("").getPath()).size());
+    }
+
+    @Test
+    public void testCrlfLineEndings() throws IOException {
+        File tempFile = writeTempCsv("id_delivery,lat,lng,timestamp\r\n1,51.5074,-0.1278,1609459200\r\n");
+
+        List<DeliveryPoint> points = MappedCsvReader.readData(tempFile.getPath());
+        assertEquals(1, points.size());
+        assertEquals(1609459200, points.get(0).timestamp);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testMissingColumnIsRejected() throws IOException {
+        MappedCsvReader.readData(writeTempCsv("id_delivery,lat,lng,timestamp\n1,51.5074\n").getPath());
+    }
+}
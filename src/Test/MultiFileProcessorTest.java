@@ -0,0 +1,135 @@
+package Test;
+
+import main.MultiFileProcessor;
+import main.MultiFileProcessor.ExecutionMode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class MultiFileProcessorTest {
+
+    @Test
+    public void testEveryModeMatchesSingleFileProcessing() throws IOException {
+        File outputDir = Files.createTempDirectory("multiFile").toFile();
+        List<String> inputs = Arrays.asList("src/sample_data.csv", "src/expanded_delivery_data.csv");
+
+        // Expected output of each file on its own
+        List<List<String>> expected = new ArrayList<>();
+        for (String input : inputs) {
+            File single = File.createTempFile("single", ".csv");
+            MultiFileProcessor.processFile(input, single.getPath());
+            expected.add(Files.readAllLines(single.toPath()));
+            single.delete();
+        }
+
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            // A budget of 1 KB is smaller than either file, so the files run one at a time
+            for (long budget : new long[]{1024, 64L * 1024 * 1024}) {
+                List<MultiFileProcessor.FileResult> results =
+                        MultiFileProcessor.process(inputs, outputDir.getPath(), mode, 2, budget);
+                assertEquals(inputs.size(), results.size());
+                for (int i = 0; i < inputs.size(); i++) {
+                    assertEquals(inputs.get(i), results.get(i).inputPath);
+                    assertEquals(expected.get(i), Files.readAllLines(new File(results.get(i).outputPath).toPath()));
+                    assertEquals(expected.get(i).size() - 1, results.get(i).deliveries);
+                }
+            }
+        }
+
+        for (File file : outputDir.listFiles()) {
+            file.delete();
+        }
+        outputDir.delete();
+    }
+
+    @Test
+    public void testMissingInputFails() throws IOException {
+        File outputDir = Files.createTempDirectory("multiFile").toFile();
+        try {
+            MultiFileProcessor.process(Arrays.asList("src/sample_data.csv", "does_not_exist.csv"),
+                    outputDir.getPath(), ExecutionMode.VIRTUAL, 2, 1 << 20);
+            fail("Expected an IOException for the missing input");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("does_not_exist.csv"));
+        }
+
+        for (File file : outputDir.listFiles()) {
+            file.delete();
+        }
+        outputDir.delete();
+    }
+
+    // A malformed file fails the run as soon as it fails: the large file running next to it is cancelled and
+    // writes no output
+    @Test
+    public void testFailureCancelsTheOtherFiles() throws IOException {
+        File inputDir = Files.createTempDirectory("multiFileInput").toFile();
+        File outputDir = Files.createTempDirectory("multiFile").toFile();
+        File large = new File(inputDir, "large.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(large.toPath())) {
+            writer.write("id_delivery,lat,lng,timestamp\n");
+            for (int i = 0; i < 2_000_000; i++) {
+                writer.write((i / 100) + ",35." + (700000 + i % 100) + ",51.3,"  + (1723600000 + (i % 100) * 60) + "\n");
+            }
+        }
+        File malformed = new File(inputDir, "malformed.csv");
+        Files.write(malformed.toPath(), "id_delivery,lat,lng,timestamp\n1,35.7,not a number,1723600000\n".getBytes());
+
+        try {
+            MultiFileProcessor.process(Arrays.asList(large.getPath(), malformed.getPath()), outputDir.getPath(),
+                    ExecutionMode.FIXED, 2, 1L << 30);
+            fail("The malformed file was accepted");
+        } catch (RuntimeException e) {
+            assertTrue(e instanceof NumberFormatException);
+        }
+        assertFalse(new File(MultiFileProcessor.outputPathFor(large.getPath(), outputDir.getPath())).exists());
+
+        for (File directory : new File[]{inputDir, outputDir}) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    // Inputs with the same name in different directories, or the same input twice, get outputs of their own
+    @Test
+    public void testInputsWithTheSameNameDoNotShareAnOutput() throws IOException {
+        File inputDir = Files.createTempDirectory("multiFileInput").toFile();
+        File outputDir = Files.createTempDirectory("multiFile").toFile();
+        File a = new File(inputDir, "a");
+        File b = new File(inputDir, "b");
+        a.mkdir();
+        b.mkdir();
+        Files.copy(new File("src/sample_data.csv").toPath(), new File(a, "tehran.csv").toPath());
+        Files.copy(new File("src/expanded_delivery_data.csv").toPath(), new File(b, "tehran.csv").toPath());
+        List<String> inputs = Arrays.asList(new File(a, "tehran.csv").getPath(), new File(b, "tehran.csv").getPath(),
+                new File(a, "tehran.csv").getPath());
+
+        List<MultiFileProcessor.FileResult> results =
+                MultiFileProcessor.process(inputs, outputDir.getPath(), ExecutionMode.VIRTUAL, 3, 1 << 30);
+        assertEquals(new File(outputDir, "tehran_fares.csv").getPath(), results.get(0).outputPath);
+        assertEquals(new File(outputDir, "tehran_2_fares.csv").getPath(), results.get(1).outputPath);
+        assertEquals(new File(outputDir, "tehran_3_fares.csv").getPath(), results.get(2).outputPath);
+        for (int i = 0; i < inputs.size(); i++) {
+            File single = File.createTempFile("single", ".csv");
+            MultiFileProcessor.processFile(inputs.get(i), single.getPath());
+            assertEquals(Files.readAllLines(single.toPath()), Files.readAllLines(new File(results.get(i).outputPath).toPath()));
+            single.delete();
+        }
+
+        for (File directory : new File[]{a, b, inputDir, outputDir}) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testOutputPathFor() {
+        assertEquals(new File("out", "tehran_fares.csv").getPath(), MultiFileProcessor.outputPathFor("in/tehran.csv", "out"));
+    }
+}
@@ -0,0 +1,69 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ParallelCsvReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ParallelCsvReaderTest {
+
+    private static final String[] SAMPLE_FILES = {"src/sample_data.csv", "src/expanded_delivery_data.csv"};
+
+    @Test
+    public void testReadDataMatchesSingleThreadedForAnyChunkCount() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (String path : SAMPLE_FILES) {
+                List<DeliveryPoint> expected = DeliveryFareEstimation.readData(path);
+
+                // Includes more chunks than rows, so some chunks are empty
+                for (int chunks : new int[]{1, 2, 3, 7, 16, 500}) {
+                    List<DeliveryPoint> actual = ParallelCsvReader.readData(path, executor, chunks);
+                    assertEquals(expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertEquals(expected.get(i).toString(), actual.get(i).toString());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeliveriesAreStitchedAcrossChunkBoundaries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (String path : SAMPLE_FILES) {
+                // Expected grouping: consecutive rows with the same id_delivery
+                List<Integer> expectedIds = new ArrayList<>();
+                List<Integer> expectedSizes = new ArrayList<>();
+                for (DeliveryPoint point : DeliveryFareEstimation.readData(path)) {
+                    int last = expectedIds.size() - 1;
+                    if (last >= 0 && expectedIds.get(last) == point.idDelivery) {
+                        expectedSizes.set(last, expectedSizes.get(last) + 1);
+                    } else {
+                        expectedIds.add(point.idDelivery);
+                        expectedSizes.add(1);
+                    }
+                }
+
+                for (int chunks : new int[]{1, 5, 13, 64}) {
+                    List<List<DeliveryPoint>> deliveries = ParallelCsvReader.readDeliveries(path, executor, chunks);
+                    assertEquals(expectedIds.size(), deliveries.size());
+                    for (int i = 0; i < deliveries.size(); i++) {
+                        assertEquals(expectedIds.get(i).intValue(), deliveries.get(i).get(0).idDelivery);
+                        assertEquals(expectedSizes.get(i).intValue(), deliveries.get(i).size());
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
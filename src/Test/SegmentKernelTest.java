@@ -0,0 +1,139 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DistanceCalculator;
+import main.SegmentKernel;
+import main.TripStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class SegmentKernelTest {
+
+    // The scalar kernel performs exactly the operations of haversine and calculateSpeed
+    @Test
+    public void testScalarKernelIsBitIdentical() {
+        Random random = new Random(3);
+        for (int length = 0; length < 40; length++) {
+            double[] lats = new double[length + 3];
+            double[] lngs = new double[length + 3];
+            long[] timestamps = new long[length + 3];
+            fill(random, lats, lngs, timestamps);
+
+            double[] distances = new double[length];
+            double[] speeds = new double[length];
+            SegmentKernel.scalarSegments(lats, lngs, timestamps, 3, length, distances, speeds);
+            for (int k = 1; k < length; k++) {
+                int i = 3 + k;
+                assertEquals(DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], lats[i], lngs[i]), distances[k], 0);
+                assertEquals(DistanceCalculator.calculateSpeed(lats[i - 1], lngs[i - 1], timestamps[i - 1],
+                        lats[i], lngs[i], timestamps[i]), speeds[k], 0);
+            }
+        }
+    }
+
+    // Whichever implementation is active (the vector one with --add-modules jdk.incubator.vector) stays within 1e-12
+    @Test
+    public void testKernelAgreesWithScalar() {
+        Random random = new Random(7);
+        for (int length = 0; length < 200; length++) {
+            double[] lats = new double[length + 1];
+            double[] lngs = new double[length + 1];
+            long[] timestamps = new long[length + 1];
+            fill(random, lats, lngs, timestamps);
+
+            double[] expectedDistances = new double[length];
+            double[] expectedSpeeds = new double[length];
+            SegmentKernel.scalarSegments(lats, lngs, timestamps, 1, length, expectedDistances, expectedSpeeds);
+            double[] distances = new double[length];
+            double[] speeds = new double[length];
+            SegmentKernel.segments(lats, lngs, timestamps, 1, length, distances, speeds);
+            for (int k = 0; k < length; k++) {
+                assertEquals(expectedDistances[k], distances[k], 1e-12 * expectedDistances[k] + 1e-15);
+                assertEquals(expectedSpeeds[k], speeds[k], 1e-12 * expectedSpeeds[k] + 1e-15);
+            }
+        }
+    }
+
+    // -Dfare.kernel=true prices the batch through TripStore.priceAll: the batch output with the scalar kernel, and
+    // within a cent of it (a rounding tie) with the vector kernel. Delivery 7 comes in two runs and is joined.
+    @Test
+    public void testBatchWithKernelMatchesBatch() throws Exception {
+        File input = File.createTempFile("kernel", ".csv");
+        List<String> lines = new ArrayList<>(Files.readAllLines(new File("src/expanded_delivery_data.csv").toPath()));
+        lines.add("7,35.70,51.30,1723700000");
+        lines.add("7,35.71,51.32,1723700400");
+        Files.write(input.toPath(), lines);
+
+        List<String> expected = batch(input, false);
+        List<String> actual = batch(input, true);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            if (SegmentKernel.isVectorized() && i > 0) {
+                String[] expectedRow = expected.get(i).split(",");
+                String[] actualRow = actual.get(i).split(",");
+                assertEquals(expectedRow[0], actualRow[0]);
+                assertEquals(Double.parseDouble(expectedRow[1]), Double.parseDouble(actualRow[1]), 0.0100001);
+            } else {
+                assertEquals(expected.get(i), actual.get(i));
+            }
+        }
+        input.delete();
+    }
+
+    @Test
+    public void testTripStorePriceAllMatchesPriceDelivery() {
+        Random random = new Random(9);
+        TripStore store = new TripStore();
+        for (int id = 1; id <= 300; id++) {
+            double lat = 35.6 + random.nextDouble() * 0.2;
+            double lng = 51.3 + random.nextDouble() * 0.2;
+            long timestamp = 1_700_000_000L + random.nextInt(7 * 86_400);
+            for (int i = 1 + random.nextInt(60); i > 0; i--) {
+                store.add(id, lat, lng, timestamp);
+                lat += (random.nextDouble() - 0.5) * 0.004;
+                lng += (random.nextDouble() - 0.5) * 0.004;
+                timestamp += random.nextInt(40);
+            }
+        }
+
+        double[] fares = store.priceAll();
+        assertEquals(store.deliveryCount(), fares.length);
+        for (int delivery = 0; delivery < store.deliveryCount(); delivery++) {
+            assertEquals(store.priceDelivery(delivery), fares[delivery], SegmentKernel.isVectorized() ? 1e-9 : 0);
+        }
+    }
+
+    private static List<String> batch(File input, boolean kernel) throws Exception {
+        File output = File.createTempFile("batch", ".csv");
+        if (kernel) {
+            System.setProperty("fare.kernel", "true");
+        }
+        try {
+            DeliveryFareEstimation.processBatch(input.getPath(), output.getPath(), false);
+        } finally {
+            System.clearProperty("fare.kernel");
+        }
+        List<String> lines = Files.readAllLines(output.toPath());
+        output.delete();
+        return lines;
+    }
+
+    // Method to fill the columns with a random walk: small hops, occasional jumps, repeated timestamps
+    private static void fill(Random random, double[] lats, double[] lngs, long[] timestamps) {
+        double lat = -60 + random.nextDouble() * 120;
+        double lng = -179 + random.nextDouble() * 358;
+        long timestamp = 1_700_000_000L;
+        for (int i = 0; i < lats.length; i++) {
+            boolean jump = random.nextInt(20) == 0;
+            lat = Math.max(-70, Math.min(70, lat + (random.nextDouble() - 0.5) * (jump ? 2 : 0.005)));
+            lng = lng + (random.nextDouble() - 0.5) * (jump ? 2 : 0.005);
+            timestamp += random.nextInt(4) == 0 ? 0 : random.nextInt(60);
+            lats[i] = lat;
+            lngs[i] = lng;
+            timestamps[i] = timestamp;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.ServiceArea;
+import main.TripStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ServiceAreaTest {
+
+    private static final String TEHRAN = "35.5,51.1,35.9,51.7";
+
+    // With -Dfare.area the batch output is that of the input without the fixes outside the area. Delivery 1 starts
+    // with a fix at 0,0, which without the area is priced as a jump of thousands of km; delivery 2 lies wholly in
+    // another city and is left out.
+    @Test
+    public void testBatchDropsFixesOutsideTheArea() throws Exception {
+        String header = "id_delivery,lat,lng,timestamp\n";
+        String delivery1 = "1,35.70,51.30,1723600300\n1,35.71,51.31,1723600600\n1,35.73,51.33,1723600900\n";
+        String delivery3 = "3,35.75,51.40,1723600000\n3,35.76,51.42,1723600400\n";
+        File input = write(header + "1,0,0,1723600000\n" + delivery1 + "2,32.65,51.67,1723600000\n2,32.66,51.68,1723600300\n"
+                + delivery3);
+        File inside = write(header + delivery1 + delivery3);
+
+        List<String> withoutArea = batch(input, null);
+        List<String> withArea = batch(input, TEHRAN);
+        List<String> expected = batch(inside, null);
+        assertEquals(expected, withArea);
+        assertEquals(4, withoutArea.size());
+        assertTrue(withoutArea.get(2).startsWith("2,"));
+        assertTrue(Double.parseDouble(withoutArea.get(1).split(",")[1]) > 100 * Double.parseDouble(withArea.get(1).split(",")[1]));
+
+        input.delete();
+        inside.delete();
+    }
+
+    @Test
+    public void testLoadIndexedDropsAndIndexes() throws IOException {
+        File input = write("id_delivery,lat,lng,timestamp\n1,0,0,1723600000\n1,35.70,51.30,1723600300\n"
+                + "2,35.75,51.40,1723600000\n");
+        ServiceArea area = ServiceArea.parse(TEHRAN, 0.01);
+        TripStore store = area.load(input.getPath());
+        assertEquals(1, store.length(0));
+        assertEquals(2, area.loadIndexed(input.getPath()).pointCount());
+        assertEquals(0, area.loadIndexed(input.getPath()).outsidePoints().length);
+        input.delete();
+    }
+
+    @Test
+    public void testParse() {
+        assertNull(ServiceArea.fromSystemProperties());
+        ServiceArea area = ServiceArea.parse(" 35.5, 51.1,35.9 ,51.7", 0.02);
+        assertEquals(35.5, area.minLat, 0);
+        assertEquals(51.7, area.maxLng, 0);
+        for (String invalid : new String[]{"35.5,51.1,35.9", "35.9,51.1,35.5,51.7"}) {
+            try {
+                ServiceArea.parse(invalid, 0.01);
+                fail("Accepted " + invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("area", ".csv");
+        Files.write(file.toPath(), content.getBytes());
+        return file;
+    }
+
+    private static List<String> batch(File input, String area) throws Exception {
+        File output = File.createTempFile("batch", ".csv");
+        if (area != null) {
+            System.setProperty("fare.area", area);
+        }
+        try {
+            DeliveryFareEstimation.processBatch(input.getPath(), output.getPath(), false);
+        } finally {
+            System.clearProperty("fare.area");
+        }
+        List<String> lines = Files.readAllLines(output.toPath());
+        output.delete();
+        return lines;
+    }
+}
@@ -0,0 +1,120 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.ShardedRun;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ShardedRunTest {
+
+    // Worker that fails the first attempt of every shard: java ... ShardedRunTest$FlakyWorker <markerDir> worker <in> <out>
+    public static class FlakyWorker {
+        public static void main(String[] args) throws IOException {
+            File marker = new File(args[0], new File(args[2]).getName() + ".failed");
+            if (marker.createNewFile()) {
+                System.exit(3);
+            }
+            DeliveryFareEstimation.main(Arrays.copyOfRange(args, 1, args.length));
+        }
+    }
+
+    @Test
+    public void testShardedRunMatchesBatch() throws Exception {
+        File directory = Files.createTempDirectory("shards").toFile();
+        File output = File.createTempFile("sharded", ".csv");
+        // More shards than workers, so workers take several shards each
+        ShardedRun run = new ShardedRun(ShardedRun.localWorkerCommand(2), 2, 3, 0, 0, directory);
+        ShardedRun.Result result = run.run("src/expanded_delivery_data.csv", output.getPath());
+
+        assertEquals(3, result.shards);
+        assertEquals(0, result.retries);
+        assertEquals(batchOutput("src/expanded_delivery_data.csv"), Files.readAllLines(output.toPath()));
+        assertEquals(0, directory.list().length);
+        directory.delete();
+        output.delete();
+    }
+
+    // Rows are copied to the shards as they are: CRLF line ends, an empty line, no final newline
+    @Test
+    public void testCsvLinesAreCopiedAsTheyAre() throws Exception {
+        File input = File.createTempFile("input", ".csv");
+        File output = File.createTempFile("sharded", ".csv");
+        Files.write(input.toPath(), ("id_delivery,lat,lng,timestamp\r\n1,35.7,51.3,1723600000\r\n1,35.71,51.31,1723600300\r\n\r\n"
+                + "2,35.7,51.3,1723600000\r\n3,35.7,51.3,1723600000\r\n2,35.72,51.3,1723600600").getBytes());
+        ShardedRun run = new ShardedRun(ShardedRun.localWorkerCommand(1), 1, 2, 0, 0, null);
+        run.run(input.getPath(), output.getPath());
+
+        assertEquals(batchOutput(input.getPath()), Files.readAllLines(output.toPath()));
+        assertEquals(4, Files.readAllLines(output.toPath()).size());
+        input.delete();
+        output.delete();
+    }
+
+    @Test
+    public void testFailedShardsAreRetried() throws Exception {
+        File directory = Files.createTempDirectory("shards").toFile();
+        File markers = Files.createTempDirectory("markers").toFile();
+        File output = File.createTempFile("sharded", ".csv");
+        ShardedRun run = new ShardedRun(worker(FlakyWorker.class.getName(), markers.getPath()), 2, 2, 1, 0, directory);
+        ShardedRun.Result result = run.run("src/expanded_delivery_data.csv", output.getPath());
+
+        assertEquals(2, result.retries);
+        assertEquals(batchOutput("src/expanded_delivery_data.csv"), Files.readAllLines(output.toPath()));
+        for (File marker : markers.listFiles()) {
+            marker.delete();
+        }
+        markers.delete();
+        directory.delete();
+        output.delete();
+    }
+
+    @Test
+    public void testShardFailingEveryAttemptFailsTheRun() throws Exception {
+        File directory = Files.createTempDirectory("shards").toFile();
+        File output = File.createTempFile("sharded", ".csv");
+        ShardedRun run = new ShardedRun(worker("Test.NoSuchWorker"), 1, 2, 1, 0, directory);
+        try {
+            run.run("src/sample_data.csv", output.getPath());
+            fail("The run succeeded without workers");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failed after 2 attempts"));
+        }
+
+        // The shards and the worker logs are kept for inspection
+        assertTrue(new File(directory, "shard-0.csv").isFile());
+        assertTrue(new File(directory, "shard-0.1.log").isFile());
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        output.delete();
+    }
+
+    @Test
+    public void testWorkersGetTheJvmOptionsAndAShareOfTheHeap() {
+        List<String> options = ShardedRun.workerJvmOptions(Arrays.asList("-Xmx4g", "-Xms1g", "--add-modules=jdk.incubator.vector",
+                "-XX:+UseParallelGC", "-Dfare.vector=false", "-Dfare.shard.workers=4", "-Djava.io.tmpdir=/data/tmp",
+                "-agentlib:jdwp=transport=dt_socket,server=y,address=5005", "-XX:MaxRAMPercentage=50"), 4L << 30, 4);
+        assertEquals(Arrays.asList("--add-modules=jdk.incubator.vector", "-XX:+UseParallelGC", "-Djava.io.tmpdir=/data/tmp",
+                "-Xmx1024m"), options);
+        assertEquals(Collections.singletonList("-Xmx64m"), ShardedRun.workerJvmOptions(Collections.emptyList(), 100L << 20, 8));
+    }
+
+    private static List<String> worker(String mainClass, String... arguments) {
+        List<String> command = new ArrayList<>(Arrays.asList(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "-Dfare.parallelism=1", mainClass));
+        command.addAll(Arrays.asList(arguments));
+        return command;
+    }
+
+    private static List<String> batchOutput(String input) throws Exception {
+        File output = File.createTempFile("batch", ".csv");
+        DeliveryFareEstimation.processBatch(input, output.getPath(), false);
+        List<String> lines = Files.readAllLines(output.toPath());
+        output.delete();
+        return lines;
+    }
+}
@@ -0,0 +1,119 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.ForkJoinPricer;
+import main.SortedFareRuns;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SortedFareRunsTest {
+
+    // Runs added in any order, in memory or spilled, merge into the same file as a map written sorted by id
+    @Test
+    public void testMergeMatchesSortedWrite() throws IOException {
+        Random random = new Random(5);
+        Map<Integer, Double> expected = new HashMap<>();
+        List<Map<Integer, Double>> parts = new ArrayList<>();
+        for (int part = 0; part < 7; part++) {
+            parts.add(new HashMap<>());
+        }
+        for (int i = 0; i < 20_000; i++) {
+            int id = random.nextInt() / 2;
+            if (expected.containsKey(id)) {
+                continue;
+            }
+            double fare = random.nextDouble() * 500;
+            expected.put(id, fare);
+            parts.get(random.nextInt(parts.size())).put(id, fare);
+        }
+
+        File sorted = File.createTempFile("sorted", ".csv");
+        DeliveryFareEstimation.writeOutputToCSV(expected, sorted.getPath(), true);
+
+        for (long memoryRecords : new long[]{Long.MAX_VALUE, 5_000, 0}) {
+            File merged = File.createTempFile("merged", ".csv");
+            try (SortedFareRuns runs = new SortedFareRuns(memoryRecords)) {
+                for (Map<Integer, Double> part : parts) {
+                    runs.addRun(part);
+                }
+                assertEquals(expected.size(), runs.recordCount());
+                if (memoryRecords == 0) {
+                    assertEquals(parts.size(), runs.spilledRunCount());
+                }
+                runs.mergeTo(merged.getPath());
+            }
+            assertArrayEquals(Files.readAllBytes(sorted.toPath()), Files.readAllBytes(merged.toPath()));
+            merged.delete();
+        }
+        sorted.delete();
+    }
+
+    // Equal ids keep the order of their runs and, within a run, their input order
+    @Test
+    public void testEqualIdsKeepRunOrder() throws IOException {
+        File merged = File.createTempFile("merged", ".csv");
+        try (SortedFareRuns runs = new SortedFareRuns(0)) {
+            runs.addRun(new int[]{2, 1, 2}, new double[]{2.0, 1.0, 2.5}, 3);
+            runs.addRun(new int[]{2, 0, 9}, new double[]{3.0, 0.5, 9.9}, 2);
+            runs.mergeTo(merged.getPath());
+        }
+        assertEquals(Arrays.asList("id_delivery,fare_estimate", "0,0.50", "1,1.00", "2,2.00", "2,2.50", "2,3.00"),
+                Files.readAllLines(merged.toPath()));
+        merged.delete();
+    }
+
+    // The fork/join and fixed-batch paths produce the same bytes whatever the parallelism
+    @Test
+    public void testParallelRunsAreByteIdentical() throws Exception {
+        Random random = new Random(11);
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (int id = 0; id < 3_000; id++) {
+            List<DeliveryPoint> points = new ArrayList<>();
+            long timestamp = 1_700_000_000L + random.nextInt(86_400);
+            for (int i = 0; i < 1 + random.nextInt(30); i++) {
+                timestamp += 10 + random.nextInt(30);
+                points.add(new DeliveryPoint(id * 7, 35.7 + random.nextDouble() * 0.01, 51.4 + random.nextDouble() * 0.01, timestamp));
+            }
+            deliveries.put(id * 7, points);
+        }
+
+        File reference = File.createTempFile("reference", ".csv");
+        try (SortedFareRuns runs = new SortedFareRuns(Long.MAX_VALUE)) {
+            ForkJoinPricer.priceToRuns(deliveries, 1, runs);
+            runs.mergeTo(reference.getPath());
+        }
+        File sorted = File.createTempFile("sorted", ".csv");
+        DeliveryFareEstimation.writeOutputToCSV(ForkJoinPricer.priceDeliveries(deliveries, 1), sorted.getPath(), true);
+        assertArrayEquals(Files.readAllBytes(sorted.toPath()), Files.readAllBytes(reference.toPath()));
+
+        for (int parallelism : new int[]{2, 4, 8}) {
+            File output = File.createTempFile("parallel", ".csv");
+            try (SortedFareRuns runs = new SortedFareRuns(1_000)) {
+                ForkJoinPricer.priceToRuns(deliveries, parallelism, runs);
+                runs.mergeTo(output.getPath());
+            }
+            assertArrayEquals(Files.readAllBytes(reference.toPath()), Files.readAllBytes(output.toPath()));
+            output.delete();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        File fixed = File.createTempFile("fixed", ".csv");
+        try (SortedFareRuns runs = new SortedFareRuns(Long.MAX_VALUE)) {
+            DeliveryFareEstimation.priceInFixedBatches(deliveries, executor, 3, runs);
+            runs.mergeTo(fixed.getPath());
+        } finally {
+            executor.shutdown();
+        }
+        assertArrayEquals(Files.readAllBytes(reference.toPath()), Files.readAllBytes(fixed.toPath()));
+
+        reference.delete();
+        sorted.delete();
+        fixed.delete();
+    }
+}
@@ -0,0 +1,117 @@
+package Test;
+
+import main.AreaFilter;
+import main.DeliveryFareEstimation;
+import main.DistanceCalculator;
+import main.SpatialGridIndex;
+import main.TripStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+
+public class SpatialGridIndexTest {
+
+    // Tehran with some margin; the sample trips lie inside it
+    private static final double MIN_LAT = 35.5, MIN_LNG = 51.1, MAX_LAT = 35.9, MAX_LNG = 51.7;
+
+    // Box and radius queries return exactly the deliveries a full scan finds, including points outside the area
+    @Test
+    public void testQueriesMatchFullScan() throws IOException {
+        TripStore store = storeWithOutliers();
+        SpatialGridIndex index = SpatialGridIndex.build(store, MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG, 0.01);
+        assertEquals(store.pointCount(), index.pointCount());
+
+        Random random = new Random(5);
+        for (int query = 0; query < 200; query++) {
+            double lat = 35.4 + random.nextDouble() * 0.6;
+            double lng = 51.0 + random.nextDouble() * 0.8;
+            double size = random.nextDouble() * (query % 10 == 0 ? 40 : 0.1);
+            double boxMaxLat = lat + size;
+            double boxMaxLng = lng + size * 1.3;
+            assertArrayEquals(scan(store, (pointLat, pointLng) ->
+                            pointLat >= lat && pointLat <= boxMaxLat && pointLng >= lng && pointLng <= boxMaxLng),
+                    index.deliveriesInBox(lat, lng, boxMaxLat, boxMaxLng));
+
+            double radiusKm = random.nextDouble() * (query % 10 == 0 ? 5000 : 5);
+            assertArrayEquals(scan(store, (pointLat, pointLng) ->
+                            DistanceCalculator.haversine(lat, lng, pointLat, pointLng) <= radiusKm),
+                    index.deliveriesWithinRadius(lat, lng, radiusKm));
+        }
+
+        // Exactly the injected outliers fall outside the area
+        int[] outside = index.outsidePoints();
+        assertEquals(3, outside.length);
+        assertEquals(0, store.lats()[outside[0]], 0);
+    }
+
+    // The active filter (vector with --add-modules jdk.incubator.vector) keeps the same points as the scalar one
+    @Test
+    public void testFilterAgreesWithScalar() {
+        Random random = new Random(11);
+        for (int length = 0; length < 100; length++) {
+            double[] lats = new double[length + 2];
+            double[] lngs = new double[length + 2];
+            long[] timestamps = new long[length + 2];
+            for (int i = 0; i < lats.length; i++) {
+                boolean outlier = random.nextInt(length % 3 == 0 ? 50 : 4) == 0;
+                lats[i] = outlier ? (random.nextBoolean() ? 0 : Double.NaN) : 35.6 + random.nextDouble() * 0.2;
+                lngs[i] = outlier ? random.nextDouble() * 100 : 51.3 + random.nextDouble() * 0.2;
+                timestamps[i] = 1_700_000_000L + i;
+            }
+            double[] expectedLats = lats.clone();
+            double[] expectedLngs = lngs.clone();
+            long[] expectedTimestamps = timestamps.clone();
+
+            int expected = AreaFilter.scalarFilter(expectedLats, expectedLngs, expectedTimestamps, 2, length,
+                    MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG);
+            int kept = AreaFilter.filter(lats, lngs, timestamps, 2, length, MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG);
+            assertEquals(expected, kept);
+            assertArrayEquals(Arrays.copyOf(expectedLats, 2 + kept), Arrays.copyOf(lats, 2 + kept), 0);
+            assertArrayEquals(Arrays.copyOf(expectedLngs, 2 + kept), Arrays.copyOf(lngs, 2 + kept), 0);
+            assertArrayEquals(Arrays.copyOf(expectedTimestamps, 2 + kept), Arrays.copyOf(timestamps, 2 + kept));
+        }
+    }
+
+    @Test
+    public void testDropOutsideArea() throws IOException {
+        TripStore store = storeWithOutliers();
+        int before = store.length(0);
+        assertEquals(3, store.dropOutsideArea(MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG));
+        assertEquals(before - 1, store.length(0));
+
+        SpatialGridIndex index = SpatialGridIndex.build(store, MIN_LAT, MIN_LNG, MAX_LAT, MAX_LNG, 0.01);
+        assertEquals(0, index.outsidePoints().length);
+        assertEquals(store.pointCount() - 3, index.pointCount());
+    }
+
+    // Method to load the expanded sample and move three points of two deliveries to 0,0 and to another city
+    private static TripStore storeWithOutliers() throws IOException {
+        TripStore store = TripStore.fromPoints(DeliveryFareEstimation.readData("src/expanded_delivery_data.csv"));
+        store.lats()[store.offset(0) + 1] = 0;
+        store.lngs()[store.offset(0) + 1] = 0;
+        for (int i : new int[]{store.offset(1), store.offset(1) + 2}) {
+            store.lats()[i] = 32.65;
+            store.lngs()[i] = 51.67;
+        }
+        return store;
+    }
+
+    private interface PointTest {
+        boolean test(double lat, double lng);
+    }
+
+    // Method to find the matching deliveries by checking every point
+    private static int[] scan(TripStore store, PointTest test) {
+        List<Integer> found = new ArrayList<>();
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                if (test.test(store.lats()[i], store.lngs()[i])) {
+                    found.add(d);
+                    break;
+                }
+            }
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
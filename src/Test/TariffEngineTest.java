@@ -0,0 +1,71 @@
+package Test;
+
+import main.TariffEngine;
+import main.ZoneOffsetTable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Random;
+
+public class TariffEngineTest {
+
+    @Test
+    public void testOffsetTableMatchesZoneRules() {
+        for (String zone : new String[]{"Asia/Tehran", "Europe/Berlin", "UTC"}) {
+            ZoneId zoneId = ZoneId.of(zone);
+            ZoneOffsetTable table = new ZoneOffsetTable(zoneId);
+            Random random = new Random(1);
+            for (int i = 0; i < 100_000; i++) {
+                // From 1900 to 2200, past the end of the precomputed table
+                long epochSecond = -2208988800L + (long) (random.nextDouble() * 9.5e9);
+                assertEquals(zone + " at " + epochSecond,
+                        zoneId.getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds(),
+                        table.offsetSeconds(epochSecond));
+            }
+        }
+    }
+
+    @Test
+    public void testOffsetAroundTehranDstTransition() {
+        ZoneOffsetTable table = new ZoneOffsetTable(ZoneId.of("Asia/Tehran"));
+        // 2021-03-21T20:30:00Z: clocks moved from +03:30 to +04:30
+        assertEquals(12600, table.offsetSeconds(1616358599L));
+        assertEquals(16200, table.offsetSeconds(1616358600L));
+    }
+
+    @Test
+    public void testSegmentFareMatchesReference() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // Around the Tehran DST years and today, with segments from a few seconds to more than a day,
+            // sometimes going back in time
+            long timestamp1 = (random.nextBoolean() ? 1600000000L : 1723600000L) + random.nextInt(400 * 86400);
+            long timestamp2 = timestamp1 + (random.nextInt(4) == 0 ? random.nextInt(200_000) - 100_000 : random.nextInt(1200));
+            // Distances giving speeds on both sides of the 10 km/h idle threshold
+            double distance = random.nextDouble() * (random.nextBoolean() ? 0.05 : 5);
+            double fare = random.nextInt(3) == 0 ? 1.30 : random.nextDouble() * 50;
+
+            assertEquals(timestamp1 + " -> " + timestamp2,
+                    TariffEngine.segmentFareReference(fare, distance, timestamp1, timestamp2),
+                    TariffEngine.segmentFare(fare, distance, timestamp1, timestamp2), 0);
+        }
+    }
+
+    @Test
+    public void testSegmentFareAtBoundaries() {
+        // Local midnight and 05:00 of 2024-08-14 in Tehran (+03:30), with every second around them
+        long midnight = 1723580000L - Math.floorMod(1723580000L + 12600, 86400);
+        for (long base : new long[]{midnight, midnight + 5 * 3600, midnight + 86400 - 60}) {
+            for (long start = base - 120; start <= base + 120; start++) {
+                for (long length : new long[]{1, 59, 60, 61, 3600, 5 * 3600 + 1, 86400}) {
+                    for (double distance : new double[]{0.001, 0.5, 3}) {
+                        assertEquals(start + " +" + length,
+                                TariffEngine.segmentFareReference(1.30, distance, start, start + length),
+                                TariffEngine.segmentFare(1.30, distance, start, start + length), 0);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.FareAccumulator;
+import main.IncrementalPricer;
+import main.Tariff;
+import main.TariffEngine;
+import main.TariffRegistry;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class TariffTest {
+
+    // A tariff file that sets nothing, or sets the Tehran values, compiles to the built-in tariff
+    @Test
+    public void testDefaultsAreTheBuiltInTariff() throws IOException {
+        assertEquals(Tariff.TEHRAN.fingerprint(), Tariff.compile("empty", new Properties()).fingerprint());
+
+        TariffRegistry.load(new File("src/tariffs.properties").toPath(), null);
+        try {
+            assertEquals("tehran", TariffRegistry.current().name());
+            assertEquals(Tariff.TEHRAN.fingerprint(), TariffRegistry.current().fingerprint());
+            assertNotEquals(Tariff.TEHRAN.fingerprint(), TariffRegistry.get("tehran-surge").fingerprint());
+        } finally {
+            TariffRegistry.reset();
+        }
+
+        // Same fares as the original rules
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            long timestamp1 = 1723600000L + random.nextInt(400 * 86400);
+            long timestamp2 = timestamp1 + random.nextInt(1200);
+            double distance = random.nextDouble() * (random.nextBoolean() ? 0.05 : 5);
+            assertEquals(TariffEngine.segmentFareReference(1.30, distance, timestamp1, timestamp2),
+                    TariffEngine.segmentFare(Tariff.TEHRAN, 1.30, distance, timestamp1, timestamp2), 0);
+        }
+    }
+
+    // Doubling every amount doubles every fare exactly, through all the branches of the engine
+    @Test
+    public void testConfiguredRatesArePriced() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("double.flag", "2.6");
+        properties.setProperty("double.minimum", "6.94");
+        properties.setProperty("double.dayRatePerKm", "1.48");
+        properties.setProperty("double.nightRatePerKm", "2.6");
+        properties.setProperty("double.idleRatePerHour", "23.8");
+        Tariff doubled = Tariff.compile("double", properties);
+
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : DeliveryFareEstimation.readData("src/expanded_delivery_data.csv")) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        for (List<DeliveryPoint> points : deliveries.values()) {
+            double fare = DeliveryFareEstimation.priceDelivery(Tariff.TEHRAN, points);
+            assertEquals(fare, DeliveryFareEstimation.priceDelivery(points), 0);
+            assertEquals(2 * fare, DeliveryFareEstimation.priceDelivery(doubled, points), 0);
+        }
+
+        // The speed limit of the filter comes from the tariff too
+        properties.setProperty("slow.maxSpeedKmh", "1");
+        List<DeliveryPoint> points = Arrays.asList(new DeliveryPoint(1, 35.7, 51.3, 1723600000L),
+                new DeliveryPoint(1, 35.71, 51.3, 1723600060L));
+        assertEquals(2, DeliveryFareEstimation.filterInvalidPoints(Tariff.TEHRAN, points).size());
+        assertEquals(1, DeliveryFareEstimation.filterInvalidPoints(Tariff.compile("slow", properties), points).size());
+        FareAccumulator accumulator = new FareAccumulator(1, Tariff.compile("slow", properties));
+        accumulator.accept(points.get(0));
+        assertFalse(accumulator.accept(points.get(1)));
+    }
+
+    @Test
+    public void testInvalidValuesAreRejected() {
+        String[][] invalid = {{"flag", "-1"}, {"minimum", "cheap"}, {"dayRatePerKm", "NaN"}, {"zone", "Nowhere/City"},
+                {"nightEnd", "25:00"}, {"nightEnd", "00:00"}, {"maxSpeedKmh", "Infinity"}};
+        for (String[] value : invalid) {
+            Properties properties = new Properties();
+            properties.setProperty("bad." + value[0], value[1]);
+            try {
+                Tariff.compile("bad", properties);
+                fail(value[0] + "=" + value[1] + " was accepted");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("bad." + value[0]));
+            }
+        }
+    }
+
+    // select and load swap the current tariff; a file that does not compile leaves the tariffs in use alone
+    @Test
+    public void testRegistryKeepsTariffsOnBadFile() throws IOException {
+        File file = File.createTempFile("tariffs", ".properties");
+        try {
+            Files.write(file.toPath(), Arrays.asList("current=b", "a.flag=1", "b.flag=2"));
+            TariffRegistry.load(file.toPath(), null);
+            assertEquals("b", TariffRegistry.current().name());
+            assertEquals(2, TariffRegistry.current().flag(), 0);
+            TariffRegistry.select("a");
+            assertEquals(1, TariffRegistry.current().flag(), 0);
+            TariffRegistry.load(file.toPath(), "a");
+            assertEquals("a", TariffRegistry.current().name());
+
+            for (List<String> lines : Arrays.asList(Arrays.asList("a.flag=1", "a.flagg=2"),
+                    Arrays.asList("a.flag=-1"), Arrays.asList("current=c", "a.flag=1"), Arrays.asList("# empty"))) {
+                Files.write(file.toPath(), lines);
+                try {
+                    TariffRegistry.load(file.toPath(), null);
+                    fail(lines + " was accepted");
+                } catch (IOException e) {
+                    // expected
+                }
+                assertEquals("a", TariffRegistry.current().name());
+                assertEquals(1, TariffRegistry.current().flag(), 0);
+            }
+            try {
+                TariffRegistry.select("c");
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals("a", TariffRegistry.current().name());
+            }
+        } finally {
+            TariffRegistry.reset();
+            file.delete();
+        }
+        assertSame(Tariff.TEHRAN, TariffRegistry.current());
+    }
+
+    // A malformed unicode escape is refused like any bad file, and the watcher still picks up the next good save
+    @Test
+    public void testWatcherSurvivesMalformedFile() throws Exception {
+        File file = File.createTempFile("tariffs", ".properties");
+        try {
+            Files.write(file.toPath(), Arrays.asList("a.flag=1"));
+            TariffRegistry.load(file.toPath(), null);
+            Files.write(file.toPath(), Arrays.asList("a.flag=2", "a.name=\\u00zz"));
+            try {
+                TariffRegistry.load(file.toPath(), null);
+                fail("A malformed escape was accepted");
+            } catch (IOException e) {
+                assertEquals(1, TariffRegistry.current().flag(), 0);
+            }
+
+            Files.write(file.toPath(), Arrays.asList("a.flag=1"));
+            long modified = file.lastModified();
+            TariffRegistry.startWatching(file.toPath(), null, 1);
+            Files.write(file.toPath(), Arrays.asList("a.flag=2", "a.name=\\u00zz"));
+            file.setLastModified(modified + 10_000);
+            Thread.sleep(2500);
+            assertEquals(1, TariffRegistry.current().flag(), 0);
+
+            Files.write(file.toPath(), Arrays.asList("a.flag=3"));
+            file.setLastModified(modified + 20_000);
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (TariffRegistry.current().flag() != 3 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(3, TariffRegistry.current().flag(), 0);
+        } finally {
+            TariffRegistry.stopWatching();
+            TariffRegistry.reset();
+            file.delete();
+        }
+    }
+
+    // Fares stored by an incremental run are only reused under the tariff they were priced with
+    @Test
+    public void testIncrementalRepricesAfterTariffChange() throws IOException {
+        File output = File.createTempFile("incremental", ".csv");
+        File index = File.createTempFile("fares", ".index");
+        index.delete();
+        try {
+            IncrementalPricer.run("src/expanded_delivery_data.csv", output.getPath(), index.getPath(), 2);
+            List<String> tehranFares = Files.readAllLines(output.toPath());
+
+            TariffRegistry.load(new File("src/tariffs.properties").toPath(), "tehran-surge");
+            IncrementalPricer.Result surge = IncrementalPricer.run("src/expanded_delivery_data.csv", output.getPath(),
+                    index.getPath(), 2);
+            assertEquals(surge.deliveries, surge.repriced);
+            assertNotEquals(tehranFares, Files.readAllLines(output.toPath()));
+
+            TariffRegistry.reset();
+            IncrementalPricer.Result back = IncrementalPricer.run("src/expanded_delivery_data.csv", output.getPath(),
+                    index.getPath(), 2);
+            assertEquals(back.deliveries, back.repriced);
+            assertEquals(tehranFares, Files.readAllLines(output.toPath()));
+        } finally {
+            TariffRegistry.reset();
+            output.delete();
+            index.delete();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.MappedCsvReader;
+import main.TripFile;
+import main.TripStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TripFileTest {
+
+    // Converting and reading back gives exactly the rows the CSV parser gives, in the same order
+    @Test
+    public void testRoundTrip() throws IOException {
+        File trips = File.createTempFile("trips", ".trips");
+        trips.deleteOnExit();
+        TripFile.convert("src/sample_data.csv", trips.getPath());
+
+        List<DeliveryPoint> expected = MappedCsvReader.readData("src/sample_data.csv");
+        assertPointsEqual(expected, TripFile.readData(trips.getPath()));
+        assertTrue(TripFile.isTripFile(trips.getPath()));
+        assertFalse(TripFile.isTripFile("src/sample_data.csv"));
+        assertTrue(trips.length() * 2 < new File("src/sample_data.csv").length());
+
+        // readData and the other readers accept the trip file in place of the CSV
+        assertPointsEqual(expected, DeliveryFareEstimation.readData(trips.getPath()));
+    }
+
+    // Small blocks, ids repeated and out of order: parallel decoding into a TripStore and seeking by id
+    @Test
+    public void testBlocksAndSeek() throws IOException, InterruptedException {
+        List<DeliveryPoint> points = Arrays.asList(
+                new DeliveryPoint(7, 35.700001, 51.300001, 1723637520),
+                new DeliveryPoint(7, 35.700101, 51.299901, 1723637550),
+                new DeliveryPoint(3, -33.868820, 151.209296, 1723637000),
+                new DeliveryPoint(3, -33.868830, 151.209200, 1723636990),
+                new DeliveryPoint(12, 0, -0.000001, 0),
+                new DeliveryPoint(7, 35.710000, 51.310000, 1723637600),
+                new DeliveryPoint(Integer.MAX_VALUE, 90, 180, Long.MAX_VALUE),
+                new DeliveryPoint(Integer.MIN_VALUE, -90, -180, Long.MIN_VALUE));
+        File trips = File.createTempFile("trips", ".trips");
+        trips.deleteOnExit();
+        try (TripFile.Writer writer = new TripFile.Writer(trips.getPath(), 2, false)) {
+            for (DeliveryPoint point : points) {
+                writer.add(point.idDelivery, point.lat, point.lng, point.timestamp);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (TripFile file = TripFile.open(trips.getPath())) {
+            assertEquals(6, file.deliveryCount());
+            assertEquals(8, file.pointCount());
+            assertEquals(4, file.blockCount());
+
+            TripStore store = file.toStore(executor);
+            TripStore expected = TripStore.fromPoints(points);
+            assertEquals(expected.deliveryCount(), store.deliveryCount());
+            for (int d = 0; d < expected.deliveryCount(); d++) {
+                assertEquals(expected.deliveryId(d), store.deliveryId(d));
+                assertEquals(expected.offset(d), store.offset(d));
+                assertEquals(expected.length(d), store.length(d));
+            }
+            assertArrayEquals(Arrays.copyOf(expected.timestamps(), 8), store.timestamps());
+            assertArrayEquals(Arrays.copyOf(expected.lats(), 8), store.lats(), 0);
+            assertArrayEquals(Arrays.copyOf(expected.lngs(), 8), store.lngs(), 0);
+
+            // Both runs of id 7, in file order, and nothing for an id that is not there
+            assertPointsEqual(Arrays.asList(points.get(0), points.get(1), points.get(5)), file.readDelivery(7));
+            assertTrue(file.readDelivery(5).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // expanded_delivery_data.csv has full-precision coordinates: only a rounding conversion accepts them
+    @Test
+    public void testRoundedConversion() throws IOException {
+        File trips = File.createTempFile("trips", ".trips");
+        trips.deleteOnExit();
+        try {
+            TripFile.convert("src/expanded_delivery_data.csv", trips.getPath());
+            fail("Coordinates with more than 6 decimals were accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("more than 6 decimals"));
+        }
+
+        TripFile.convert("src/expanded_delivery_data.csv", trips.getPath(), true);
+        List<DeliveryPoint> expected = MappedCsvReader.readData("src/expanded_delivery_data.csv");
+        List<DeliveryPoint> actual = TripFile.readData(trips.getPath());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).idDelivery, actual.get(i).idDelivery);
+            assertEquals(Math.round(expected.get(i).lat * 1e6) / 1e6, actual.get(i).lat, 0);
+            assertEquals(Math.round(expected.get(i).lng * 1e6) / 1e6, actual.get(i).lng, 0);
+            assertEquals(expected.get(i).timestamp, actual.get(i).timestamp);
+        }
+    }
+
+    @Test
+    public void testRejectsMoreThanSixDecimals() throws IOException {
+        File trips = File.createTempFile("trips", ".trips");
+        trips.deleteOnExit();
+        try (TripFile.Writer writer = new TripFile.Writer(trips.getPath())) {
+            writer.add(1, 35.7000001, 51.3, 100);
+            fail("A coordinate with 7 decimals was accepted");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("35.7000001"));
+        }
+    }
+
+    @Test
+    public void testDetectsCorruption() throws IOException {
+        File trips = File.createTempFile("trips", ".trips");
+        trips.deleteOnExit();
+        TripFile.convert("src/sample_data.csv", trips.getPath());
+        try (RandomAccessFile file = new RandomAccessFile(trips, "rw")) {
+            file.seek(40);
+            int b = file.read();
+            file.seek(40);
+            file.write(b ^ 1);
+        }
+        try {
+            TripFile.readData(trips.getPath());
+            fail("A damaged block was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+    }
+
+    private static void assertPointsEqual(List<DeliveryPoint> expected, List<DeliveryPoint> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).idDelivery, actual.get(i).idDelivery);
+            assertEquals(expected.get(i).lat, actual.get(i).lat, 0);
+            assertEquals(expected.get(i).lng, actual.get(i).lng, 0);
+            assertEquals(expected.get(i).timestamp, actual.get(i).timestamp);
+        }
+    }
+}
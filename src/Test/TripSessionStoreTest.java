@@ -0,0 +1,125 @@
+package Test;
+
+import main.FareAccumulator;
+import main.TripSessionStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TripSessionStoreTest {
+
+    // Manually advanced clock, in milliseconds
+    private long now = 1_000_000;
+
+    @Test
+    public void testCompleteReportsFinalFare() {
+        List<FareAccumulator> finished = new ArrayList<>();
+        TripSessionStore store = new TripSessionStore(4, 60_000, (delivery, reason) -> {
+            assertEquals(TripSessionStore.Reason.COMPLETED, reason);
+            finished.add(delivery);
+        }, () -> now);
+
+        FareAccumulator expected = new FareAccumulator(42);
+        double lat = 35.7;
+        for (int i = 0; i < 20; i++) {
+            assertTrue(store.accept(42, lat, 51.4, 1723600000L + i * 30));
+            expected.accept(lat, 51.4, 1723600000L + i * 30);
+            lat += 0.001;
+        }
+        assertEquals(expected.currentFare(), store.currentFare(42), 0);
+        assertEquals(1, store.size());
+
+        assertTrue(store.complete(42));
+        assertFalse(store.complete(42));
+        assertEquals(1, finished.size());
+        assertEquals(expected.currentFare(), finished.get(0).currentFare(), 0);
+        assertTrue(Double.isNaN(store.currentFare(42)));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testIdleDeliveriesAreEvicted() {
+        Map<Integer, TripSessionStore.Reason> evicted = new HashMap<>();
+        TripSessionStore store = new TripSessionStore(2, 60_000, (delivery, reason) -> evicted.put(delivery.idDelivery(), reason), () -> now);
+
+        for (int id = 1; id <= 1000; id++) {
+            store.accept(id, 35.7, 51.4, 1723600000L);
+        }
+
+        // Half of the deliveries keep sending points
+        now += 40_000;
+        for (int id = 1; id <= 500; id++) {
+            store.accept(id, 35.7001, 51.4, 1723600040L);
+        }
+        assertEquals(0, store.expireIdle());
+
+        // The other half have now been idle for 65 s (eviction may lag by one wheel tick), the active ones for 25 s
+        now += 25_000;
+        assertEquals(500, store.expireIdle());
+        assertEquals(500, store.size());
+        for (int id = 501; id <= 1000; id++) {
+            assertEquals(TripSessionStore.Reason.IDLE, evicted.get(id));
+        }
+
+        // A long pause evicts the rest, even though most wheel slots were skipped
+        now += 3_600_000;
+        assertEquals(500, store.expireIdle());
+        assertEquals(0, store.size());
+        assertEquals(1000, evicted.size());
+    }
+
+    @Test
+    public void testReopenedDeliveryIsNotEvictedByOldTimer() {
+        List<TripSessionStore.Reason> reasons = new ArrayList<>();
+        TripSessionStore store = new TripSessionStore(1, 60_000, (delivery, reason) -> reasons.add(reason), () -> now);
+
+        store.accept(5, 35.7, 51.4, 1723600000L);
+        store.complete(5);
+        now += 30_000;
+        store.accept(5, 35.7, 51.4, 1723600030L);
+
+        // The timer of the first session comes up, but the new session has only been idle for 30 s
+        now += 30_000;
+        assertEquals(0, store.expireIdle());
+        now += 35_000;
+        assertEquals(1, store.expireIdle());
+        assertEquals(Arrays.asList(TripSessionStore.Reason.COMPLETED, TripSessionStore.Reason.IDLE), reasons);
+    }
+
+    @Test
+    public void testConcurrentWritersAndFlush() throws InterruptedException {
+        Map<Integer, Double> finalFares = new ConcurrentHashMap<>();
+        TripSessionStore store = new TripSessionStore(16, 60_000, (delivery, reason) -> finalFares.put(delivery.idDelivery(), delivery.currentFare()));
+
+        int threads = 8;
+        int deliveriesPerThread = 2_000;
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * deliveriesPerThread;
+            writers[t] = new Thread(() -> {
+                // Every thread interleaves the points of its own deliveries
+                for (int i = 0; i < 10; i++) {
+                    for (int id = first; id < first + deliveriesPerThread; id++) {
+                        store.accept(id, 35.7 + i * 0.001, 51.4 + id * 1e-6, 1723600000L + i * 30);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(threads * deliveriesPerThread, store.size());
+
+        assertEquals(threads * deliveriesPerThread, store.flush());
+        assertEquals(0, store.size());
+        for (int id = 0; id < threads * deliveriesPerThread; id++) {
+            FareAccumulator expected = new FareAccumulator(id);
+            for (int i = 0; i < 10; i++) {
+                expected.accept(35.7 + i * 0.001, 51.4 + id * 1e-6, 1723600000L + i * 30);
+            }
+            assertEquals(expected.currentFare(), finalFares.get(id), 0);
+        }
+    }
+}
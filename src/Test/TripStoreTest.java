@@ -0,0 +1,89 @@
+package Test;
+
+import main.DeliveryFareEstimation;
+import main.DeliveryPoint;
+import main.TripStore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.*;
+import java.util.*;
+
+public class TripStoreTest {
+
+    @Test
+    public void testDeliveriesAreStoredAsOffsetAndLength() {
+        TripStore store = TripStore.fromPoints(Arrays.asList(
+                new DeliveryPoint(4, 35.1, 51.1, 100),
+                new DeliveryPoint(4, 35.2, 51.2, 130),
+                new DeliveryPoint(9, 35.3, 51.3, 160)
+        ));
+
+        assertEquals(2, store.deliveryCount());
+        assertEquals(3, store.pointCount());
+        assertEquals(4, store.deliveryId(0));
+        assertEquals(0, store.offset(0));
+        assertEquals(2, store.length(0));
+        assertEquals(9, store.deliveryId(1));
+        assertEquals(2, store.offset(1));
+        assertEquals(1, store.length(1));
+        assertEquals(35.3, store.lats()[2], 0);
+    }
+
+    @Test
+    public void testFilterMatchesListVersion() {
+        // London -> Paris in 5 minutes is too fast, Paris -> Paris is valid again
+        List<DeliveryPoint> points = Arrays.asList(
+                new DeliveryPoint(1, 51.5074, -0.1278, 1609459200),
+                new DeliveryPoint(1, 48.8566, 2.3522, 1609459500),
+                new DeliveryPoint(1, 48.8567, 2.3523, 1609459800),
+                new DeliveryPoint(1, 48.8569, 2.3525, 1609460100)
+        );
+        TripStore store = TripStore.fromPoints(points);
+        store.filterInvalidPoints(0);
+
+        List<DeliveryPoint> expected = DeliveryFareEstimation.filterInvalidPoints(points);
+        assertEquals(expected.size(), store.length(0));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).timestamp, store.timestamps()[store.offset(0) + i]);
+        }
+    }
+
+    @Test
+    public void testFaresMatchObjectPathOnSampleFiles() throws IOException {
+        for (String path : new String[]{"src/sample_data.csv", "src/expanded_delivery_data.csv"}) {
+            TripStore store = TripStore.load(path);
+            List<DeliveryPoint> points = DeliveryFareEstimation.readData(path);
+
+            int position = 0;
+            for (int d = 0; d < store.deliveryCount(); d++) {
+                List<DeliveryPoint> delivery = points.subList(position, position + store.length(d));
+                position += store.length(d);
+                double expected = DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(delivery));
+
+                store.filterInvalidPoints(d);
+                assertEquals(expected, store.calculateFare(d), 0);
+            }
+            assertEquals(points.size(), position);
+        }
+    }
+
+    @Test
+    public void testPriceDeliveryMatchesFilterThenFare() throws IOException {
+        for (String path : new String[]{"src/sample_data.csv", "src/expanded_delivery_data.csv"}) {
+            TripStore store = TripStore.load(path);
+            List<DeliveryPoint> points = DeliveryFareEstimation.readData(path);
+
+            int position = 0;
+            for (int d = 0; d < store.deliveryCount(); d++) {
+                List<DeliveryPoint> delivery = points.subList(position, position + store.length(d));
+                position += store.length(d);
+                double expected = DeliveryFareEstimation.calculateFare(DeliveryFareEstimation.filterInvalidPoints(delivery));
+
+                // The one-pass versions must give exactly the two-pass fare and leave the points untouched
+                assertEquals(expected, DeliveryFareEstimation.priceDelivery(delivery), 0);
+                assertEquals(expected, store.priceDelivery(d), 0);
+                assertEquals(delivery.size(), store.length(d));
+            }
+        }
+    }
+}
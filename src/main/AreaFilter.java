@@ -0,0 +1,59 @@
+package main;
+
+// Drops the points of a delivery that lie outside a service area (a lat/lng box), e.g. GPS fixes at 0,0 or in
+// another city, before filterInvalidPoints compares speeds. Kept points are moved to the front of the range in
+// place, like filterInvalidPoints. filter() uses the Vector API implementation (VectorAreaFilter) when the JVM runs
+// with --add-modules jdk.incubator.vector, and the scalar one otherwise or with -Dfare.vector=false; both keep
+// exactly the same points. NaN coordinates are outside every area.
+public class AreaFilter {
+
+    // One implementation of the filter, see filter()
+    interface Implementation {
+        int filter(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                   double minLat, double minLng, double maxLat, double maxLng);
+    }
+
+    private static final Implementation SCALAR = AreaFilter::scalarFilter;
+    private static final Implementation IMPLEMENTATION = load();
+
+    // Method to keep the points of [offset, offset + length) with minLat <= lat <= maxLat and minLng <= lng <= maxLng,
+    // moved to the front of the range in order; returns how many were kept
+    public static int filter(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                             double minLat, double minLng, double maxLat, double maxLng) {
+        return IMPLEMENTATION.filter(lats, lngs, timestamps, offset, length, minLat, minLng, maxLat, maxLng);
+    }
+
+    // Method to run the scalar filter
+    public static int scalarFilter(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                                   double minLat, double minLng, double maxLat, double maxLng) {
+        int kept = offset;
+        for (int i = offset; i < offset + length; i++) {
+            double lat = lats[i];
+            double lng = lngs[i];
+            if (lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng) {
+                lats[kept] = lat;
+                lngs[kept] = lng;
+                timestamps[kept] = timestamps[i];
+                kept++;
+            }
+        }
+        return kept - offset;
+    }
+
+    // True when filter() runs on the Vector API
+    public static boolean isVectorized() {
+        return IMPLEMENTATION != SCALAR;
+    }
+
+    // Method to pick the implementation; like SegmentKernel, the vector class is only loaded by name
+    private static Implementation load() {
+        if (!Boolean.parseBoolean(System.getProperty("fare.vector", "true"))) {
+            return SCALAR;
+        }
+        try {
+            return (Implementation) Class.forName("main.VectorAreaFilter").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// Streaming run that can be killed and resumed. Like processStreaming, rows of a delivery must be contiguous in
+// the input and fares are written in input order as soon as a delivery is complete. Every checkpoint interval
+// (in input bytes) the output is forced to disk and a checkpoint file <output>.checkpoint is replaced atomically.
+// It holds the byte offset of the first row of the next delivery and the output length at that moment: every
+// delivery before the offset is finished and its fare is in the first outputLength bytes. A resumed run truncates
+// the output to that length and continues reading at the offset, so its output is identical to an uninterrupted
+// run. The checkpoint file is deleted when the run completes.
+public class CheckpointedRun {
+
+    private static final String SUFFIX = ".checkpoint";
+
+    // Outcome of a run
+    public static class Result {
+        public final long resumedFromOffset;  // 0 for a fresh run
+        public final long deliveries;         // deliveries priced by this run, not counting resumed ones
+        public final int checkpoints;
+
+        public Result(long resumedFromOffset, long deliveries, int checkpoints) {
+            this.resumedFromOffset = resumedFromOffset;
+            this.deliveries = deliveries;
+            this.checkpoints = checkpoints;
+        }
+    }
+
+    private final long intervalBytes;
+
+    public CheckpointedRun(long intervalBytes) {
+        this.intervalBytes = Math.max(1, intervalBytes);
+    }
+
+    // Run configured with -Dfare.checkpoint.intervalKb=N, a checkpoint every 32 MB of input by default
+    public static CheckpointedRun fromSystemProperties() {
+        return new CheckpointedRun(Long.getLong("fare.checkpoint.intervalKb", 32 * 1024) * 1024);
+    }
+
+    public static String checkpointPathFor(String outputPath) {
+        return outputPath + SUFFIX;
+    }
+
+    // Method to price the input into the output, resuming from the checkpoint of an earlier run if there is one.
+    // A checkpoint of a different input (path, size or modification time) is refused, and so is a TripFile input:
+    // checkpoints are byte offsets into the CSV.
+    public Result run(String inputPath, String outputPath) throws IOException {
+        if (TripFile.isTripFile(inputPath)) {
+            throw new IOException(inputPath + " is a trip file; checkpoint mode needs CSV input");
+        }
+        Path checkpointPath = Paths.get(checkpointPathFor(outputPath));
+        File input = new File(inputPath);
+        Checkpoint start = Checkpoint.read(checkpointPath);
+        if (start != null && !start.matches(input)) {
+            throw new IOException(checkpointPath + " belongs to another input than " + inputPath + "; delete it to start over");
+        }
+        long startOffset = start == null ? 0 : start.inputOffset;
+        long completedBefore = start == null ? 0 : start.deliveries;
+
+        int[] checkpoints = {0};
+        long[] deliveries = {0};
+        try (FareCsvWriter writer = new FareCsvWriter(outputPath, start == null ? 0 : start.outputLength)) {
+            List<DeliveryPoint> currentDelivery = new ArrayList<>();
+            long[] lastCheckpointOffset = {startOffset};
+            try {
+                MappedCsvReader.forEachRow(inputPath, startOffset, (rowOffset, idDelivery, lat, lng, timestamp) -> {
+                    if (!currentDelivery.isEmpty() && currentDelivery.get(0).idDelivery != idDelivery) {
+                        writeFare(writer, currentDelivery);
+                        currentDelivery.clear();
+                        deliveries[0]++;
+
+                        // Every delivery before this row is written: a consistent point to checkpoint at
+                        if (rowOffset - lastCheckpointOffset[0] >= intervalBytes) {
+                            try {
+                                writeCheckpoint(checkpointPath, input, rowOffset, writer.sync(), completedBefore + deliveries[0]);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            lastCheckpointOffset[0] = rowOffset;
+                            checkpoints[0]++;
+                        }
+                    }
+                    currentDelivery.add(new DeliveryPoint(idDelivery, lat, lng, timestamp));
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            if (!currentDelivery.isEmpty()) {
+                writeFare(writer, currentDelivery);
+                deliveries[0]++;
+            }
+            writer.sync();
+        }
+
+        // The output is complete, a later run starts from scratch
+        Files.deleteIfExists(checkpointPath);
+        return new Result(startOffset, deliveries[0], checkpoints[0]);
+    }
+
+    private static void writeFare(FareCsvWriter writer, List<DeliveryPoint> points) {
+        double fare = DeliveryFareEstimation.priceDelivery(points);
+        try {
+            writer.write(points.get(0).idDelivery, fare);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to replace the checkpoint file atomically: write a temporary file, force it, then rename it
+    private static void writeCheckpoint(Path checkpointPath, File input, long inputOffset, long outputLength,
+                                        long deliveries) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("inputPath", input.getAbsolutePath());
+        properties.setProperty("inputSize", Long.toString(input.length()));
+        properties.setProperty("inputModified", Long.toString(input.lastModified()));
+        properties.setProperty("inputOffset", Long.toString(inputOffset));
+        properties.setProperty("outputLength", Long.toString(outputLength));
+        properties.setProperty("deliveries", Long.toString(deliveries));
+
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary.toFile())) {
+            properties.store(out, "Fare estimation checkpoint");
+            out.getFD().sync();
+        }
+        try {
+            Files.move(temporary, checkpointPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Contents of a checkpoint file
+    private static class Checkpoint {
+        final String inputPath;
+        final long inputSize;
+        final long inputModified;
+        final long inputOffset;
+        final long outputLength;
+        final long deliveries;
+
+        Checkpoint(Properties properties) {
+            this.inputPath = properties.getProperty("inputPath");
+            this.inputSize = Long.parseLong(properties.getProperty("inputSize"));
+            this.inputModified = Long.parseLong(properties.getProperty("inputModified"));
+            this.inputOffset = Long.parseLong(properties.getProperty("inputOffset"));
+            this.outputLength = Long.parseLong(properties.getProperty("outputLength"));
+            this.deliveries = Long.parseLong(properties.getProperty("deliveries"));
+        }
+
+        // Method to read the checkpoint file, or null if there is none
+        static Checkpoint read(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(path.toFile())) {
+                properties.load(in);
+            }
+            try {
+                return new Checkpoint(properties);
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid checkpoint file " + path, e);
+            }
+        }
+
+        boolean matches(File input) {
+            return input.getAbsolutePath().equals(inputPath) && input.length() == inputSize
+                    && input.lastModified() == inputModified;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package main;
 
 import java.io.*;
-import java.time.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,13 +12,13 @@ import java.util.concurrent.*;
 
 public class DeliveryFareEstimation {
 
-
-
-    // Executor service to manage threads
-    private static final ExecutorService executor = Executors.newFixedThreadPool(3);  // Adjust pool size based on system
-
-    // Method to read CSV and store it in a list of DeliveryPoint
+    // Method to read CSV and store it in a list of DeliveryPoint (parsed from the memory-mapped file)
     public static List<DeliveryPoint> readData(String filePath) throws IOException {
+        return MappedCsvReader.readData(filePath);
+    }
+
+    // Method to read CSV with BufferedReader and String.split, kept as the reference for MappedCsvReader
+    public static List<DeliveryPoint> readDataBuffered(String filePath) throws IOException {
         List<DeliveryPoint> data = new ArrayList<>();
         BufferedReader br = new BufferedReader(new FileReader(filePath));
         String line;
@@ -26,22 +28,33 @@ public class DeliveryFareEstimation {
 
         // Read each line from the CSV
         while ((line = br.readLine()) != null) {
-            String[] values = line.split(",");
-            int idDelivery = Integer.parseInt(values[0]);
-            double lat = Double.parseDouble(values[1]);
-            double lng = Double.parseDouble(values[2]);
-            long timestamp = Long.parseLong(values[3]);
-
             // Create a DeliveryPoint object and add it to the list
-            data.add(new DeliveryPoint(idDelivery, lat, lng, timestamp));
+            data.add(parseLine(line));
         }
 
         br.close();
         return data;
     }
 
-    // Method to filter invalid points where speed > 100 km/h
+    // Method to parse a single "id_delivery,lat,lng,timestamp" CSV row
+    private static DeliveryPoint parseLine(String line) {
+        String[] values = line.split(",");
+        int idDelivery = Integer.parseInt(values[0]);
+        double lat = Double.parseDouble(values[1]);
+        double lng = Double.parseDouble(values[2]);
+        long timestamp = Long.parseLong(values[3]);
+
+        return new DeliveryPoint(idDelivery, lat, lng, timestamp);
+    }
+
+    // Method to filter invalid points where speed > 100 km/h (the current tariff's maxSpeedKmh)
     public static List<DeliveryPoint> filterInvalidPoints(List<DeliveryPoint> points) {
+        return filterInvalidPoints(TariffRegistry.current(), points);
+    }
+
+    // Method to filter invalid points where speed > tariff.maxSpeedKmh
+    public static List<DeliveryPoint> filterInvalidPoints(Tariff tariff, List<DeliveryPoint> points) {
+        double maxSpeed = tariff.maxSpeedKmh;
         List<DeliveryPoint> validPoints = new ArrayList<>();
 
         // Add the first point to the valid list, as it's always valid
@@ -55,119 +68,268 @@ public class DeliveryFareEstimation {
             double speed = DistanceCalculator.calculateSpeed(p1, p2);
 
             // If the speed is less than or equal to 100 km/h, we keep p2
-            if (speed <= 100) {
+            if (speed <= maxSpeed) {
                 validPoints.add(p2);
             }
         }
 
+        FareMetrics.filtered(validPoints.size(), points.size() - validPoints.size());
         return validPoints;
     }
 
-    // Method to calculate the fare for a single delivery
+    // Method to filter invalid points of one delivery stored at [offset, offset + length) of the columns.
+    // Valid points are moved to the front of the range in place; the new length is returned.
+    public static int filterInvalidPoints(double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        return filterInvalidPoints(TariffRegistry.current(), lats, lngs, timestamps, offset, length);
+    }
+
+    public static int filterInvalidPoints(Tariff tariff, double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        double maxSpeed = tariff.maxSpeedKmh;
+
+        // The first point is always valid and already in place
+        int validCount = 1;
+        double prevLat = lats[offset];
+        double prevLng = lngs[offset];
+        long prevTimestamp = timestamps[offset];
+
+        for (int i = offset + 1; i < offset + length; i++) {
+            double lat = lats[i];
+            double lng = lngs[i];
+            long timestamp = timestamps[i];
+
+            // Like the list version, each point is compared with the point right before it in the input
+            double speed = DistanceCalculator.calculateSpeed(prevLat, prevLng, prevTimestamp, lat, lng, timestamp);
+            if (speed <= maxSpeed) {
+                int target = offset + validCount++;
+                lats[target] = lat;
+                lngs[target] = lng;
+                timestamps[target] = timestamp;
+            }
+
+            prevLat = lat;
+            prevLng = lng;
+            prevTimestamp = timestamp;
+        }
+
+        FareMetrics.filtered(validCount, length - validCount);
+        return validCount;
+    }
+
+    // Method to calculate the fare for a single delivery with the current tariff
     public static double calculateFare(List<DeliveryPoint> filteredPoints) {
-        double fare = 1.30; // Start with the flag amount of 1.30 units
+        return calculateFare(TariffRegistry.current(), filteredPoints);
+    }
+
+    // Method to calculate the fare for a single delivery
+    public static double calculateFare(Tariff tariff, List<DeliveryPoint> filteredPoints) {
+        double fare = tariff.flag; // Start with the flag amount (1.30 units)
 
         for (int i = 1; i < filteredPoints.size(); i++) {
             DeliveryPoint p1 = filteredPoints.get(i - 1);
             DeliveryPoint p2 = filteredPoints.get(i);
 
-            // Calculate speed between p1 and p2
-            double speed = DistanceCalculator.calculateSpeed(p1, p2);
-            // Calculate distance between p1 and p2
+            // Calculate distance between p1 and p2 once; the speed is derived from it
             double distance = DistanceCalculator.haversine(p1.lat, p1.lng, p2.lat, p2.lng);
-            // Calculate the time difference (in hours)
-            double timeDifferenceInHours = (p2.timestamp - p1.timestamp) / 3600.0; // Seconds to hours
-
-
-            // Convert timestamps to LocalDateTime in the specified timezone (Tehran)
-            ZoneId zoneId = ZoneId.of("Asia/Tehran");
-            LocalDateTime startTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(p1.timestamp), zoneId);
+            fare = TariffEngine.segmentFare(tariff, fare, distance, p1.timestamp, p2.timestamp);
+        }
 
-            LocalDateTime endTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(p2.timestamp), zoneId);
+        return fare;
 
-            // Calculate total time difference in hours
-            double totalDurationInHours = Duration.between(startTime, endTime).toMinutes() / 60.0;
+    }
 
-            LocalTime nightStart = LocalTime.of(0, 0,0,1);
-            LocalTime nightEnd = LocalTime.of(5, 0,0,0);
+    // Method to calculate the fare for a single delivery stored at [offset, offset + length) of the columns
+    public static double calculateFare(double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        return calculateFare(TariffRegistry.current(), lats, lngs, timestamps, offset, length);
+    }
 
-            LocalTime dayStart = LocalTime.of(5, 0,0, 1);
-            LocalTime dayEnd = LocalTime.of(23, 59,59,59);
+    public static double calculateFare(Tariff tariff, double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        double fare = tariff.flag; // Start with the flag amount (1.30 units)
 
-            LocalTime midnight = LocalTime.of(0, 0, 0);
+        for (int i = offset + 1; i < offset + length; i++) {
+            double distance = DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            fare = TariffEngine.segmentFare(tariff, fare, distance, timestamps[i - 1], timestamps[i]);
+        }
 
-            if (speed <= 10) {
-                // Apply 11.9 units per hour when speed is <= 10 km/h
-                fare = totalDurationInHours * 11.9;
-            } else {
+        return fare;
+    }
 
-                // Check if the trip spans from night to day (before 5:00 AM to after 5:00 AM)
-                if (startTime.toLocalTime().isBefore(nightEnd) && startTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isAfter(dayStart) && endTime.toLocalTime().isBefore(dayEnd)) {
-                    // Trip spans both night and day
-                    double nighttimeDuration = Duration.between(startTime.toLocalTime(), nightEnd).toMinutes() / 60.0;
-                    double daytimeDuration = Duration.between(dayStart, endTime.toLocalTime()).toMinutes() / 60.0;
-                    fare += nighttimeDuration * distance * 1.3;  // Night rate
-                    fare += daytimeDuration * distance * 0.74;   // Day rate
+    // Method to filter and price a delivery in one pass; same result as calculateFare(filterInvalidPoints(points)).
+    // cos(lat) is computed once per point, and each consecutive distance is computed once and shared between the
+    // speed filter and the fare whenever no point was dropped in between.
+    public static double priceDelivery(List<DeliveryPoint> points) {
+        return priceDelivery(TariffRegistry.current(), points);
+    }
 
-                } else if (startTime.toLocalTime().isAfter(dayStart) && endTime.toLocalTime().isBefore(dayEnd) && !endTime.toLocalTime().isBefore(startTime.toLocalTime())) {
-                    // Entire trip during the day
-                    double daytimeDuration = Duration.between(startTime.toLocalTime(), dayEnd).toMinutes() / 60.0;
-                    //fare += totalDurationInHours * distance * 0.74;
-                    fare += distance * 0.74;
+    public static double priceDelivery(Tariff tariff, List<DeliveryPoint> points) {
+        double fare = tariff.flag; // Start with the flag amount (1.30 units)
+        double maxSpeed = tariff.maxSpeedKmh;
 
-                } else if (startTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isBefore(nightEnd) && !endTime.toLocalTime().isBefore(startTime.toLocalTime()) ) {
-                    // Entire trip during the night
-                    fare += distance * 1.3;
+        // Previous point of the input, and the last point that passed the filter
+        DeliveryPoint previous = points.get(0);
+        double previousCosLat = Math.cos(Math.toRadians(previous.lat));
+        boolean previousValid = true;
+        DeliveryPoint lastValid = previous;
+        double lastValidCosLat = previousCosLat;
+        int validCount = 1;
 
-                } else if (startTime.toLocalTime().isAfter(dayStart) && startTime.toLocalTime().isBefore(dayEnd) && endTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isBefore(nightEnd)) {
-                    // Trip starts during the day and ends after midnight (spans two days)
+        for (int i = 1; i < points.size(); i++) {
+            DeliveryPoint point = points.get(i);
+            double cosLat = Math.cos(Math.toRadians(point.lat));
+
+            // Speed rule against the previous input point, like filterInvalidPoints
+            double distance = DistanceCalculator.haversine(previous.lat, previous.lng, previousCosLat, point.lat, point.lng, cosLat);
+            boolean valid = DistanceCalculator.speed(distance, previous.timestamp, point.timestamp) <= maxSpeed;
+
+            if (valid) {
+                // Fare segment from the last valid point; it is the same pair unless points were dropped
+                double segmentDistance = previousValid ? distance
+                        : DistanceCalculator.haversine(lastValid.lat, lastValid.lng, lastValidCosLat, point.lat, point.lng, cosLat);
+                fare = TariffEngine.segmentFare(tariff, fare, segmentDistance, lastValid.timestamp, point.timestamp);
+                lastValid = point;
+                lastValidCosLat = cosLat;
+                validCount++;
+            }
 
-                    // Adjust midnight to the next day's midnight
-                    LocalDateTime adjustedMidnight = startTime.toLocalDate().plusDays(1).atTime(midnight);
+            previous = point;
+            previousCosLat = cosLat;
+            previousValid = valid;
+        }
 
-                    // Calculate the duration before midnight (day portion)
-                    double daytimeDuration = Duration.between(startTime, adjustedMidnight).toMinutes() / 60.0;
+        FareMetrics.filtered(validCount, points.size() - validCount);
+        return fare;
+    }
 
-                    // Calculate the duration after midnight (night portion)
-                    double nighttimeDuration = Duration.between(adjustedMidnight, endTime).toMinutes() / 60.0;
+    // Method to filter and price one delivery stored at [offset, offset + length) of the columns in one pass,
+    // without modifying the columns; same result as filterInvalidPoints followed by calculateFare
+    public static double priceDelivery(double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        return priceDelivery(TariffRegistry.current(), lats, lngs, timestamps, offset, length);
+    }
 
-                    // Apply day rate for daytime portion and night rate for nighttime portion
-                    fare += daytimeDuration * distance * 0.74;
-                    fare += nighttimeDuration * distance * 1.3;
+    public static double priceDelivery(Tariff tariff, double[] lats, double[] lngs, long[] timestamps, int offset, int length) {
+        double fare = tariff.flag; // Start with the flag amount (1.30 units)
+        if (length == 0) {
+            return fare;
+        }
+        double maxSpeed = tariff.maxSpeedKmh;
+
+        int lastValid = offset;
+        double previousCosLat = Math.cos(Math.toRadians(lats[offset]));
+        double lastValidCosLat = previousCosLat;
+        boolean previousValid = true;
+        int validCount = 1;
+
+        for (int i = offset + 1; i < offset + length; i++) {
+            double cosLat = Math.cos(Math.toRadians(lats[i]));
+
+            double distance = DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], previousCosLat, lats[i], lngs[i], cosLat);
+            boolean valid = DistanceCalculator.speed(distance, timestamps[i - 1], timestamps[i]) <= maxSpeed;
+
+            if (valid) {
+                double segmentDistance = previousValid ? distance
+                        : DistanceCalculator.haversine(lats[lastValid], lngs[lastValid], lastValidCosLat, lats[i], lngs[i], cosLat);
+                fare = TariffEngine.segmentFare(tariff, fare, segmentDistance, timestamps[lastValid], timestamps[i]);
+                lastValid = i;
+                lastValidCosLat = cosLat;
+                validCount++;
+            }
 
-                } else {
-                   // Trip crosses midnight (for example, from 11:30 PM to 12:30 AM)
+            previousCosLat = cosLat;
+            previousValid = valid;
+        }
 
-                    // Calculate time before midnight
-                    double preMidnightDuration = Duration.between(startTime.toLocalTime(), midnight).toMinutes() / 60.0;
-                    double postMidnightDuration = totalDurationInHours - preMidnightDuration;
+        FareMetrics.filtered(validCount, length - validCount);
+        return fare;
+    }
 
-                    fare += preMidnightDuration * distance * 0.74;  // Apply day rate for time before midnight
-                    fare += postMidnightDuration * distance * 1.3;  // Apply night rate for time after midnight
-                }
-            }
+    // Method to filter and price one delivery from the distances and speeds of its consecutive points, as filled in
+    // by SegmentKernel.segments; with the scalar kernel the result equals priceDelivery(lats, lngs, timestamps, ...)
+    public static double priceDelivery(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                                       double[] distances, double[] speeds) {
+        return priceDelivery(TariffRegistry.current(), lats, lngs, timestamps, offset, length, distances, speeds);
+    }
 
-            // Ensure the minimum fare is 3.47 units
-            if (fare < 3.47) {
-                fare = 3.47;
+    public static double priceDelivery(Tariff tariff, double[] lats, double[] lngs, long[] timestamps, int offset,
+                                       int length, double[] distances, double[] speeds) {
+        double fare = tariff.flag; // Start with the flag amount (1.30 units)
+        if (length == 0) {
+            return fare;
+        }
+        double maxSpeed = tariff.maxSpeedKmh;
+
+        int lastValid = offset;
+        boolean previousValid = true;
+        int validCount = 1;
+
+        for (int k = 1; k < length; k++) {
+            int i = offset + k;
+            boolean valid = speeds[k] <= maxSpeed;
+
+            if (valid) {
+                // The kernel distance is the fare segment unless points were dropped since the last valid one
+                double segmentDistance = previousValid ? distances[k]
+                        : DistanceCalculator.haversine(lats[lastValid], lngs[lastValid], Math.cos(Math.toRadians(lats[lastValid])),
+                        lats[i], lngs[i], Math.cos(Math.toRadians(lats[i])));
+                fare = TariffEngine.segmentFare(tariff, fare, segmentDistance, timestamps[lastValid], timestamps[i]);
+                lastValid = i;
+                validCount++;
             }
 
-
+            previousValid = valid;
         }
 
+        FareMetrics.filtered(validCount, length - validCount);
         return fare;
-
     }
 
     // Method to write the output to a CSV file
-    public static void writeOutputToCSV(Map<Integer, Double> fareEstimates, String outputPath) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath))) {
-            writer.write("id_delivery,fare_estimate\n");
-            for (Map.Entry<Integer, Double> entry : fareEstimates.entrySet()) {
-                writer.write(entry.getKey() + "," + String.format("%.2f", entry.getValue()) + "\n");
+    public static void writeOutputToCSV(Map<Integer, Double> fareEstimates, String outputPath) throws IOException {
+        writeOutputToCSV(fareEstimates, outputPath, false);
+    }
+
+    // Method to write the output to a CSV file, optionally sorted by id_delivery
+    public static void writeOutputToCSV(Map<Integer, Double> fareEstimates, String outputPath, boolean sortById) throws IOException {
+        try (FareCsvWriter writer = new FareCsvWriter(outputPath)) {
+            writer.writeAll(fareEstimates, sortById);
+        }
+    }
+
+    // Method to price deliveries while the CSV is being read, without loading the whole file.
+    // Rows of a delivery must be next to each other in the file (the input is ordered by id_delivery),
+    // so a delivery is finished as soon as the id changes. Only the delivery currently being read
+    // is kept in memory, so heap use depends on the longest delivery and not on the file size.
+    public static void processStreaming(String filePath, String outputPath) throws IOException {
+        try (FareCsvWriter writer = new FareCsvWriter(outputPath)) {
+            List<DeliveryPoint> currentDelivery = new ArrayList<>();
+            try {
+                MappedCsvReader.forEachRow(filePath, (idDelivery, lat, lng, timestamp) -> {
+                    // A new id means the previous delivery is complete: price it, write it and drop it
+                    if (!currentDelivery.isEmpty() && currentDelivery.get(0).idDelivery != idDelivery) {
+                        writeDeliveryFare(writer, currentDelivery);
+                        currentDelivery.clear();
+                    }
+                    currentDelivery.add(new DeliveryPoint(idDelivery, lat, lng, timestamp));
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Flush the last delivery of the file
+            if (!currentDelivery.isEmpty()) {
+                writeDeliveryFare(writer, currentDelivery);
             }
+        }
+    }
+
+    // Method to filter, price and write a single completed delivery
+    private static void writeDeliveryFare(FareCsvWriter writer, List<DeliveryPoint> points) {
+        double fare = priceDelivery(points);
+        try {
+            writer.write(points.get(0).idDelivery, fare);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -181,31 +343,123 @@ public class DeliveryFareEstimation {
 
         @Override
         public Map<Integer, Double> call() {
+            long startTime = System.nanoTime();
             Map<Integer, Double> fareEstimates = new HashMap<>();
+            Tariff tariff = TariffRegistry.current();
 
             for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
                 int idDelivery = entry.getKey();
                 List<DeliveryPoint> points = entry.getValue();
 
-                // Filter out invalid points where speed > 100 km/h
-                List<DeliveryPoint> filteredPoints = filterInvalidPoints(points);
-
-                // Calculate the fare for the filtered points
-                double fare = calculateFare(filteredPoints);
+                // Filter out invalid points where speed > 100 km/h and calculate the fare of the remaining ones
+                double fare = priceDelivery(tariff, points);
 
                 // Store the fare estimate for this delivery
                 fareEstimates.put(idDelivery, fare);
             }
 
+            FareMetrics.batchCompleted(System.nanoTime() - startTime);
             return fareEstimates;
         }
     }
 
 
+    // Method to price deliveries by splitting them into batchCount equal-size batches of deliveries,
+    // one DeliveryTask per batch. Long trips are not balanced, see ForkJoinPricer for the default path.
+    public static Map<Integer, Double> priceInFixedBatches(Map<Integer, List<DeliveryPoint>> deliveries,
+                                                           ExecutorService executor, int batchCount)
+            throws InterruptedException, ExecutionException {
+        List<Future<Map<Integer, Double>>> futures = submitFixedBatches(deliveries, executor, batchCount);
+
+        // Collect the results
+        Map<Integer, Double> finalFareEstimates = new HashMap<>();
+        for (Future<Map<Integer, Double>> future : futures) {
+            finalFareEstimates.putAll(future.get()); // Merging all fare estimates from each thread
+        }
+        return finalFareEstimates;
+    }
+
+    // Method to price deliveries in fixed batches like priceInFixedBatches, handing each batch's result to runs
+    // as one sorted run instead of merging them into one map
+    public static void priceInFixedBatches(Map<Integer, List<DeliveryPoint>> deliveries, ExecutorService executor,
+                                           int batchCount, SortedFareRuns runs)
+            throws InterruptedException, ExecutionException, IOException {
+        for (Future<Map<Integer, Double>> future : submitFixedBatches(deliveries, executor, batchCount)) {
+            runs.addRun(future.get());
+        }
+    }
+
+    // Method to split the deliveries into batchCount batches and submit one DeliveryTask per batch
+    private static List<Future<Map<Integer, Double>>> submitFixedBatches(Map<Integer, List<DeliveryPoint>> deliveries,
+                                                                         ExecutorService executor, int batchCount) {
+        // Split the deliveries into batches for multithreading
+        List<Map<Integer, List<DeliveryPoint>>> batches = new ArrayList<>();
+        int batchSize = Math.max(1, deliveries.size() / batchCount);  // At least one delivery per batch
+        Map<Integer, List<DeliveryPoint>> currentBatch = new HashMap<>();
+        int count = 0;
+
+        for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
+            currentBatch.put(entry.getKey(), entry.getValue());
+            count++;
+            if (count % batchSize == 0) {
+                batches.add(new HashMap<>(currentBatch));
+                currentBatch.clear();
+            }
+        }
+        if (!currentBatch.isEmpty()) {
+            batches.add(new HashMap<>(currentBatch)); // Add any remaining deliveries
+        }
+
+        // Submit tasks to the thread pool
+        List<Future<Map<Integer, Double>>> futures = new ArrayList<>();
+        for (Map<Integer, List<DeliveryPoint>> batch : batches) {
+            futures.add(executor.submit(new DeliveryTask(batch)));
+        }
+        return futures;
+    }
+
     public static void main(String[] args) {
-        String filePath = "src/sample_data.csv";
+        // Counters, JMX and the periodic dump with -Dfare.metrics=true, see FareMetrics
+        boolean metrics = FareMetrics.startFromSystemProperties();
+        try {
+            run(args);
+        } finally {
+            if (metrics) {
+                FareMetrics.finish(System.out);
+            }
+        }
+    }
+
+    private static void run(String[] args) {
+        // Tariffs of -Dfare.tariff.file, otherwise the built-in Tehran tariff, see TariffRegistry
+        try {
+            TariffRegistry.loadFromSystemProperties();
+        } catch (IOException e) {
+            System.err.println("Cannot load the tariffs: " + e.getMessage());
+            return;
+        }
+
+        // Usage: [batch|fixed|streaming|pipeline|checkpoint|incremental] [input.csv] [output.csv]
+        //    or: multi <outputDir> <input.csv>...
+        //    or: shard [input.csv] [output.csv]     (see ShardedRun; worker <shard.csv> <output.csv> runs one shard)
+        //    or: serve
+        //    or: convert <input.csv> <output.trips>
+        String mode = args.length > 0 ? args[0] : "batch";
+        if (mode.equals("multi")) {
+            processMultipleFiles(args);
+            return;
+        }
+        if (mode.equals("serve")) {
+            serve();
+            return;
+        }
+        if (mode.equals("convert")) {
+            convertToTripFile(args);
+            return;
+        }
+        String filePath = args.length > 1 ? args[1] : "src/sample_data.csv";
         //String filePath = "src/expanded_delivery_data.csv";
-        String outputPath = "output.csv";// Path to the CSV file
+        String outputPath = args.length > 2 ? args[2] : "output.csv";// Path to the CSV file
 
 //        try {
 //
@@ -254,51 +508,120 @@ public class DeliveryFareEstimation {
 //        e.printStackTrace();
 //    }
 
-        try {
-//             Measure time without cache
-            long startTime = System.nanoTime();
+        if (mode.equals("streaming")) {
+            try {
+                long startTime = System.nanoTime();
 
-            // Read the CSV data into a list of DeliveryPoint objects
-            List<DeliveryPoint> deliveryPoints = readData(filePath);
+                // Price each delivery as soon as it has been read, keeping one delivery in memory at a time
+                processStreaming(filePath, outputPath);
 
-            // Group the points by id_delivery
-            Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
-            for (DeliveryPoint point : deliveryPoints) {
-                deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+                System.out.println("Fare estimates have been written to: " + outputPath);
+
+                long endTime = System.nanoTime();
+                System.out.println("Execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            return;
+        }
 
-            // Split the deliveries into batches for multithreading
-            List<Map<Integer, List<DeliveryPoint>>> batches = new ArrayList<>();
-            int batchSize = deliveries.size() / 3;  // Divide the deliveries for each thread (4 threads in this case)
-            Map<Integer, List<DeliveryPoint>> currentBatch = new HashMap<>();
-            int count = 0;
+        if (mode.equals("checkpoint")) {
+            try {
+                long startTime = System.nanoTime();
 
-            for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
-                currentBatch.put(entry.getKey(), entry.getValue());
-                count++;
-                if (count % batchSize == 0) {
-                    batches.add(new HashMap<>(currentBatch));
-                    currentBatch.clear();
+                // Stream like "streaming", checkpointing as it goes; rerunning after a crash resumes the run
+                CheckpointedRun.Result result = CheckpointedRun.fromSystemProperties().run(filePath, outputPath);
+
+                if (result.resumedFromOffset > 0) {
+                    System.out.println("Resumed from input byte " + result.resumedFromOffset);
                 }
+                System.out.println("Fare estimates have been written to: " + outputPath + " (" + result.deliveries
+                        + " deliveries, " + result.checkpoints + " checkpoints)");
+
+                long endTime = System.nanoTime();
+                System.out.println("Execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            if (!currentBatch.isEmpty()) {
-                batches.add(new HashMap<>(currentBatch)); // Add any remaining deliveries
+            return;
+        }
+
+        if (mode.equals("incremental")) {
+            try {
+                long startTime = System.nanoTime();
+
+                // Reprice only the deliveries whose points changed since the run that wrote the index
+                IncrementalPricer.Result result = IncrementalPricer.run(filePath, outputPath,
+                        IncrementalPricer.defaultIndexPath(outputPath), ForkJoinPricer.defaultParallelism());
+
+                System.out.println("Fare estimates have been written to: " + outputPath + " (" + result.deliveries
+                        + " deliveries, " + result.reused + " reused, " + result.repriced + " priced)");
+
+                long endTime = System.nanoTime();
+                System.out.println("Execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            return;
+        }
+
+        if (mode.equals("pipeline")) {
+            try {
+                long startTime = System.nanoTime();
+
+                // Parse, filter, price and write concurrently, connected by bounded queues
+                FarePipeline pipeline = FarePipeline.fromSystemProperties();
+                pipeline.run(filePath, outputPath);
+
+                System.out.println("Fare estimates have been written to: " + outputPath);
+                for (FarePipeline.StageStats stage : pipeline.stats()) {
+                    System.out.println("  " + stage);
+                }
 
-            // Submit tasks to the thread pool
-            List<Future<Map<Integer, Double>>> futures = new ArrayList<>();
-            for (Map<Integer, List<DeliveryPoint>> batch : batches) {
-                futures.add(executor.submit(new DeliveryTask(batch)));
+                long endTime = System.nanoTime();
+                System.out.println("Execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            return;
+        }
+
+        if (mode.equals("shard")) {
+            try {
+                long startTime = System.nanoTime();
+
+                // Split the input by id_delivery over worker JVMs and merge their sorted outputs
+                ShardedRun.Result result = ShardedRun.fromSystemProperties().run(filePath, outputPath);
 
-            // Collect the results
-            Map<Integer, Double> finalFareEstimates = new HashMap<>();
-            for (Future<Map<Integer, Double>> future : futures) {
-                finalFareEstimates.putAll(future.get()); // Merging all fare estimates from each thread
+                System.out.println("Fare estimates have been written to: " + outputPath + " (" + result.shards
+                        + " shards on " + result.workers + " workers, " + result.retries + " retries)");
+                System.out.println("  partition " + result.partitionMillis + " ms, workers " + result.workerMillis
+                        + " ms, merge " + result.mergeMillis + " ms");
+
+                long endTime = System.nanoTime();
+                System.out.println("Execution time: " + (endTime - startTime) / 1_000_000 + " ms");
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+            return;
+        }
 
-            // Write the fare estimates to the output CSV file
-            writeOutputToCSV(finalFareEstimates, outputPath);
+        if (mode.equals("worker")) {
+            // One shard of a sharded run; the exit status tells the coordinator whether the output is complete
+            try {
+                ShardedRun.runWorker(filePath, outputPath);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+
+        try {
+//             Measure time without cache
+            long startTime = System.nanoTime();
+
+            processBatch(filePath, outputPath, mode.equals("fixed"));
 
             System.out.println("Fare estimates have been written to: " + outputPath);
 
@@ -308,11 +631,149 @@ public class DeliveryFareEstimation {
 
         } catch (IOException | InterruptedException | ExecutionException e) {
             e.printStackTrace();
+        }
+    }
+
+    // Method to price a whole input file into the output file sorted by id_delivery, as the batch mode does.
+    // fixed uses the legacy fixed 3-way split instead of the fork/join pricer. With -Dfare.area the points outside
+    // the service area are dropped first, see ServiceArea. With -Dfare.kernel=true the deliveries are priced
+    // through TripStore.priceAll instead, see processBatchWithKernel.
+    public static void processBatch(String filePath, String outputPath, boolean fixed)
+            throws IOException, InterruptedException, ExecutionException {
+        Map<Integer, List<DeliveryPoint>> deliveries;
+        ServiceArea area = ServiceArea.fromSystemProperties();
+        if (Boolean.getBoolean("fare.kernel")) {
+            processBatchWithKernel(filePath, outputPath, area);
+            return;
+        }
+        if (area != null) {
+            // Load into a TripStore, drop the points outside the area and group the rest by id_delivery
+            deliveries = area.loadDeliveries(filePath);
+        } else {
+            // Read the CSV data in parallel chunks, already grouped into runs of consecutive rows per delivery
+            List<List<DeliveryPoint>> deliveryRuns = ParallelCsvReader.readDeliveries(filePath);
+
+            // Group the points by id_delivery
+            deliveries = new HashMap<>();
+            for (List<DeliveryPoint> run : deliveryRuns) {
+                deliveries.computeIfAbsent(run.get(0).idDelivery, k -> new ArrayList<>()).addAll(run);
+            }
+        }
+
+        // Price the deliveries: work-stealing fork/join split by point count, or the legacy fixed 3-way split.
+        // Every worker hands its results over as a sorted run; runs beyond the memory limit go to temporary files.
+        try (SortedFareRuns runs = new SortedFareRuns(SortedFareRuns.defaultMaxInMemoryRecords())) {
+            if (fixed) {
+                ExecutorService executor = Executors.newFixedThreadPool(3);
+                try {
+                    priceInFixedBatches(deliveries, executor, 3, runs);
+                } finally {
+                    executor.shutdown();
+                }
+            } else {
+                ForkJoinPricer.priceToRuns(deliveries, ForkJoinPricer.defaultParallelism(), runs);
+            }
+
+            // Merge the runs into the output CSV file, ordered by id_delivery
+            runs.mergeTo(outputPath);
+        }
+    }
+
+    // Method to price a whole input file like processBatch, but from a TripStore through SegmentKernel (vectorized
+    // with the Vector API module), in ranges of deliveries on -Dfare.parallelism threads. The scalar kernel gives
+    // the batch output exactly; the vector kernel can put a fare at a rounding tie, or a speed right at the limit,
+    // on the other side.
+    private static void processBatchWithKernel(String filePath, String outputPath, ServiceArea area)
+            throws IOException, InterruptedException, ExecutionException {
+        TripStore store = (area != null ? area.load(filePath) : TripStore.load(filePath)).groupedById();
+        int count = store.deliveryCount();
+        double[] fares = new double[count];
+
+        int parallelism = Math.max(1, ForkJoinPricer.defaultParallelism());
+        int ranges = Math.min(count, parallelism * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int range = 0; range < ranges; range++) {
+                int from = (int) ((long) count * range / ranges);
+                int to = (int) ((long) count * (range + 1) / ranges);
+                futures.add(executor.submit(() -> store.priceRange(from, to, fares)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
         } finally {
             executor.shutdown();
         }
 
+        Map<Integer, Double> fareEstimates = new HashMap<>(count * 2);
+        for (int delivery = 0; delivery < count; delivery++) {
+            fareEstimates.put(store.deliveryId(delivery), fares[delivery]);
+        }
+        writeOutputToCSV(fareEstimates, outputPath, true);
+    }
+
+    // Method to run the HTTP fare service until the JVM is stopped, see FareService for the endpoints
+    private static void serve() {
+        try {
+            FareService.enableNoDelay();
+            FareService service = FareService.fromSystemProperties();
+            Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+            service.start();
+            System.out.println("Fare service listening on http://localhost:" + service.port() + "/fares");
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Method to convert a CSV input into the binary TripFile format, which every mode except checkpoint reads like
+    // the CSV; CheckpointedRun refuses it with an IOException.
+    // -Dfare.trips.round=true rounds coordinates with more than 6 decimals instead of refusing them.
+    private static void convertToTripFile(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: convert <input.csv> <output.trips>");
+            return;
+        }
+        try {
+            long startTime = System.nanoTime();
+            TripFile.convert(args[1], args[2], Boolean.getBoolean("fare.trips.round"));
+            long endTime = System.nanoTime();
+            System.out.println(args[1] + " (" + Files.size(Paths.get(args[1])) + " bytes) -> " + args[2] + " ("
+                    + Files.size(Paths.get(args[2])) + " bytes) in " + (endTime - startTime) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Method to price several input files concurrently (multi <outputDir> <input.csv>...).
+    // The executor is chosen with -Dfare.executor=virtual|fixed|fork_join and in-flight input with -Dfare.inFlightMb.
+    private static void processMultipleFiles(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: multi <outputDir> <input.csv>...");
+            return;
+        }
+        String outputDir = args[1];
+        List<String> inputPaths = Arrays.asList(args).subList(2, args.length);
 
+        try {
+            long startTime = System.nanoTime();
+            new File(outputDir).mkdirs();
+
+            MultiFileProcessor.ExecutionMode executionMode = MultiFileProcessor.defaultMode();
+            List<MultiFileProcessor.FileResult> results = MultiFileProcessor.process(inputPaths, outputDir, executionMode,
+                    ForkJoinPricer.defaultParallelism(), MultiFileProcessor.defaultInFlightBytes());
+            for (MultiFileProcessor.FileResult result : results) {
+                System.out.println(result.inputPath + " -> " + result.outputPath + " (" + result.deliveries
+                        + " deliveries, " + result.millis + " ms)");
+            }
 
+            long endTime = System.nanoTime();
+            System.out.println("Execution time (" + executionMode + "): " + (endTime - startTime) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,266 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+// Bounded, thread-safe cache of distances between two points.
+// Coordinates are quantized to 1e-7 degree (about 1 cm) and each point is packed into one long, so a
+// key is two longs and no String or boxed value is created. Entries live in striped segments; each
+// segment is set-associative (a key can only be stored in one bucket of WAYS slots) and evicts with
+// CLOCK inside the bucket. Reads are optimistic and lock-free, writes lock only their segment.
+public class DistanceCache {
+
+    // Scale of the quantization: 1e7 units per degree still fits +/-180 degrees in an int
+    private static final double QUANTUM_PER_DEGREE = 1e7;
+
+    // Slots per bucket; a key may be stored in any slot of its bucket
+    private static final int WAYS = 4;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Creates a cache holding at most (about) maxEntries distances
+    public DistanceCache(int maxEntries) {
+        int segmentCount = Math.max(1, Math.min(64, Integer.highestOneBit(Math.max(1, maxEntries / 1024))));
+        int bucketsPerSegment = Integer.highestOneBit(Math.max(1, maxEntries / (segmentCount * WAYS)));
+
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(bucketsPerSegment);
+        }
+    }
+
+    // Method to pack a quantized lat/lng pair into one long (lat in the high 32 bits, lng in the low 32 bits)
+    public static long packPoint(double lat, double lng) {
+        long quantizedLat = Math.round(lat * QUANTUM_PER_DEGREE);
+        long quantizedLng = Math.round(lng * QUANTUM_PER_DEGREE);
+        return (quantizedLat << 32) | (quantizedLng & 0xFFFFFFFFL);
+    }
+
+    // Method to get the latitude back from a packed point
+    public static double unpackLat(long packedPoint) {
+        return (int) (packedPoint >> 32) / QUANTUM_PER_DEGREE;
+    }
+
+    // Method to get the longitude back from a packed point
+    public static double unpackLng(long packedPoint) {
+        return (int) packedPoint / QUANTUM_PER_DEGREE;
+    }
+
+    // Method to look up a distance; returns NaN on a miss
+    public double get(long from, long to) {
+        long hash = hash(from, to);
+        double distance = segments[(int) (hash >>> 58) & segmentMask].get(from, to, (int) hash);
+        if (Double.isNaN(distance)) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return distance;
+    }
+
+    // Method to store a distance, evicting an old entry of the same bucket if it is full
+    public void put(long from, long to, double distance) {
+        long hash = hash(from, to);
+        if (segments[(int) (hash >>> 58) & segmentMask].put(from, to, (int) hash, distance)) {
+            evictions.increment();
+        }
+    }
+
+    // Method to visit every cached entry (used to persist the cache)
+    public void forEach(EntryVisitor visitor) {
+        for (Segment segment : segments) {
+            segment.forEach(visitor);
+        }
+    }
+
+    // Callback for forEach
+    public interface EntryVisitor {
+        void visit(long from, long to, double distance);
+    }
+
+    // Method to remove every entry and reset the counters
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long capacity() {
+        return (long) segments.length * segments[0].keysFrom.length;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Share of lookups answered from the cache, 0 when nothing has been looked up yet
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    // Method to mix both keys into one well distributed 64-bit hash
+    private static long hash(long from, long to) {
+        long h = from * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(to * 0xC2B2AE3D27D4EB4FL, 31);
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+
+    // One stripe of the cache: parallel arrays of buckets with WAYS slots each
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final long[] keysFrom;
+        private final long[] keysTo;
+        private final double[] distances;
+        private final boolean[] occupied;
+        private final boolean[] referenced;   // CLOCK bit, set on every hit
+        private final byte[] clockHands;      // CLOCK position per bucket
+        private final int bucketMask;
+        private int size;
+
+        Segment(int buckets) {
+            this.keysFrom = new long[buckets * WAYS];
+            this.keysTo = new long[buckets * WAYS];
+            this.distances = new double[buckets * WAYS];
+            this.occupied = new boolean[buckets * WAYS];
+            this.referenced = new boolean[buckets * WAYS];
+            this.clockHands = new byte[buckets];
+            this.bucketMask = buckets - 1;
+        }
+
+        // Optimistic read: no lock is taken unless a writer changed the segment meanwhile
+        double get(long from, long to, int hash) {
+            int base = (hash & bucketMask) * WAYS;
+            long stamp = lock.tryOptimisticRead();
+            int slot = find(base, from, to);
+            double distance = slot < 0 ? Double.NaN : distances[slot];
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    slot = find(base, from, to);
+                    distance = slot < 0 ? Double.NaN : distances[slot];
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (slot >= 0) {
+                // A lost update of this hint only makes eviction slightly less accurate
+                referenced[slot] = true;
+            }
+            return distance;
+        }
+
+        // Returns true if another entry had to be evicted
+        boolean put(long from, long to, int hash, double distance) {
+            int bucket = hash & bucketMask;
+            int base = bucket * WAYS;
+            long stamp = lock.writeLock();
+            try {
+                int slot = find(base, from, to);
+                if (slot >= 0) {
+                    distances[slot] = distance;
+                    return false;
+                }
+
+                // Use a free slot if there is one
+                for (int i = base; i < base + WAYS; i++) {
+                    if (!occupied[i]) {
+                        store(i, from, to, distance);
+                        size++;
+                        return false;
+                    }
+                }
+
+                // CLOCK: skip (and clear) recently used slots, evict the first one not used since the last pass
+                int hand = clockHands[bucket];
+                while (referenced[base + hand]) {
+                    referenced[base + hand] = false;
+                    hand = (hand + 1) % WAYS;
+                }
+                store(base + hand, from, to, distance);
+                clockHands[bucket] = (byte) ((hand + 1) % WAYS);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void forEach(EntryVisitor visitor) {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < keysFrom.length; i++) {
+                    if (occupied[i]) {
+                        visitor.visit(keysFrom[i], keysTo[i], distances[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                Arrays.fill(occupied, false);
+                Arrays.fill(referenced, false);
+                size = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int find(int base, long from, long to) {
+            for (int i = base; i < base + WAYS; i++) {
+                if (occupied[i] && keysFrom[i] == from && keysTo[i] == to) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void store(int slot, long from, long to, double distance) {
+            keysFrom[slot] = from;
+            keysTo[slot] = to;
+            distances[slot] = distance;
+            occupied[slot] = true;
+            referenced[slot] = false;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Persistent distance cache in a versioned binary layout that is memory-mapped and searched in place,
+// so nothing has to be deserialized before the first lookup.
+//
+// Layout (big-endian):
+//   header   int magic "DCF1", int version, long sortedCount, long sortedCrc32, long reserved  (32 bytes)
+//   sorted   sortedCount records ordered by (from, to): long from, long to, double distance     (24 bytes each)
+//   appended zero or more blocks: int count, int crc32 of the block's records, then count records
+// Keys are the packed points of DistanceCache. New entries are appended as blocks; a block cut short by a
+// crash fails its checksum and is ignored (and overwritten by the next append). compact() folds the
+// appended blocks back into the sorted region.
+public class DistanceCacheFile implements Closeable {
+
+    static final int MAGIC = 0x44434631; // "DCF1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 24;
+    static final int BLOCK_HEADER_BYTES = 8;
+
+    // Records per mapped slice; slices keep every mapping below 2 GB and never split a record
+    private static final int RECORDS_PER_SLICE = (1 << 30) / RECORD_BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] slices;
+    private final long sortedCount;
+    private long appendPosition;
+
+    // Entries of the appended blocks, sorted; replaced as a whole on every append
+    private volatile SortedRecords appended;
+
+    private DistanceCacheFile(Path path, FileChannel channel, MappedByteBuffer[] slices, long sortedCount,
+                              long appendPosition, SortedRecords appended) {
+        this.path = path;
+        this.channel = channel;
+        this.slices = slices;
+        this.sortedCount = sortedCount;
+        this.appendPosition = appendPosition;
+        this.appended = appended;
+    }
+
+    // Method to open an existing cache file; the sorted region is verified against its checksum
+    public static DistanceCacheFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.read(header, 0) < HEADER_BYTES) {
+                throw new IOException("Distance cache file is truncated: " + path);
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a distance cache file: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported distance cache file version " + header.getInt(4) + ": " + path);
+            }
+            long sortedCount = header.getLong(8);
+            long sortedCrc = header.getLong(16);
+            long sortedEnd = HEADER_BYTES + sortedCount * RECORD_BYTES;
+            if (sortedCount < 0 || sortedEnd > channel.size()) {
+                throw new IOException("Distance cache file is truncated: " + path);
+            }
+
+            // Map the sorted region slice by slice and check it
+            int sliceCount = (int) ((sortedCount + RECORDS_PER_SLICE - 1) / RECORDS_PER_SLICE);
+            MappedByteBuffer[] slices = new MappedByteBuffer[sliceCount];
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < sliceCount; i++) {
+                long firstRecord = (long) i * RECORDS_PER_SLICE;
+                long records = Math.min(RECORDS_PER_SLICE, sortedCount - firstRecord);
+                slices[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + firstRecord * RECORD_BYTES, records * RECORD_BYTES);
+                crc.update(slices[i].duplicate());
+            }
+            if (crc.getValue() != sortedCrc) {
+                throw new IOException("Distance cache file checksum mismatch: " + path);
+            }
+
+            // Read the appended blocks up to the first incomplete or corrupt one
+            RecordBuffer appendedRecords = new RecordBuffer();
+            long position = sortedEnd;
+            ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+            while (position + BLOCK_HEADER_BYTES <= channel.size()) {
+                blockHeader.clear();
+                channel.read(blockHeader, position);
+                int count = blockHeader.getInt(0);
+                long blockBytes = (long) count * RECORD_BYTES;
+                if (count <= 0 || position + BLOCK_HEADER_BYTES + blockBytes > channel.size()) {
+                    break;
+                }
+                ByteBuffer block = ByteBuffer.allocate((int) blockBytes);
+                channel.read(block, position + BLOCK_HEADER_BYTES);
+                block.flip();
+                CRC32 blockCrc = new CRC32();
+                blockCrc.update(block.duplicate());
+                if ((int) blockCrc.getValue() != blockHeader.getInt(4)) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    appendedRecords.add(block.getLong(), block.getLong(), block.getDouble());
+                }
+                position += BLOCK_HEADER_BYTES + blockBytes;
+            }
+
+            return new DistanceCacheFile(path, channel, slices, sortedCount, position, appendedRecords.toSorted());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Method to write a new cache file holding the given entries in the sorted region (atomically replaces path)
+    public static void write(Path path, RecordBuffer entries) throws IOException {
+        SortedRecords sorted = entries.toSorted();
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+            CRC32 crc = new CRC32();
+            long written = 0;
+            channel.position(HEADER_BYTES);
+            for (int i = 0; i < sorted.count; i++) {
+                // Keys are unique in the sorted region; a repeated key keeps its last entry
+                if (i + 1 < sorted.count && sorted.from[i] == sorted.from[i + 1] && sorted.to[i] == sorted.to[i + 1]) {
+                    continue;
+                }
+                buffer.putLong(sorted.from[i]).putLong(sorted.to[i]).putDouble(sorted.distances[i]);
+                written++;
+                if (!buffer.hasRemaining()) {
+                    writeRecords(channel, buffer, crc);
+                }
+            }
+            writeRecords(channel, buffer, crc);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(written).putLong(crc.getValue()).putLong(0).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to fold the appended blocks into the sorted region; returns the reopened file
+    public DistanceCacheFile compact() throws IOException {
+        RecordBuffer all = new RecordBuffer();
+        forEach(all::add);
+        close();
+        write(path, all);
+        return open(path);
+    }
+
+    // Method to look up a distance; returns NaN if the key is not in the file
+    public double lookup(long from, long to) {
+        // Binary search in the mapped sorted region
+        long low = 0;
+        long high = sortedCount - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            MappedByteBuffer slice = slices[(int) (mid / RECORDS_PER_SLICE)];
+            int offset = (int) (mid % RECORDS_PER_SLICE) * RECORD_BYTES;
+            int cmp = compare(slice.getLong(offset), slice.getLong(offset + 8), from, to);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return slice.getDouble(offset + 16);
+            }
+        }
+        return appended.lookup(from, to);
+    }
+
+    // Method to append new entries as one checksummed block and make them visible to lookups
+    public synchronized void append(RecordBuffer entries) throws IOException {
+        if (entries.count == 0) {
+            return;
+        }
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_BYTES + entries.count * RECORD_BYTES);
+        block.position(BLOCK_HEADER_BYTES);
+        for (int i = 0; i < entries.count; i++) {
+            block.putLong(entries.from[i]).putLong(entries.to[i]).putDouble(entries.distances[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), BLOCK_HEADER_BYTES, entries.count * RECORD_BYTES);
+        block.putInt(0, entries.count).putInt(4, (int) crc.getValue()).flip();
+
+        // Overwrite any torn block left behind by an earlier crash
+        channel.truncate(appendPosition);
+        while (block.hasRemaining()) {
+            appendPosition += channel.write(block, appendPosition);
+        }
+        channel.force(false);
+
+        RecordBuffer merged = new RecordBuffer();
+        appended.forEach(merged::add);
+        entries.forEach(merged::add);
+        appended = merged.toSorted();
+    }
+
+    // Method to visit every entry of the file (sorted region first, then appended entries)
+    public void forEach(DistanceCache.EntryVisitor visitor) {
+        for (long i = 0; i < sortedCount; i++) {
+            MappedByteBuffer slice = slices[(int) (i / RECORDS_PER_SLICE)];
+            int offset = (int) (i % RECORDS_PER_SLICE) * RECORD_BYTES;
+            visitor.visit(slice.getLong(offset), slice.getLong(offset + 8), slice.getDouble(offset + 16));
+        }
+        appended.forEach(visitor);
+    }
+
+    public long sortedCount() {
+        return sortedCount;
+    }
+
+    public long appendedCount() {
+        return appended.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writeRecords(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int compare(long from1, long to1, long from2, long to2) {
+        int cmp = Long.compare(from1, from2);
+        return cmp != 0 ? cmp : Long.compare(to1, to2);
+    }
+
+    // Growable parallel arrays of cache entries, used to collect entries before writing or appending
+    public static class RecordBuffer {
+        long[] from = new long[16];
+        long[] to = new long[16];
+        double[] distances = new double[16];
+        int count;
+
+        public void add(long fromKey, long toKey, double distance) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+                distances = Arrays.copyOf(distances, count * 2);
+            }
+            from[count] = fromKey;
+            to[count] = toKey;
+            distances[count] = distance;
+            count++;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        void forEach(DistanceCache.EntryVisitor visitor) {
+            for (int i = 0; i < count; i++) {
+                visitor.visit(from[i], to[i], distances[i]);
+            }
+        }
+
+        // Method to sort a copy of the entries by key (bottom-up merge sort over the parallel arrays)
+        SortedRecords toSorted() {
+            long[] sortedFrom = Arrays.copyOf(from, count);
+            long[] sortedTo = Arrays.copyOf(to, count);
+            double[] sortedDistances = Arrays.copyOf(distances, count);
+            long[] tempFrom = new long[count];
+            long[] tempTo = new long[count];
+            double[] tempDistances = new double[count];
+
+            for (int width = 1; width < count; width *= 2) {
+                for (int left = 0; left < count; left += 2 * width) {
+                    int middle = Math.min(left + width, count);
+                    int right = Math.min(left + 2 * width, count);
+                    int i = left, j = middle, k = left;
+                    while (i < middle || j < right) {
+                        boolean takeLeft = j >= right
+                                || (i < middle && compare(sortedFrom[i], sortedTo[i], sortedFrom[j], sortedTo[j]) <= 0);
+                        int source = takeLeft ? i++ : j++;
+                        tempFrom[k] = sortedFrom[source];
+                        tempTo[k] = sortedTo[source];
+                        tempDistances[k] = sortedDistances[source];
+                        k++;
+                    }
+                }
+                long[] swapLong = sortedFrom; sortedFrom = tempFrom; tempFrom = swapLong;
+                swapLong = sortedTo; sortedTo = tempTo; tempTo = swapLong;
+                double[] swapDouble = sortedDistances; sortedDistances = tempDistances; tempDistances = swapDouble;
+            }
+            return new SortedRecords(sortedFrom, sortedTo, sortedDistances, count);
+        }
+    }
+
+    // Immutable entries sorted by key (stable, so a repeated key keeps its insertion order), with binary search
+    static final class SortedRecords {
+        final long[] from;
+        final long[] to;
+        final double[] distances;
+        final int count;
+
+        SortedRecords(long[] from, long[] to, double[] distances, int count) {
+            this.from = from;
+            this.to = to;
+            this.distances = distances;
+            this.count = count;
+        }
+
+        double lookup(long fromKey, long toKey) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(from[mid], to[mid], fromKey, toKey);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return distances[mid];
+                }
+            }
+            return Double.NaN;
+        }
+
+        void forEach(DistanceCache.EntryVisitor visitor) {
+            for (int i = 0; i < count; i++) {
+                visitor.visit(from[i], to[i], distances[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+// Writes "id_delivery,fare_estimate" rows straight into a reusable byte buffer that is drained into a
+// FileChannel (or any other channel, e.g. an HTTP response), without String.format or string concatenation
+// per row. Fares are written with two decimals, rounded like String.format("%.2f") in the root locale, i.e.
+// always with '.' as decimal separator. Every I/O failure is thrown to the caller.
+public class FareCsvWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Longest row: an int id, ',', a fare below 1e7 with two decimals and '\n'; longer fares are written as text
+    private static final int MAX_FAST_ROW = 32;
+
+    // Fares from here on are formatted with String.format
+    private static final double FAST_FORMAT_LIMIT = 1e7;
+
+    private final WritableByteChannel channel;
+    private final FileChannel file;  // the channel when writing a file, otherwise null
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+
+    // Opens (and truncates) the output file and writes the header
+    public FareCsvWriter(String outputPath) throws IOException {
+        this(FileChannel.open(Paths.get(outputPath),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    // Writes the header and the rows to the channel; closing the writer closes the channel
+    public FareCsvWriter(WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.file = channel instanceof FileChannel ? (FileChannel) channel : null;
+        try {
+            writeAscii("id_delivery,fare_estimate\n");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Opens the output file of an interrupted run and continues it after its first resumeLength bytes (header included);
+    // anything written after that is cut off. A resumeLength of 0 starts a new file like FareCsvWriter(outputPath).
+    public FareCsvWriter(String outputPath, long resumeLength) throws IOException {
+        this.file = FileChannel.open(Paths.get(outputPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel = file;
+        try {
+            if (resumeLength == 0) {
+                file.truncate(0);
+                writeAscii("id_delivery,fare_estimate\n");
+            } else {
+                if (file.size() < resumeLength) {
+                    throw new IOException(outputPath + " is shorter than the " + resumeLength + " bytes to resume after");
+                }
+                file.truncate(resumeLength);
+                file.position(resumeLength);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Method to write one row
+    public void write(int idDelivery, double fare) throws IOException {
+        if (buffer.remaining() < MAX_FAST_ROW) {
+            drain();
+        }
+        writeLong(idDelivery);
+        buffer.put((byte) ',');
+        if (!writeFare(fare)) {
+            writeAscii(String.format(Locale.ROOT, "%.2f", fare));
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+        }
+        buffer.put((byte) '\n');
+    }
+
+    // Method to write every fare of the map, in map order or sorted by id_delivery
+    public void writeAll(Map<Integer, Double> fareEstimates, boolean sortById) throws IOException {
+        if (!sortById) {
+            for (Map.Entry<Integer, Double> entry : fareEstimates.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        int[] ids = new int[fareEstimates.size()];
+        int count = 0;
+        for (Integer id : fareEstimates.keySet()) {
+            ids[count++] = id;
+        }
+        Arrays.sort(ids);
+        for (int id : ids) {
+            write(id, fareEstimates.get(id));
+        }
+    }
+
+    // Method to write the buffered rows to the file
+    public void flush() throws IOException {
+        drain();
+    }
+
+    // Method to write the buffered rows and force them to the storage device; returns the length of the file
+    public long sync() throws IOException {
+        drain();
+        if (file == null) {
+            throw new IOException("sync needs a file channel");
+        }
+        file.force(false);
+        return file.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Method to format a fare with two decimals, as String.format("%.2f") does.
+    // Formatter rounds the shortest decimal representation of the double half-up, which is the same as rounding
+    // fare * 100 half-up unless fare * 100 lies within rounding error of a tie; those fares, negative fares,
+    // NaN, infinities and fares of 1e7 and more return false and are formatted with String.format instead.
+    private boolean writeFare(double fare) {
+        if (!(fare >= 0 && fare < FAST_FORMAT_LIMIT)) {
+            return false;
+        }
+        double scaled = fare * 100;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) < 1e-6) {
+            return false;
+        }
+
+        long cents = (long) floor + (fraction > 0.5 ? 1 : 0);
+        writeLong(cents / 100);
+        buffer.put((byte) '.');
+        long remainder = cents % 100;
+        buffer.put((byte) ('0' + remainder / 10));
+        buffer.put((byte) ('0' + remainder % 10));
+        return true;
+    }
+
+    // Method to write an integer in decimal
+    private void writeLong(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
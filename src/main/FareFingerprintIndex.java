@@ -0,0 +1,192 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Fare of every delivery of the last run together with a 64-bit fingerprint of its points, so a later run can
+// reuse the fare of each delivery whose points have not changed. Kept in memory as arrays sorted by id_delivery.
+//
+// Layout (big-endian):
+//   header   int magic "FFI1", int version, long pricingVersion, long count, long crc32 of the records  (32 bytes)
+//   records  count records ordered by id: int id, long fingerprint, double fare                       (20 bytes each)
+// The pricingVersion mixes PRICING_VERSION with the fingerprint of the tariff; an index written with another one is
+// ignored, so a change to the fare rules or to the tariff reprices everything.
+public class FareFingerprintIndex {
+
+    static final int MAGIC = 0x46464931; // "FFI1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 20;
+
+    // Bump whenever the same points can get a different fare (tariff, speed filter, rounding)
+    public static final long PRICING_VERSION = 1;
+
+    private final int[] ids;
+    private final long[] fingerprints;
+    private final double[] fares;
+
+    private FareFingerprintIndex(int[] ids, long[] fingerprints, double[] fares) {
+        this.ids = ids;
+        this.fingerprints = fingerprints;
+        this.fares = fares;
+    }
+
+    public static FareFingerprintIndex empty() {
+        return new FareFingerprintIndex(new int[0], new long[0], new double[0]);
+    }
+
+    // Pricing version of fares priced with the given tariff
+    static long pricingVersion(Tariff tariff) {
+        return mix(PRICING_VERSION ^ tariff.fingerprint());
+    }
+
+    // Method to read the index at path for fares of the current tariff
+    public static FareFingerprintIndex load(Path path) throws IOException {
+        return load(path, TariffRegistry.current());
+    }
+
+    // Method to read the index at path; a missing file or one of another pricing version or tariff gives an empty index
+    public static FareFingerprintIndex load(Path path, Tariff tariff) throws IOException {
+        if (!Files.exists(path)) {
+            return empty();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(path + " is not a fingerprint index of version " + VERSION);
+            }
+            long pricingVersion = header.getLong();
+            long count = header.getLong();
+            long crc = header.getLong();
+            if (pricingVersion != pricingVersion(tariff)) {
+                return empty();
+            }
+            if (count < 0 || count > Integer.MAX_VALUE / RECORD_BYTES || channel.size() != HEADER_BYTES + count * RECORD_BYTES) {
+                throw new IOException(path + " has " + channel.size() + " bytes, which does not match its " + count + " records");
+            }
+
+            ByteBuffer records = ByteBuffer.allocate((int) count * RECORD_BYTES);
+            readFully(channel, records, HEADER_BYTES);
+            CRC32 checksum = new CRC32();
+            checksum.update(records.array());
+            if (checksum.getValue() != crc) {
+                throw new IOException(path + " fails its checksum");
+            }
+
+            records.flip();
+            int size = (int) count;
+            int[] ids = new int[size];
+            long[] fingerprints = new long[size];
+            double[] fares = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = records.getInt();
+                fingerprints[i] = records.getLong();
+                fares[i] = records.getDouble();
+            }
+            return new FareFingerprintIndex(ids, fingerprints, fares);
+        }
+    }
+
+    // Method to write the first count entries, priced with the current tariff, as a new index
+    public static void write(Path path, int[] ids, long[] fingerprints, double[] fares, int count) throws IOException {
+        write(path, TariffRegistry.current(), ids, fingerprints, fares, count);
+    }
+
+    // Method to write the first count entries, priced with tariff, as a new index replacing the file at path
+    // atomically. The arrays are not modified; ids must be unique.
+    public static void write(Path path, Tariff tariff, int[] ids, long[] fingerprints, double[] fares, int count)
+            throws IOException {
+        // Sort by id through (id, index) pairs packed in a long
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_BYTES);
+        for (int i = 0; i < count; i++) {
+            int index = (int) order[i];
+            if (i > 0 && ids[index] == ids[(int) order[i - 1]]) {
+                throw new IllegalArgumentException("Duplicate id_delivery " + ids[index]);
+            }
+            records.putInt(ids[index]).putLong(fingerprints[index]).putDouble(fares[index]);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(records.array());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(pricingVersion(tariff)).putLong(count).putLong(checksum.getValue());
+        header.flip();
+        records.flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Method to get the stored fare of a delivery if its fingerprint is unchanged, otherwise NaN
+    public double lookup(int idDelivery, long fingerprint) {
+        int index = Arrays.binarySearch(ids, idDelivery);
+        return index >= 0 && fingerprints[index] == fingerprint ? fares[index] : Double.NaN;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // Method to hash the points of a delivery in order: id, exact coordinate bits and timestamps all count
+    public static long fingerprint(List<DeliveryPoint> points) {
+        long hash = mix(points.size() * 0x9E3779B97F4A7C15L);
+        for (DeliveryPoint point : points) {
+            hash = mix(hash ^ point.idDelivery) * 0x9E3779B97F4A7C15L;
+            hash = mix(hash ^ Double.doubleToLongBits(point.lat)) * 0x9E3779B97F4A7C15L;
+            hash = mix(hash ^ Double.doubleToLongBits(point.lng)) * 0x9E3779B97F4A7C15L;
+            hash = mix(hash ^ point.timestamp) * 0x9E3779B97F4A7C15L;
+        }
+        return mix(hash);
+    }
+
+    // Finalizer of MurmurHash3: spreads every input bit over the whole word
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Fingerprint index is truncated");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package main;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms of a run, off by default (-Dfare.metrics=true turns them on).
+// The hot path only touches LongAdders, and only while enabled; per-delivery counts are summed locally and added
+// once per delivery. The distance cache hit ratio, GC and allocation figures are read from their own counters
+// when a snapshot is taken. Exposed through JMX (main:type=FareMetrics) and as a periodic text or JSON dump.
+public class FareMetrics implements FareMetricsMBean {
+
+    // Branches of TariffEngine.segmentFare
+    public static final int IDLE = 0;
+    public static final int NIGHT_TO_DAY = 1;
+    public static final int DAY = 2;
+    public static final int NIGHT = 3;
+    public static final int DAY_TO_NIGHT = 4;
+    public static final int MIDNIGHT_CROSSING = 5;
+
+    private static final String[] BRANCH_NAMES = {"idle", "nightToDay", "day", "night", "dayToNight", "midnightCrossing"};
+
+    private static final FareMetrics INSTANCE = new FareMetrics();
+
+    // Plain field: the hot path reads it without a memory barrier, a change becomes visible to other threads eventually
+    private static boolean enabled = Boolean.getBoolean("fare.metrics");
+
+    private static final LongAdder rowsParsed = new LongAdder();
+    private static final LongAdder deliveriesPriced = new LongAdder();
+    private static final LongAdder pointsKept = new LongAdder();
+    private static final LongAdder pointsDropped = new LongAdder();
+    private static final LongAdder[] segments = new LongAdder[BRANCH_NAMES.length];
+    private static final LatencyHistogram batchLatency = new LatencyHistogram();
+
+    // Values at the last reset, so the GC and allocation figures cover the same period as the counters
+    private static volatile long resetNanos = System.nanoTime();
+    private static volatile long resetGcCount;
+    private static volatile long resetGcMillis;
+    private static volatile long resetAllocatedBytes;
+
+    private static ScheduledExecutorService dumpExecutor;
+
+    static {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new LongAdder();
+        }
+        resetBaselines();
+    }
+
+    private FareMetrics() {
+    }
+
+    public static FareMetrics instance() {
+        return INSTANCE;
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    // Method to count parsed rows; callers add a whole region at once
+    public static void rowsParsed(long rows) {
+        if (enabled) {
+            rowsParsed.add(rows);
+        }
+    }
+
+    // Method to count one filtered delivery with its kept and dropped (> 100 km/h) points
+    public static void filtered(int kept, int dropped) {
+        if (enabled) {
+            deliveriesPriced.increment();
+            pointsKept.add(kept);
+            if (dropped > 0) {
+                pointsDropped.add(dropped);
+            }
+        }
+    }
+
+    // Method to count one segment priced by the given TariffEngine branch
+    public static void segment(int branch) {
+        if (enabled) {
+            segments[branch].increment();
+        }
+    }
+
+    // Method to record the latency of one batch of deliveries (a DeliveryTask or a fork/join leaf)
+    public static void batchCompleted(long nanos) {
+        if (enabled) {
+            batchLatency.record(nanos);
+        }
+    }
+
+    // Method to turn the counters on, register the MBean and start the dump configured by system properties:
+    // -Dfare.metrics.dumpSeconds=N (0, the default, dumps only at the end) and -Dfare.metrics.format=text|json.
+    // Returns false (and does nothing) unless -Dfare.metrics=true.
+    public static boolean startFromSystemProperties() {
+        if (!Boolean.getBoolean("fare.metrics")) {
+            return false;
+        }
+        enable(true);
+        registerMBean();
+        long dumpSeconds = Long.getLong("fare.metrics.dumpSeconds", 0);
+        if (dumpSeconds > 0) {
+            startDump(dumpSeconds * 1000, jsonFormat(), System.out);
+        }
+        return true;
+    }
+
+    // Method to stop the periodic dump and print a last snapshot in the configured format
+    public static void finish(PrintStream out) {
+        stopDump();
+        out.println(jsonFormat() ? snapshot().toJson() : snapshot().toText());
+    }
+
+    // Method to register the MBean on the platform MBean server; registering twice is harmless
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("main:type=FareMetrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering FareMetrics MBean: " + e.getMessage());
+        }
+    }
+
+    // Method to print a snapshot to out every periodMillis on a daemon thread, until stopDump
+    public static synchronized void startDump(long periodMillis, boolean json, PrintStream out) {
+        stopDump();
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fare-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> out.println(json ? snapshot().toJson() : snapshot().toText()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopDump() {
+        if (dumpExecutor != null) {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    // Method to read every counter at once
+    public static Snapshot snapshot() {
+        long[] segmentCounts = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            segmentCounts[i] = segments[i].sum();
+        }
+        DistanceCache cache = DistanceCalculator.getCache();
+        return new Snapshot((System.nanoTime() - resetNanos) / 1e9, rowsParsed.sum(), deliveriesPriced.sum(),
+                pointsKept.sum(), pointsDropped.sum(), segmentCounts, cache == null ? Double.NaN : cache.hitRatio(),
+                batchLatency.count(), batchLatency.percentile(0.5), batchLatency.percentile(0.99), batchLatency.max(),
+                gcCount() - resetGcCount, gcMillis() - resetGcMillis, totalAllocatedBytes() - resetAllocatedBytes);
+    }
+
+    // Method to zero every counter and restart the period of the rates
+    public static void resetAll() {
+        rowsParsed.reset();
+        deliveriesPriced.reset();
+        pointsKept.reset();
+        pointsDropped.reset();
+        for (LongAdder segment : segments) {
+            segment.reset();
+        }
+        batchLatency.reset();
+        resetBaselines();
+    }
+
+    // Method to turn the counters on or off at runtime
+    public static void enable(boolean on) {
+        enabled = on;
+    }
+
+    private static boolean jsonFormat() {
+        return System.getProperty("fare.metrics.format", "text").equalsIgnoreCase("json");
+    }
+
+    private static void resetBaselines() {
+        resetGcCount = gcCount();
+        resetGcMillis = gcMillis();
+        resetAllocatedBytes = totalAllocatedBytes();
+        resetNanos = System.nanoTime();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    // Bytes allocated by all live threads, or 0 when the JVM does not report it
+    private static long totalAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getTotalThreadAllocatedBytes();
+            }
+        }
+        return 0;
+    }
+
+    // MBean attributes, all read from a fresh snapshot
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+        enable(on);
+    }
+
+    @Override
+    public long getRowsParsed() {
+        return rowsParsed.sum();
+    }
+
+    @Override
+    public double getRowsParsedPerSecond() {
+        return snapshot().rowsParsedPerSecond();
+    }
+
+    @Override
+    public long getDeliveriesPriced() {
+        return deliveriesPriced.sum();
+    }
+
+    @Override
+    public long getPointsKept() {
+        return pointsKept.sum();
+    }
+
+    @Override
+    public long getPointsDropped() {
+        return pointsDropped.sum();
+    }
+
+    @Override
+    public long getIdleSegments() {
+        return segments[IDLE].sum();
+    }
+
+    @Override
+    public long getDaySegments() {
+        return segments[DAY].sum();
+    }
+
+    @Override
+    public long getNightSegments() {
+        return segments[NIGHT].sum();
+    }
+
+    @Override
+    public long getNightToDaySegments() {
+        return segments[NIGHT_TO_DAY].sum();
+    }
+
+    @Override
+    public long getDayToNightSegments() {
+        return segments[DAY_TO_NIGHT].sum();
+    }
+
+    @Override
+    public long getMidnightCrossingSegments() {
+        return segments[MIDNIGHT_CROSSING].sum();
+    }
+
+    @Override
+    public double getDistanceCacheHitRatio() {
+        return snapshot().cacheHitRatio;
+    }
+
+    @Override
+    public long getBatches() {
+        return batchLatency.count();
+    }
+
+    @Override
+    public double getBatchLatencyP50Millis() {
+        return batchLatency.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public double getBatchLatencyP99Millis() {
+        return batchLatency.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public double getBatchLatencyMaxMillis() {
+        return batchLatency.max() / 1e6;
+    }
+
+    @Override
+    public long getGcCount() {
+        return gcCount() - resetGcCount;
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        return gcMillis() - resetGcMillis;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return totalAllocatedBytes() - resetAllocatedBytes;
+    }
+
+    @Override
+    public double getAllocationMbPerSecond() {
+        return snapshot().allocationMbPerSecond();
+    }
+
+    @Override
+    public String toJson() {
+        return snapshot().toJson();
+    }
+
+    @Override
+    public void reset() {
+        resetAll();
+    }
+
+    // Counters at one point in time; rates cover the period since the last reset (or class load)
+    public static class Snapshot {
+        public final double elapsedSeconds;
+        public final long rowsParsed;
+        public final long deliveriesPriced;
+        public final long pointsKept;
+        public final long pointsDropped;
+        public final long[] segments;       // indexed by IDLE, NIGHT_TO_DAY, ...
+        public final double cacheHitRatio;  // NaN while the distance cache is off
+        public final long batches;
+        public final long batchP50Nanos;
+        public final long batchP99Nanos;
+        public final long batchMaxNanos;
+        public final long gcCount;
+        public final long gcMillis;
+        public final long allocatedBytes;
+
+        Snapshot(double elapsedSeconds, long rowsParsed, long deliveriesPriced, long pointsKept, long pointsDropped,
+                 long[] segments, double cacheHitRatio, long batches, long batchP50Nanos, long batchP99Nanos,
+                 long batchMaxNanos, long gcCount, long gcMillis, long allocatedBytes) {
+            this.elapsedSeconds = elapsedSeconds;
+            this.rowsParsed = rowsParsed;
+            this.deliveriesPriced = deliveriesPriced;
+            this.pointsKept = pointsKept;
+            this.pointsDropped = pointsDropped;
+            this.segments = segments;
+            this.cacheHitRatio = cacheHitRatio;
+            this.batches = batches;
+            this.batchP50Nanos = batchP50Nanos;
+            this.batchP99Nanos = batchP99Nanos;
+            this.batchMaxNanos = batchMaxNanos;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public double rowsParsedPerSecond() {
+            return elapsedSeconds > 0 ? rowsParsed / elapsedSeconds : 0;
+        }
+
+        public double allocationMbPerSecond() {
+            return elapsedSeconds > 0 ? allocatedBytes / 1e6 / elapsedSeconds : 0;
+        }
+
+        public String toText() {
+            StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                    "[metrics %.1fs] rows %d (%.0f/s), deliveries %d, points kept %d, dropped %d, segments",
+                    elapsedSeconds, rowsParsed, rowsParsedPerSecond(), deliveriesPriced, pointsKept, pointsDropped));
+            for (int i = 0; i < segments.length; i++) {
+                text.append(' ').append(BRANCH_NAMES[i]).append('=').append(segments[i]);
+            }
+            text.append(String.format(Locale.ROOT,
+                    ", cache hit ratio %.3f, batches %d (p50 %.2f ms, p99 %.2f ms, max %.2f ms), gc %d (%d ms), allocated %.1f MB (%.1f MB/s)",
+                    cacheHitRatio, batches, batchP50Nanos / 1e6, batchP99Nanos / 1e6, batchMaxNanos / 1e6,
+                    gcCount, gcMillis, allocatedBytes / 1e6, allocationMbPerSecond()));
+            return text.toString();
+        }
+
+        public String toJson() {
+            StringBuilder json = new StringBuilder(String.format(Locale.ROOT,
+                    "{\"elapsedSeconds\":%.3f,\"rowsParsed\":%d,\"rowsParsedPerSecond\":%.1f,\"deliveriesPriced\":%d,"
+                            + "\"pointsKept\":%d,\"pointsDropped\":%d,\"segments\":{",
+                    elapsedSeconds, rowsParsed, rowsParsedPerSecond(), deliveriesPriced, pointsKept, pointsDropped));
+            for (int i = 0; i < segments.length; i++) {
+                json.append(i > 0 ? "," : "").append('"').append(BRANCH_NAMES[i]).append("\":").append(segments[i]);
+            }
+            json.append(String.format(Locale.ROOT,
+                    "},\"cacheHitRatio\":%s,\"batches\":%d,\"batchLatencyMillis\":{\"p50\":%.3f,\"p99\":%.3f,\"max\":%.3f},"
+                            + "\"gcCount\":%d,\"gcMillis\":%d,\"allocatedBytes\":%d,\"allocationMbPerSecond\":%.1f}",
+                    Double.isNaN(cacheHitRatio) ? "null" : String.format(Locale.ROOT, "%.4f", cacheHitRatio),
+                    batches, batchP50Nanos / 1e6, batchP99Nanos / 1e6, batchMaxNanos / 1e6,
+                    gcCount, gcMillis, allocatedBytes, allocationMbPerSecond()));
+            return json.toString();
+        }
+    }
+
+    // Lock-free log-linear histogram of nanosecond latencies: values below 16 have a bucket each, larger values
+    // 8 buckets per power of two, so a percentile is reported within 12.5% (as the upper bound of its bucket)
+    public static class LatencyHistogram {
+        private static final int BUCKETS = 16 + 59 * 8;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public LatencyHistogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets[bucketOf(value)].increment();
+            count.increment();
+            max.accumulate(value);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        // Method to estimate the given percentile (0..1); 0 when nothing was recorded
+        public long percentile(double fraction) {
+            long total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        public void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            max.reset();
+        }
+
+        static int bucketOf(long value) {
+            if (value < 16) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & 7;
+            return 16 + (exponent - 4) * 8 + sub;
+        }
+
+        // Largest value that falls in the bucket
+        static long upperBound(int bucket) {
+            if (bucket < 16) {
+                return bucket;
+            }
+            int exponent = (bucket - 16) / 8 + 4;
+            if (exponent >= 62) {
+                return Long.MAX_VALUE;
+            }
+            int sub = (bucket - 16) % 8;
+            long lower = (long) (8 + sub) << (exponent - 3);
+            return lower + (1L << (exponent - 3)) - 1;
+        }
+    }
+}
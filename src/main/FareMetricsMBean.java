@@ -0,0 +1,53 @@
+package main;
+
+// JMX view of FareMetrics, registered as main:type=FareMetrics
+public interface FareMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRowsParsed();
+
+    double getRowsParsedPerSecond();
+
+    long getDeliveriesPriced();
+
+    long getPointsKept();
+
+    long getPointsDropped();
+
+    long getIdleSegments();
+
+    long getDaySegments();
+
+    long getNightSegments();
+
+    long getNightToDaySegments();
+
+    long getDayToNightSegments();
+
+    long getMidnightCrossingSegments();
+
+    double getDistanceCacheHitRatio();
+
+    long getBatches();
+
+    double getBatchLatencyP50Millis();
+
+    double getBatchLatencyP99Millis();
+
+    double getBatchLatencyMaxMillis();
+
+    long getGcCount();
+
+    long getGcTimeMillis();
+
+    long getAllocatedBytes();
+
+    double getAllocationMbPerSecond();
+
+    String toJson();
+
+    void reset();
+}
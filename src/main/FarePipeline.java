@@ -0,0 +1,362 @@
+package main;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs parse -> filter -> price -> write as a pipeline: every stage has its own threads and the stages are
+// connected by bounded queues, so reading, pricing and writing overlap. A full queue blocks the stage before
+// it, so a slow writer slows the parser down instead of letting deliveries pile up in memory.
+// Deliveries travel in chunks that carry a sequence number; the writer restores input order with a reorder
+// buffer. The queues alone do not bound that buffer: while one price worker is stuck on a long delivery the others
+// keep draining the queues into it. So the parser also takes a permit per chunk from a window of
+// (queue capacities + workers + 1) chunks, which the writer returns once the chunk is written; the parser waits
+// for the oldest chunk instead of reading ahead without limit.
+// Like the streaming mode, the rows of a delivery must be contiguous in the input.
+public class FarePipeline {
+
+    private final int filterWorkers;
+    private final int priceWorkers;
+    private final int queueCapacity;
+    private final int chunkSize;
+
+    private final Stage parse = new Stage("parse", 1);
+    private final Stage filter;
+    private final Stage price;
+    private final Stage write = new Stage("write", 1);
+    private Tariff tariff;   // tariff of the current run, read by the filter and price stages
+    private Semaphore window;  // chunks parsed but not written yet
+    private final AtomicInteger maxReorderChunks = new AtomicInteger();
+
+    // Snapshot of one stage
+    public static class StageStats {
+        public final String name;
+        public final int workers;
+        public final long deliveries;
+        public final long busyMillisPerWorker;
+        public final int queueDepth;       // chunks waiting in the input queue of the stage right now
+        public final int maxQueueDepth;    // highest depth seen when a chunk was queued
+        public final int queueCapacity;    // 0 for the parse stage, which has no input queue
+
+        StageStats(String name, int workers, long deliveries, long busyMillisPerWorker,
+                   int queueDepth, int maxQueueDepth, int queueCapacity) {
+            this.name = name;
+            this.workers = workers;
+            this.deliveries = deliveries;
+            this.busyMillisPerWorker = busyMillisPerWorker;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.queueCapacity = queueCapacity;
+        }
+
+        // Deliveries per second the stage sustains while busy, i.e. its throughput if it were the bottleneck
+        public double deliveriesPerSecond() {
+            return busyMillisPerWorker == 0 ? 0 : deliveries * 1000.0 / busyMillisPerWorker;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-6s workers=%d deliveries=%d busy=%d ms/worker (%.0f/s) queue=%d/%d max=%d",
+                    name, workers, deliveries, busyMillisPerWorker, deliveriesPerSecond(),
+                    queueDepth, queueCapacity, maxQueueDepth);
+        }
+    }
+
+    // Creates a pipeline with the given workers per stage, queue capacity (in chunks) and deliveries per chunk
+    public FarePipeline(int filterWorkers, int priceWorkers, int queueCapacity, int chunkSize) {
+        this.filterWorkers = Math.max(1, filterWorkers);
+        this.priceWorkers = Math.max(1, priceWorkers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.filter = new Stage("filter", this.filterWorkers);
+        this.price = new Stage("price", this.priceWorkers);
+    }
+
+    // Creates a pipeline configured with -Dfare.pipeline.filterWorkers, -Dfare.pipeline.priceWorkers,
+    // -Dfare.pipeline.queueCapacity and -Dfare.pipeline.chunkSize
+    public static FarePipeline fromSystemProperties() {
+        return new FarePipeline(
+                Integer.getInteger("fare.pipeline.filterWorkers", 1),
+                Integer.getInteger("fare.pipeline.priceWorkers", ForkJoinPricer.defaultParallelism()),
+                Integer.getInteger("fare.pipeline.queueCapacity", 16),
+                Integer.getInteger("fare.pipeline.chunkSize", 256));
+    }
+
+    // Method to price the input file into the output file; blocks until every stage has finished.
+    // A pipeline runs one file at a time; the stage statistics cover the last run. The whole file is priced with
+    // the tariff that is current when the run starts.
+    public synchronized void run(String filePath, String outputPath) throws IOException {
+        tariff = TariffRegistry.current();
+        window = new Semaphore(maxInFlightChunks());
+        maxReorderChunks.set(0);
+        for (Stage stage : new Stage[]{parse, filter, price, write}) {
+            stage.reset(queueCapacity);
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(start("parse", 0, failure, threads, () -> parse(filePath)));
+        for (int i = 0; i < filterWorkers; i++) {
+            threads.add(start("filter", i, failure, threads, () -> transform(filter, price, this::filterChunk)));
+        }
+        for (int i = 0; i < priceWorkers; i++) {
+            threads.add(start("price", i, failure, threads, () -> transform(price, write, this::priceChunk)));
+        }
+        threads.add(start("write", 0, failure, threads, () -> write(outputPath)));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the pipeline", e);
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause != null) {
+            throw new IOException("Pipeline failed", cause);
+        }
+    }
+
+    // Most chunks that can be between the parser and the written output at any time
+    public int maxInFlightChunks() {
+        return 3 * queueCapacity + filterWorkers + priceWorkers + 1;
+    }
+
+    // Largest number of chunks the writer held back waiting for an earlier one during the last run
+    public int maxReorderChunks() {
+        return maxReorderChunks.get();
+    }
+
+    // Method to get a snapshot of every stage, in pipeline order; can be called while the pipeline runs
+    public List<StageStats> stats() {
+        List<StageStats> stats = new ArrayList<>();
+        for (Stage stage : new Stage[]{parse, filter, price, write}) {
+            stats.add(stage.snapshot());
+        }
+        return stats;
+    }
+
+    // Parse stage: group contiguous rows into deliveries and hand them on in chunks.
+    // Its busy time is the time spent reading, i.e. without the time blocked on a full filter queue.
+    private void parse(String filePath) throws Exception {
+        long[] sequence = {0};
+        long[] blockedNanos = {0};
+        List<List<DeliveryPoint>> chunk = new ArrayList<>(chunkSize);
+        List<DeliveryPoint> delivery = new ArrayList<>();
+        long startTime = System.nanoTime();
+
+        try {
+            MappedCsvReader.forEachRow(filePath, (idDelivery, lat, lng, timestamp) -> {
+                if (!delivery.isEmpty() && delivery.get(0).idDelivery != idDelivery) {
+                    chunk.add(new ArrayList<>(delivery));
+                    delivery.clear();
+                    if (chunk.size() == chunkSize) {
+                        blockedNanos[0] += handOff(new Chunk(sequence[0]++, new ArrayList<>(chunk)));
+                        chunk.clear();
+                    }
+                }
+                delivery.add(new DeliveryPoint(idDelivery, lat, lng, timestamp));
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (!delivery.isEmpty()) {
+            chunk.add(delivery);
+        }
+        if (!chunk.isEmpty()) {
+            blockedNanos[0] += handOff(new Chunk(sequence[0], chunk));
+        }
+        parse.busyNanos.set(System.nanoTime() - startTime - blockedNanos[0]);
+        for (int i = 0; i < filterWorkers; i++) {
+            filter.queue.put(Chunk.END);
+        }
+    }
+
+    // Method to pass a parsed chunk to the filter stage; returns the time spent waiting for a window permit
+    // and for queue space
+    private long handOff(Chunk chunk) {
+        parse.deliveries.addAndGet(chunk.deliveries.size());
+        long startTime = System.nanoTime();
+        try {
+            window.acquire();
+            put(filter, chunk);
+        } catch (InterruptedException e) {
+            // Carried out of the row callback like an I/O error; the thread is stopping anyway
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while handing off chunk " + chunk.sequence);
+            interrupted.initCause(e);
+            throw new UncheckedIOException(interrupted);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    // Filter and price stages: take a chunk, process it, pass it on; the last worker to stop ends the next stage
+    private void transform(Stage stage, Stage next, ChunkFunction function) throws Exception {
+        while (true) {
+            Chunk chunk = stage.queue.take();
+            if (chunk == Chunk.END) {
+                if (stage.activeWorkers.decrementAndGet() == 0) {
+                    for (int i = 0; i < next.workers; i++) {
+                        next.queue.put(Chunk.END);
+                    }
+                }
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            function.apply(chunk);
+            stage.busyNanos.addAndGet(System.nanoTime() - startTime);
+            stage.deliveries.addAndGet(chunk.deliveries.size());
+            put(next, chunk);
+        }
+    }
+
+    private void filterChunk(Chunk chunk) {
+        List<List<DeliveryPoint>> deliveries = chunk.deliveries;
+        for (int i = 0; i < deliveries.size(); i++) {
+            deliveries.set(i, DeliveryFareEstimation.filterInvalidPoints(tariff, deliveries.get(i)));
+        }
+    }
+
+    private void priceChunk(Chunk chunk) {
+        double[] fares = new double[chunk.deliveries.size()];
+        for (int i = 0; i < fares.length; i++) {
+            fares[i] = DeliveryFareEstimation.calculateFare(tariff, chunk.deliveries.get(i));
+        }
+        chunk.fares = fares;
+    }
+
+    // Write stage: write the chunks in sequence order, holding early ones back until their turn
+    private void write(String outputPath) throws Exception {
+        Map<Long, Chunk> pending = new HashMap<>();
+        long nextSequence = 0;
+
+        try (FareCsvWriter writer = new FareCsvWriter(outputPath)) {
+            while (true) {
+                Chunk chunk = write.queue.take();
+                if (chunk == Chunk.END) {
+                    break;
+                }
+                pending.put(chunk.sequence, chunk);
+                maxReorderChunks.accumulateAndGet(pending.size(), Math::max);
+
+                long startTime = System.nanoTime();
+                while ((chunk = pending.remove(nextSequence)) != null) {
+                    for (int i = 0; i < chunk.fares.length; i++) {
+                        writer.write(chunk.deliveries.get(i).get(0).idDelivery, chunk.fares[i]);
+                    }
+                    write.deliveries.addAndGet(chunk.fares.length);
+                    nextSequence++;
+                    window.release();
+                }
+                write.busyNanos.addAndGet(System.nanoTime() - startTime);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Pipeline ended with " + pending.size() + " chunks missing before chunk " + nextSequence);
+        }
+    }
+
+    private static void put(Stage stage, Chunk chunk) throws InterruptedException {
+        stage.queue.put(chunk);
+        int depth = stage.queue.size();
+        stage.maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    // Method to create a stage thread; a failing thread records the first failure and stops all the others
+    private static Thread start(String name, int index, AtomicReference<Throwable> failure, List<Thread> threads, StageBody body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                if (failure.compareAndSet(null, e)) {
+                    for (Thread thread : threads) {
+                        if (thread != Thread.currentThread()) {
+                            thread.interrupt();
+                        }
+                    }
+                }
+            }
+        }, "fare-pipeline-" + name + "-" + index);
+    }
+
+    private interface StageBody {
+        void run() throws Exception;
+    }
+
+    private interface ChunkFunction {
+        void apply(Chunk chunk);
+    }
+
+    // Deliveries moving through the pipeline together
+    private static final class Chunk {
+        static final Chunk END = new Chunk(-1, null);
+
+        final long sequence;
+        final List<List<DeliveryPoint>> deliveries;
+        double[] fares;
+
+        Chunk(long sequence, List<List<DeliveryPoint>> deliveries) {
+            this.sequence = sequence;
+            this.deliveries = deliveries;
+        }
+    }
+
+    // A stage, its input queue (unused for parse) and its counters
+    private static final class Stage {
+        final String name;
+        final int workers;
+        final AtomicLong deliveries = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+        final AtomicInteger maxQueueDepth = new AtomicInteger();
+        final AtomicInteger activeWorkers = new AtomicInteger();
+        volatile BlockingQueue<Chunk> queue;
+        volatile int queueCapacity;
+
+        Stage(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+        }
+
+        void reset(int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            queueCapacity = name.equals("parse") ? 0 : capacity;
+            deliveries.set(0);
+            busyNanos.set(0);
+            maxQueueDepth.set(0);
+            activeWorkers.set(workers);
+        }
+
+        StageStats snapshot() {
+            BlockingQueue<Chunk> current = queue;
+            int depth = current == null || queueCapacity == 0 ? 0 : current.size();
+            return new StageStats(name, workers, deliveries.get(), busyNanos.get() / 1_000_000 / workers,
+                    depth, maxQueueDepth.get(), queueCapacity);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Local HTTP service pricing deliveries in a long-running JVM, so callers skip the JVM start and the file round trip
+// and get warm JIT-compiled code and caches. Built on the JDK HttpServer, one virtual thread per request.
+//
+//   POST /fares    body: "id_delivery,lat,lng,timestamp" rows (header optional), one or many deliveries;
+//                  response: "id_delivery,fare_estimate" rows in order of first appearance in the body,
+//                  or 413 for a body over maxBodyBytes
+//   GET  /health   "ok"
+//   GET  /metrics  FareMetrics snapshot as JSON
+//
+// Requests are micro-batched: handlers queue their deliveries and a single dispatcher prices everything queued
+// (up to maxBatchDeliveries) in one ForkJoinPricer pass. Under load, requests arriving while a batch is priced
+// form the next batch; maxBatchDelayMicros can additionally hold a batch open to collect more (0 by default).
+public class FareService implements AutoCloseable {
+
+    // Deliveries of one request and the fares the dispatcher fills in
+    private static final class PendingRequest {
+        final List<List<DeliveryPoint>> deliveries;
+        final CompletableFuture<double[]> fares = new CompletableFuture<>();
+
+        PendingRequest(List<List<DeliveryPoint>> deliveries) {
+            this.deliveries = deliveries;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ForkJoinPool pricingPool;
+    private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    private Thread dispatcher;
+    private final int maxBatchDeliveries;
+    private final long maxBatchDelayNanos;
+    private final int maxBodyBytes;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private volatile boolean running = true;
+
+    // Largest request body accepted when none is given (64 MB)
+    public static final int DEFAULT_MAX_BODY_BYTES = 64 << 20;
+
+    // Binds to localhost:port (0 picks a free port) with the default body limit; call start() to accept requests
+    public FareService(int port, int pricingThreads, int maxBatchDeliveries, long maxBatchDelayMicros) throws IOException {
+        this(port, pricingThreads, maxBatchDeliveries, maxBatchDelayMicros, DEFAULT_MAX_BODY_BYTES);
+    }
+
+    // Binds to localhost:port; request bodies over maxBodyBytes are refused without being read into memory
+    public FareService(int port, int pricingThreads, int maxBatchDeliveries, long maxBatchDelayMicros,
+                       int maxBodyBytes) throws IOException {
+        this.maxBodyBytes = Math.max(1, maxBodyBytes);
+        this.pricingPool = new ForkJoinPool(Math.max(1, pricingThreads));
+        this.maxBatchDeliveries = Math.max(1, maxBatchDeliveries);
+        this.maxBatchDelayNanos = Math.max(0, maxBatchDelayMicros) * 1000;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    }
+
+    // Service configured with -Dfare.service.port (8080), -Dfare.service.batchDeliveries (256),
+    // -Dfare.service.batchDelayMicros (0) and -Dfare.service.maxBodyMb (64); pricing uses -Dfare.parallelism
+    // workers like the batch mode
+    public static FareService fromSystemProperties() throws IOException {
+        long maxBodyBytes = Long.getLong("fare.service.maxBodyMb", DEFAULT_MAX_BODY_BYTES >> 20) << 20;
+        return new FareService(Integer.getInteger("fare.service.port", 8080), ForkJoinPricer.defaultParallelism(),
+                Integer.getInteger("fare.service.batchDeliveries", 256), Long.getLong("fare.service.batchDelayMicros", 0),
+                (int) Math.min(Integer.MAX_VALUE - 8, maxBodyBytes));
+    }
+
+    // Method to start the dispatcher and accept requests. The handlers and the dispatcher thread are set up here
+    // rather than in the constructor, so nothing sees the service before it is fully constructed.
+    public synchronized void start() {
+        if (dispatcher != null) {
+            throw new IllegalStateException("Service already started");
+        }
+        server.setExecutor(handlers);
+        server.createContext("/fares", this::handleFares);
+        server.createContext("/health", exchange -> respond(exchange, 200, "ok\n"));
+        server.createContext("/metrics", exchange -> respond(exchange, 200, FareMetrics.snapshot().toJson() + "\n"));
+        dispatcher = new Thread(this::dispatch, "fare-service-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        server.start();
+    }
+
+    // Method to turn Nagle's algorithm off for the JDK HttpServer: with it on, delayed ACKs hold back the end of
+    // small responses for ~40 ms. The property applies to every HttpServer of the JVM and is read once, when the
+    // first one is created, so only entry points that own the JVM call this (the same as
+    // -Dsun.net.httpserver.nodelay=true on the command line, which it leaves alone).
+    public static void enableNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    // Port the service listens on
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Method to price deliveries through the batching dispatcher, as a request does; fares[i] is for deliveries.get(i)
+    public double[] price(List<List<DeliveryPoint>> deliveries) throws InterruptedException, ExecutionException {
+        if (deliveries.isEmpty()) {
+            return new double[0];
+        }
+        if (!running) {
+            throw new ExecutionException(new IllegalStateException("Service closed"));
+        }
+        PendingRequest request = new PendingRequest(deliveries);
+        queue.add(request);
+        if (!running && queue.remove(request)) {
+            // close() ran between the check above and add(), after it failed the queued requests
+            request.fares.completeExceptionally(new IllegalStateException("Service closed"));
+        }
+        return request.fares.get();
+    }
+
+    public long batches() {
+        return batches.sum();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long deliveries() {
+        return deliveries.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        server.stop(0);
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        handlers.shutdownNow();
+        pricingPool.shutdownNow();
+        PendingRequest request;
+        while ((request = queue.poll()) != null) {
+            request.fares.completeExceptionally(new IllegalStateException("Service closed"));
+        }
+    }
+
+    // Dispatcher loop: take the first waiting request, add whatever else is queued, price them together. If the
+    // loop ends for any reason, the service stops taking requests and the queued ones fail, so no caller waits for a
+    // dispatcher that is gone.
+    private void dispatch() {
+        List<PendingRequest> batch = new ArrayList<>();
+        try {
+            while (running) {
+                try {
+                    PendingRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    int batchDeliveries = first.deliveries.size();
+                    long deadline = System.nanoTime() + maxBatchDelayNanos;
+                    while (batchDeliveries < maxBatchDeliveries) {
+                        long wait = deadline - System.nanoTime();
+                        PendingRequest next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        batchDeliveries += next.deliveries.size();
+                    }
+                    priceBatch(batch, batchDeliveries);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                } finally {
+                    // Only requests left unpriced by an interrupt are still open; completed ones ignore this
+                    for (PendingRequest request : batch) {
+                        request.fares.completeExceptionally(new IllegalStateException("Service closed"));
+                    }
+                    batch.clear();
+                }
+            }
+        } finally {
+            running = false;
+            PendingRequest request;
+            while ((request = queue.poll()) != null) {
+                request.fares.completeExceptionally(new IllegalStateException("Service closed"));
+            }
+        }
+    }
+
+    // Method to price the deliveries of every request of the batch in one fork/join pass and hand out the fares.
+    // Anything thrown, errors such as StackOverflowError included, fails this batch only and the dispatcher goes on.
+    private void priceBatch(List<PendingRequest> batch, int batchDeliveries) {
+        try {
+            List<List<DeliveryPoint>> all = new ArrayList<>(batchDeliveries);
+            for (PendingRequest request : batch) {
+                all.addAll(request.deliveries);
+            }
+            double[] fares = ForkJoinPricer.priceAll(all, pricingPool);
+            int position = 0;
+            for (PendingRequest request : batch) {
+                double[] requestFares = new double[request.deliveries.size()];
+                System.arraycopy(fares, position, requestFares, 0, requestFares.length);
+                position += requestFares.length;
+                request.fares.complete(requestFares);
+            }
+        } catch (Throwable e) {
+            // A batch cut short by close() fails like the queued requests; a CancellationException from the pool
+            // would be thrown by get() as it is rather than as an ExecutionException
+            Throwable failure = running ? e : new IllegalStateException("Service closed", e);
+            for (PendingRequest request : batch) {
+                request.fares.completeExceptionally(failure);
+            }
+        }
+        batches.increment();
+        deliveries.add(batchDeliveries);
+    }
+
+    private void handleFares(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Use POST with id_delivery,lat,lng,timestamp rows\n");
+                return;
+            }
+            requests.increment();
+
+            byte[] body = readBody(exchange);
+            if (body == null) {
+                respond(exchange, 413, "Request body larger than " + maxBodyBytes + " bytes\n");
+                return;
+            }
+
+            // Group the rows by id_delivery, keeping the order in which the ids first appear
+            Map<Integer, List<DeliveryPoint>> grouped = new LinkedHashMap<>();
+            try {
+                MappedCsvReader.parseRows(body, (idDelivery, lat, lng, timestamp) ->
+                        grouped.computeIfAbsent(idDelivery, k -> new ArrayList<>()).add(new DeliveryPoint(idDelivery, lat, lng, timestamp)));
+            } catch (RuntimeException e) {
+                respond(exchange, 400, "Malformed row: " + e.getMessage() + "\n");
+                return;
+            }
+
+            double[] fares;
+            try {
+                fares = price(new ArrayList<>(grouped.values()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "Service is shutting down\n");
+                return;
+            } catch (ExecutionException e) {
+                respond(exchange, 500, "Pricing failed: " + e.getCause() + "\n");
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/csv");
+            exchange.sendResponseHeaders(200, 0);
+            try (FareCsvWriter writer = new FareCsvWriter(Channels.newChannel(exchange.getResponseBody()))) {
+                int position = 0;
+                for (Integer idDelivery : grouped.keySet()) {
+                    writer.write(idDelivery, fares[position++]);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Method to read the request body, or null when it is larger than maxBodyBytes: a declared Content-Length is
+    // refused up front, a chunked body as soon as it passes the limit
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxBodyBytes) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                // Let the server's own handling of the body decide
+            }
+        }
+        byte[] body = exchange.getRequestBody().readNBytes(maxBodyBytes + 1);
+        return body.length > maxBodyBytes ? null : body;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
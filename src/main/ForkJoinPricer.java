@@ -0,0 +1,169 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Prices deliveries on a work-stealing ForkJoinPool. Work is split by number of points rather than
+// number of deliveries, so a few very long trips do not leave the other workers idle.
+public class ForkJoinPricer {
+
+    // Parallelism used when none is given: -Dfare.parallelism=N, otherwise one worker per core
+    public static int defaultParallelism() {
+        return Integer.getInteger("fare.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    // Method to price every delivery of the map with the default parallelism
+    public static Map<Integer, Double> priceDeliveries(Map<Integer, List<DeliveryPoint>> deliveries) {
+        return priceDeliveries(deliveries, defaultParallelism());
+    }
+
+    // Method to price every delivery of the map on a pool with the given parallelism
+    public static Map<Integer, Double> priceDeliveries(Map<Integer, List<DeliveryPoint>> deliveries, int parallelism) {
+        List<Integer> ids = new ArrayList<>(deliveries.keySet());
+        List<List<DeliveryPoint>> pointLists = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            pointLists.add(deliveries.get(id));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            double[] fares = priceAll(pointLists, pool);
+
+            Map<Integer, Double> fareEstimates = new HashMap<>();
+            for (int i = 0; i < ids.size(); i++) {
+                fareEstimates.put(ids.get(i), fares[i]);
+            }
+            return fareEstimates;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Method to price every delivery of the map into sorted runs: each leaf task hands its own results to runs,
+    // so no shared map is filled and runs.mergeTo writes them ordered by id_delivery. The whole map is priced
+    // with the tariff that is current when the call starts.
+    public static void priceToRuns(Map<Integer, List<DeliveryPoint>> deliveries, int parallelism, SortedFareRuns runs)
+            throws IOException {
+        int[] ids = new int[deliveries.size()];
+        List<List<DeliveryPoint>> pointLists = new ArrayList<>(ids.length);
+        for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
+            ids[pointLists.size()] = entry.getKey();
+            pointLists.add(entry.getValue());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            price(TariffRegistry.current(), pointLists, pool, ids, runs);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Method to price a list of deliveries on the given pool with the current tariff; fares[i] belongs to deliveries.get(i)
+    public static double[] priceAll(List<List<DeliveryPoint>> deliveries, ForkJoinPool pool) {
+        return priceAll(deliveries, pool, TariffRegistry.current());
+    }
+
+    // Method to price a list of deliveries on the given pool with the given tariff
+    public static double[] priceAll(List<List<DeliveryPoint>> deliveries, ForkJoinPool pool, Tariff tariff) {
+        return price(tariff, deliveries, pool, null, null);
+    }
+
+    // Method to price the deliveries; with runs, every leaf also adds its ids and fares to runs as one run
+    private static double[] price(Tariff tariff, List<List<DeliveryPoint>> deliveries, ForkJoinPool pool, int[] ids,
+                                  SortedFareRuns runs) {
+        int count = deliveries.size();
+        double[] fares = new double[count];
+        if (count == 0) {
+            return fares;
+        }
+
+        // Prefix sums of the point counts, so a range can be cut in two halves of equal work
+        long[] cumulativePoints = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            cumulativePoints[i + 1] = cumulativePoints[i] + deliveries.get(i).size();
+        }
+
+        // Aim for several leaf tasks per worker so idle workers always find something to steal
+        long leafPoints = Math.max(1024, cumulativePoints[count] / (pool.getParallelism() * 8L));
+        pool.invoke(new PricingTask(tariff, deliveries, cumulativePoints, fares, ids, runs, 0, count, leafPoints));
+        return fares;
+    }
+
+    // Task pricing the deliveries in [from, to); splits itself while it holds more than leafPoints points.
+    // RecursiveAction is Serializable only through ForkJoinTask; these tasks never leave the pool, so they have no
+    // serialVersionUID and their fields need not be serializable.
+    @SuppressWarnings("serial")
+    private static class PricingTask extends RecursiveAction {
+        private final Tariff tariff;
+        private final List<List<DeliveryPoint>> deliveries;
+        private final long[] cumulativePoints;
+        private final double[] fares;
+        private final int[] ids;
+        private final SortedFareRuns runs;
+        private final int from;
+        private final int to;
+        private final long leafPoints;
+
+        PricingTask(Tariff tariff, List<List<DeliveryPoint>> deliveries, long[] cumulativePoints, double[] fares,
+                    int[] ids, SortedFareRuns runs, int from, int to, long leafPoints) {
+            this.tariff = tariff;
+            this.deliveries = deliveries;
+            this.cumulativePoints = cumulativePoints;
+            this.fares = fares;
+            this.ids = ids;
+            this.runs = runs;
+            this.from = from;
+            this.to = to;
+            this.leafPoints = leafPoints;
+        }
+
+        @Override
+        protected void compute() {
+            long points = cumulativePoints[to] - cumulativePoints[from];
+            if (to - from == 1 || points <= leafPoints) {
+                long startTime = System.nanoTime();
+                for (int i = from; i < to; i++) {
+                    fares[i] = DeliveryFareEstimation.priceDelivery(tariff, deliveries.get(i));
+                }
+                FareMetrics.batchCompleted(System.nanoTime() - startTime);
+                if (runs != null) {
+                    try {
+                        runs.addRun(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(fares, from, to), to - from);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return;
+            }
+
+            int middle = splitByPoints(cumulativePoints[from] + points / 2);
+            invokeAll(new PricingTask(tariff, deliveries, cumulativePoints, fares, ids, runs, from, middle, leafPoints),
+                    new PricingTask(tariff, deliveries, cumulativePoints, fares, ids, runs, middle, to, leafPoints));
+        }
+
+        // Method to find the delivery index where the cumulative point count reaches target, kept inside (from, to)
+        private int splitByPoints(long target) {
+            int low = from + 1;
+            int high = to - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulativePoints[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Batch run that only prices new or changed deliveries. Every delivery is fingerprinted; when the
+// FareFingerprintIndex of the previous run holds the same fingerprint for its id, the stored fare is reused,
+// otherwise the delivery goes through priceDelivery on a fork/join pool. The input is still read and hashed in
+// full, but filtering and pricing scale with the changed deliveries. The output is the batch output (sorted by
+// id_delivery) and the index is rewritten for the next run. The index is tied to the tariff, so a run after a
+// tariff change prices every delivery again.
+public class IncrementalPricer {
+
+    // Outcome of a run
+    public static class Result {
+        public final int deliveries;
+        public final int reused;
+        public final int repriced;
+
+        public Result(int deliveries, int reused, int repriced) {
+            this.deliveries = deliveries;
+            this.reused = reused;
+            this.repriced = repriced;
+        }
+    }
+
+    // Index used when none is given: -Dfare.index=path, otherwise <output>.index
+    public static String defaultIndexPath(String outputPath) {
+        return System.getProperty("fare.index", outputPath + ".index");
+    }
+
+    // Method to price the input into the output, reusing the fares of the index at indexPath and updating it.
+    // An unreadable index is reported and ignored, i.e. every delivery is priced.
+    public static Result run(String inputPath, String outputPath, String indexPath, int parallelism) throws IOException {
+        Path index = Paths.get(indexPath);
+        Tariff tariff = TariffRegistry.current();
+        FareFingerprintIndex previous;
+        try {
+            previous = FareFingerprintIndex.load(index, tariff);
+        } catch (IOException e) {
+            System.err.println("Ignoring fingerprint index: " + e.getMessage());
+            previous = FareFingerprintIndex.empty();
+        }
+
+        // Group the points by id_delivery, like the batch mode
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (List<DeliveryPoint> run : ParallelCsvReader.readDeliveries(inputPath)) {
+            deliveries.computeIfAbsent(run.get(0).idDelivery, k -> new ArrayList<>()).addAll(run);
+        }
+
+        // Reuse every fare whose fingerprint is unchanged and collect the rest
+        int count = deliveries.size();
+        int[] ids = new int[count];
+        long[] fingerprints = new long[count];
+        double[] fares = new double[count];
+        List<List<DeliveryPoint>> changed = new ArrayList<>();
+        int[] changedIndexes = new int[count];
+        int position = 0;
+        for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
+            ids[position] = entry.getKey();
+            fingerprints[position] = FareFingerprintIndex.fingerprint(entry.getValue());
+            fares[position] = previous.lookup(ids[position], fingerprints[position]);
+            if (Double.isNaN(fares[position])) {
+                changedIndexes[changed.size()] = position;
+                changed.add(entry.getValue());
+            }
+            position++;
+        }
+
+        if (!changed.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+            try {
+                double[] changedFares = ForkJoinPricer.priceAll(changed, pool, tariff);
+                for (int i = 0; i < changedFares.length; i++) {
+                    fares[changedIndexes[i]] = changedFares[i];
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        try (SortedFareRuns runs = new SortedFareRuns(Long.MAX_VALUE)) {
+            runs.addRun(ids, fares, count);
+            runs.mergeTo(outputPath);
+        }
+        FareFingerprintIndex.write(index, tariff, ids, fingerprints, fares, count);
+
+        return new Result(count, count - changed.size(), changed.size());
+    }
+}
@@ -0,0 +1,315 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads "id_delivery,lat,lng,timestamp" CSV files through a memory-mapped FileChannel.
+// The columns are parsed straight from the mapped bytes into primitives, so no String,
+// String[] or regex is created per row. Values are identical to Integer/Double/Long.parseX.
+public class MappedCsvReader {
+
+    // Largest region mapped at once; bigger files are mapped in consecutive windows cut at line ends
+    static final long MAX_WINDOW = 1L << 30;
+
+    // Powers of ten that are exactly representable as doubles (fast, exact decimal conversion)
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Largest integer mantissa that a double holds exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Callback receiving each parsed row as primitives
+    public interface RowHandler {
+        void onRow(int idDelivery, double lat, double lng, long timestamp);
+    }
+
+    // Callback receiving each parsed row with the byte offset where the row starts
+    public interface OffsetRowHandler {
+        void onRow(long rowOffset, int idDelivery, double lat, double lng, long timestamp);
+    }
+
+    // Method to read the CSV into a list of DeliveryPoint, same result as DeliveryFareEstimation.readDataBuffered
+    public static List<DeliveryPoint> readData(String filePath) throws IOException {
+        List<DeliveryPoint> data = new ArrayList<>();
+        forEachRow(filePath, (idDelivery, lat, lng, timestamp) ->
+                data.add(new DeliveryPoint(idDelivery, lat, lng, timestamp)));
+        return data;
+    }
+
+    // Method to parse every data row of the file (the header line is skipped) in file order.
+    // A TripFile gives the same rows, decoded instead of parsed.
+    public static void forEachRow(String filePath, RowHandler handler) throws IOException {
+        if (TripFile.isTripFile(filePath)) {
+            try (TripFile file = TripFile.open(filePath)) {
+                file.forEachRow(handler);
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = dataStart(channel);
+
+            // Map the file window by window so files larger than 2 GB can be read as well
+            while (position < size) {
+                long end = position + MAX_WINDOW < size ? nextLineStart(channel, position + MAX_WINDOW) : size;
+                parseRange(channel, position, end, handler);
+                position = end;
+            }
+        }
+    }
+
+    // Method to parse the data rows from byte offset startOffset on, in file order. startOffset must be the start
+    // of a line, e.g. a rowOffset reported earlier; 0 starts at the first data row (the header is skipped).
+    public static void forEachRow(String filePath, long startOffset, OffsetRowHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = startOffset == 0 ? dataStart(channel) : startOffset;
+
+            while (position < size) {
+                long end = position + MAX_WINDOW < size ? nextLineStart(channel, position + MAX_WINDOW) : size;
+                if (end > position) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+                    new RowParser(buffer, position).parseAll(handler);
+                }
+                position = end;
+            }
+        }
+    }
+
+    // Method to parse rows held in memory (e.g. a request body); a first line that does not start with a digit or
+    // '-' is taken as the header and skipped. Malformed rows throw NumberFormatException.
+    public static void parseRows(byte[] bytes, RowHandler handler) {
+        int start = 0;
+        if (bytes.length > 0 && bytes[0] != '-' && (bytes[0] < '0' || bytes[0] > '9')) {
+            while (start < bytes.length && bytes[start] != '\n') {
+                start++;
+            }
+            start++;
+        }
+        if (start < bytes.length) {
+            new RowParser(ByteBuffer.wrap(bytes, start, bytes.length - start).slice(), start).parseAll(handler);
+        }
+    }
+
+    // Method to find the offset of the first data row, i.e. the byte after the header line
+    static long dataStart(FileChannel channel) throws IOException {
+        return nextLineStart(channel, 1);
+    }
+
+    // Method to find the first line start at or after the given offset
+    static long nextLineStart(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position <= 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return size;
+        }
+
+        // A line starts at position if the byte before it is a newline; otherwise scan forward for one
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    // Method to parse the rows in [start, end); both offsets must be line starts (or end of file)
+    static void parseRange(FileChannel channel, long start, long end, RowHandler handler) throws IOException {
+        if (end <= start) {
+            return;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        new RowParser(buffer, start).parseAll(handler);
+    }
+
+    // Cursor over one mapped region; keeps the parse position so fields can be read one after another
+    static final class RowParser {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private final long baseOffset;
+        private int pos;
+
+        RowParser(ByteBuffer buffer, long baseOffset) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+            this.baseOffset = baseOffset;
+        }
+
+        // Method to parse every row of the region
+        void parseAll(RowHandler handler) {
+            parseAll((rowOffset, idDelivery, lat, lng, timestamp) -> handler.onRow(idDelivery, lat, lng, timestamp));
+        }
+
+        // Method to parse every row of the region, passing the file offset of each row
+        void parseAll(OffsetRowHandler handler) {
+            long rows = 0;
+            while (pos < limit) {
+                // Tolerate blank lines and CRLF line endings
+                byte b = buffer.get(pos);
+                if (b == '\n' || b == '\r') {
+                    pos++;
+                    continue;
+                }
+
+                int rowStart = pos;
+                int idDelivery = parseIntField();
+                double lat = parseDoubleField();
+                double lng = parseDoubleField();
+                long timestamp = parseLongField();
+                skipToNextLine();
+
+                handler.onRow(baseOffset + rowStart, idDelivery, lat, lng, timestamp);
+                rows++;
+            }
+            FareMetrics.rowsParsed(rows);
+        }
+
+        // Method to parse an int column terminated by ','
+        private int parseIntField() {
+            int start = pos;
+            int end = fieldEnd(false);
+            pos = end + 1;
+
+            // Up to 9 digits can never overflow an int; longer or unusual input goes to Integer.parseInt
+            boolean negative = end > start && buffer.get(start) == '-';
+            int first = negative ? start + 1 : start;
+            if (end - first < 1 || end - first > 9) {
+                return Integer.parseInt(fieldString(start, end));
+            }
+            int value = 0;
+            for (int i = first; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return Integer.parseInt(fieldString(start, end));
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        // Method to parse a long column terminated by ',', a line break or the end of the region
+        private long parseLongField() {
+            int start = pos;
+            int end = fieldEnd(true);
+            pos = end;
+
+            // Up to 18 digits can never overflow a long; longer or unusual input goes to Long.parseLong
+            boolean negative = end > start && buffer.get(start) == '-';
+            int first = negative ? start + 1 : start;
+            if (end - first < 1 || end - first > 18) {
+                return Long.parseLong(fieldString(start, end));
+            }
+            long value = 0;
+            for (int i = first; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return Long.parseLong(fieldString(start, end));
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        // Method to parse a double column terminated by ','.
+        // Plain decimals with a mantissa up to 2^53 and at most 22 fraction digits are converted with a
+        // single division of two exact doubles, which is correctly rounded and therefore bit-identical
+        // to Double.parseDouble. Anything else falls back to Double.parseDouble.
+        private double parseDoubleField() {
+            int start = pos;
+            int end = fieldEnd(false);
+            pos = end + 1;
+
+            int i = start;
+            boolean negative = false;
+            if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int fractionDigits = 0;
+            int digits = 0;
+            boolean inFraction = false;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b >= '0' && b <= '9') {
+                    digits++;
+                    if (mantissa != 0 || b != '0') {
+                        significantDigits++;
+                    }
+                    if (significantDigits > 18) {
+                        return Double.parseDouble(fieldString(start, end));
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (inFraction) {
+                        fractionDigits++;
+                    }
+                } else if (b == '.' && !inFraction) {
+                    inFraction = true;
+                } else {
+                    // Exponents, NaN, hex and other rare forms
+                    return Double.parseDouble(fieldString(start, end));
+                }
+            }
+            if (digits == 0 || mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+                return Double.parseDouble(fieldString(start, end));
+            }
+
+            double value = (double) mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        // Method to find the end of the current field; every column but the last must end with ','
+        private int fieldEnd(boolean lastColumn) {
+            int i = pos;
+            while (i < limit) {
+                byte b = buffer.get(i);
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            if (!lastColumn && (i >= limit || buffer.get(i) != ',')) {
+                throw new NumberFormatException("Missing column in row at byte offset " + (baseOffset + pos));
+            }
+            return i;
+        }
+
+        // Method to move past the end of the current line (extra columns are ignored like in readData)
+        private void skipToNextLine() {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        // Method to copy a field into a String for the slow fallback paths
+        private String fieldString(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+// Prices many input files (e.g. one per city or per hour) concurrently: every file is read, filtered, priced
+// and written by its own task. The executor is chosen per run, so nothing outlives the call.
+// In-flight memory is bounded by a budget of input bytes: a task only loads its file once the budget has room
+// for it (a file larger than the whole budget runs alone). Tasks are awaited in completion order, so the first
+// failure cancels the others at once; a cancelled task stops before writing its output.
+public class MultiFileProcessor {
+
+    // How the file tasks are run
+    public enum ExecutionMode {
+        FIXED,      // fixed pool of platform threads
+        FORK_JOIN,  // work-stealing ForkJoinPool
+        VIRTUAL     // one virtual thread per file; blocking on I/O or on the budget does not hold a carrier thread
+    }
+
+    // Outcome of one input file
+    public static class FileResult {
+        public final String inputPath;
+        public final String outputPath;
+        public final int deliveries;
+        public final long millis;
+
+        public FileResult(String inputPath, String outputPath, int deliveries, long millis) {
+            this.inputPath = inputPath;
+            this.outputPath = outputPath;
+            this.deliveries = deliveries;
+            this.millis = millis;
+        }
+    }
+
+    // Mode used when none is given: -Dfare.executor=virtual|fixed|fork_join, virtual threads by default
+    public static ExecutionMode defaultMode() {
+        return ExecutionMode.valueOf(System.getProperty("fare.executor", "virtual").toUpperCase().replace('-', '_'));
+    }
+
+    // Budget used when none is given: -Dfare.inFlightMb=N, 256 MB of input by default
+    public static long defaultInFlightBytes() {
+        return Long.getLong("fare.inFlightMb", 256) * 1024 * 1024;
+    }
+
+    // Method to create the executor of a mode; the caller closes it
+    public static ExecutorService newExecutor(ExecutionMode mode, int parallelism) {
+        switch (mode) {
+            case FIXED:
+                return Executors.newFixedThreadPool(Math.max(1, parallelism));
+            case FORK_JOIN:
+                return new ForkJoinPool(Math.max(1, parallelism));
+            default:
+                return Executors.newVirtualThreadPerTaskExecutor();
+        }
+    }
+
+    // Method to price every input file into outputDir/<name>_fares.csv (see outputPathsFor for inputs sharing a
+    // name); results are in input order. If one file fails, the others are cancelled and the failure is rethrown.
+    public static List<FileResult> process(List<String> inputPaths, String outputDir, ExecutionMode mode,
+                                           int parallelism, long maxInFlightBytes) throws IOException {
+        // Permits are kilobytes of input, so budgets up to 2 TB fit in an int
+        int budgetKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxInFlightBytes / 1024));
+        Semaphore budget = new Semaphore(budgetKb);
+
+        // Closing the executor waits for every task, so no task outlives this call
+        try (ExecutorService executor = newExecutor(mode, parallelism)) {
+            CompletionService<FileResult> completion = new ExecutorCompletionService<>(executor);
+            List<Future<FileResult>> futures = new ArrayList<>();
+            List<String> outputPaths = outputPathsFor(inputPaths, outputDir);
+            for (int i = 0; i < inputPaths.size(); i++) {
+                String inputPath = inputPaths.get(i);
+                String outputPath = outputPaths.get(i);
+                int permits = (int) Math.min(budgetKb, Math.max(1, (new File(inputPath).length() + 1023) / 1024));
+                futures.add(completion.submit(() -> {
+                    budget.acquire(permits);
+                    try {
+                        return processFile(inputPath, outputPath);
+                    } finally {
+                        budget.release(permits);
+                    }
+                }));
+            }
+            return collect(completion, futures);
+        }
+    }
+
+    // Method to wait for the file tasks as they complete and return their results in input order; on the first
+    // failure the remaining tasks are cancelled
+    private static List<FileResult> collect(CompletionService<FileResult> completion, List<Future<FileResult>> futures)
+            throws IOException {
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                completion.take().get();
+            }
+            List<FileResult> results = new ArrayList<>();
+            for (Future<FileResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing input files", e);
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to process input files", cause);
+        }
+    }
+
+    // Method to read, filter, price and write one file on the calling thread, sorted by id_delivery like the batch mode
+    public static FileResult processFile(String inputPath, String outputPath) throws IOException {
+        long startTime = System.nanoTime();
+
+        // Group the points by id_delivery
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (DeliveryPoint point : MappedCsvReader.readData(inputPath)) {
+            deliveries.computeIfAbsent(point.idDelivery, k -> new ArrayList<>()).add(point);
+        }
+        checkNotCancelled(inputPath);
+
+        Tariff tariff = TariffRegistry.current();
+        Map<Integer, Double> fareEstimates = new HashMap<>();
+        for (Map.Entry<Integer, List<DeliveryPoint>> entry : deliveries.entrySet()) {
+            fareEstimates.put(entry.getKey(), DeliveryFareEstimation.priceDelivery(tariff, entry.getValue()));
+        }
+        checkNotCancelled(inputPath);
+        DeliveryFareEstimation.writeOutputToCSV(fareEstimates, outputPath, true);
+
+        return new FileResult(inputPath, outputPath, fareEstimates.size(), (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    // Method to name the output of an input file: outputDir/<input name without .csv>_fares.csv
+    public static String outputPathFor(String inputPath, String outputDir) {
+        String name = new File(inputPath).getName();
+        if (name.endsWith(".csv")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return new File(outputDir, name + "_fares.csv").getPath();
+    }
+
+    // Method to name the outputs of all input files so that no two tasks write the same file: an input whose name
+    // is already taken (e.g. a/tehran.csv and b/tehran.csv, or one file given twice) gets <name>_2_fares.csv, then
+    // _3 and so on. Names are compared ignoring case, for case-insensitive file systems.
+    public static List<String> outputPathsFor(List<String> inputPaths, String outputDir) {
+        List<String> outputPaths = new ArrayList<>(inputPaths.size());
+        Set<String> taken = new HashSet<>();
+        for (String inputPath : inputPaths) {
+            String outputPath = outputPathFor(inputPath, outputDir);
+            String base = outputPath.substring(0, outputPath.length() - "_fares.csv".length());
+            for (int suffix = 2; !taken.add(outputPath.toLowerCase(Locale.ROOT)); suffix++) {
+                outputPath = base + "_" + suffix + "_fares.csv";
+            }
+            outputPaths.add(outputPath);
+        }
+        return outputPaths;
+    }
+
+    // Method to stop a task cancelled by process() between its steps
+    private static void checkNotCancelled(String inputPath) throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Cancelled while processing " + inputPath);
+        }
+    }
+
+    private static void cancelAll(List<Future<FileResult>> futures) {
+        for (Future<FileResult> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package main;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Parses the input CSV in parallel: the data rows are split into byte ranges aligned to line starts,
+// every range is parsed by MappedCsvReader on its own thread, and the results are joined in file order.
+public class ParallelCsvReader {
+
+    // Method to read the CSV on the common pool with one chunk per core
+    public static List<DeliveryPoint> readData(String filePath) throws IOException {
+        return readData(filePath, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    // Method to read the CSV in parallel; the result is identical to the single-threaded readData
+    public static List<DeliveryPoint> readData(String filePath, ExecutorService executor, int chunkCount) throws IOException {
+        List<DeliveryPoint> data = new ArrayList<>();
+        for (List<DeliveryPoint> chunk : parseChunks(filePath, executor, chunkCount)) {
+            data.addAll(chunk);
+        }
+        return data;
+    }
+
+    // Method to read the CSV on the common pool and group consecutive rows into deliveries
+    public static List<List<DeliveryPoint>> readDeliveries(String filePath) throws IOException {
+        return readDeliveries(filePath, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    // Method to read the CSV in parallel and group consecutive rows with the same id_delivery.
+    // A delivery whose rows are split over two chunks is stitched back into one list. A TripFile is decoded instead.
+    public static List<List<DeliveryPoint>> readDeliveries(String filePath, ExecutorService executor, int chunkCount) throws IOException {
+        List<List<DeliveryPoint>> chunks = TripFile.isTripFile(filePath)
+                ? List.of(TripFile.readData(filePath)) : parseChunks(filePath, executor, chunkCount);
+        List<List<DeliveryPoint>> deliveries = new ArrayList<>();
+        for (List<DeliveryPoint> chunk : chunks) {
+            for (DeliveryPoint point : chunk) {
+                List<DeliveryPoint> last = deliveries.isEmpty() ? null : deliveries.get(deliveries.size() - 1);
+                if (last == null || last.get(0).idDelivery != point.idDelivery) {
+                    last = new ArrayList<>();
+                    deliveries.add(last);
+                }
+                last.add(point);
+            }
+        }
+        return deliveries;
+    }
+
+    // Method to compute chunk boundaries: chunkCount + 1 offsets, each one the start of a line
+    static long[] chunkBoundaries(FileChannel channel, int chunkCount) throws IOException {
+        long size = channel.size();
+        long dataStart = MappedCsvReader.dataStart(channel);
+        long length = size - dataStart;
+
+        // Never map more than one window per chunk
+        int chunks = (int) Math.max(Math.max(1, chunkCount), (length + MappedCsvReader.MAX_WINDOW - 1) / MappedCsvReader.MAX_WINDOW);
+
+        long[] boundaries = new long[chunks + 1];
+        boundaries[0] = dataStart;
+        for (int i = 1; i < chunks; i++) {
+            long target = dataStart + length * i / chunks;
+            boundaries[i] = Math.max(boundaries[i - 1], MappedCsvReader.nextLineStart(channel, target));
+        }
+        boundaries[chunks] = size;
+        return boundaries;
+    }
+
+    // Method to parse every chunk as a separate task and return the chunk results in file order
+    private static List<List<DeliveryPoint>> parseChunks(String filePath, ExecutorService executor, int chunkCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel, chunkCount);
+
+            List<Future<List<DeliveryPoint>>> futures = new ArrayList<>();
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                futures.add(executor.submit(() -> {
+                    List<DeliveryPoint> chunk = new ArrayList<>();
+                    MappedCsvReader.parseRange(channel, start, end, (idDelivery, lat, lng, timestamp) ->
+                            chunk.add(new DeliveryPoint(idDelivery, lat, lng, timestamp)));
+                    return chunk;
+                }));
+            }
+
+            List<List<DeliveryPoint>> chunks = new ArrayList<>();
+            for (Future<List<DeliveryPoint>> future : futures) {
+                chunks.add(future.get());
+            }
+            return chunks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + filePath, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to read " + filePath, cause);
+        }
+    }
+}
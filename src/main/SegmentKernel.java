@@ -0,0 +1,67 @@
+package main;
+
+// Computes the distance and speed of every consecutive pair of points of a delivery held in primitive columns,
+// in one pass over the whole delivery instead of one haversine call per pair. segments() uses the Vector API
+// implementation (VectorSegmentKernel) when the JVM runs with --add-modules jdk.incubator.vector, and the scalar
+// one otherwise or with -Dfare.vector=false. The scalar kernel is bit-identical to DistanceCalculator; the vector
+// kernel agrees within 1e-12 relative error (checked in SegmentKernelTest), so a speed right at 100 km/h or a fare
+// right at a rounding tie can come out on the other side. The default run without the module is unaffected.
+public class SegmentKernel {
+
+    // One implementation of the kernel, see segments()
+    interface Implementation {
+        void segments(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                      double[] distances, double[] speeds);
+    }
+
+    private static final Implementation SCALAR = SegmentKernel::scalarSegments;
+    private static final Implementation IMPLEMENTATION = load();
+
+    // Method to fill distances[k] and speeds[k] with the distance (km) and speed (km/h) from point k - 1 to point k
+    // of the delivery at [offset, offset + length) of the columns, for k in [1, length); entry 0 is set to 0.
+    // Both output arrays need room for length entries. While the distance cache or the approximation is on,
+    // the scalar kernel is used so that their rules apply.
+    public static void segments(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                                double[] distances, double[] speeds) {
+        Implementation implementation = DistanceCalculator.getCache() == null && DistanceCalculator.getApproximation() == 0
+                ? IMPLEMENTATION : SCALAR;
+        implementation.segments(lats, lngs, timestamps, offset, length, distances, speeds);
+    }
+
+    // Method to run the scalar kernel: the same arithmetic as DistanceCalculator.haversine and speed
+    public static void scalarSegments(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                                      double[] distances, double[] speeds) {
+        if (length == 0) {
+            return;
+        }
+        distances[0] = 0;
+        speeds[0] = 0;
+        double previousCosLat = Math.cos(Math.toRadians(lats[offset]));
+        for (int k = 1; k < length; k++) {
+            int i = offset + k;
+            double cosLat = Math.cos(Math.toRadians(lats[i]));
+            double distance = DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], previousCosLat, lats[i], lngs[i], cosLat);
+            distances[k] = distance;
+            speeds[k] = DistanceCalculator.speed(distance, timestamps[i - 1], timestamps[i]);
+            previousCosLat = cosLat;
+        }
+    }
+
+    // True when segments() runs on the Vector API
+    public static boolean isVectorized() {
+        return IMPLEMENTATION != SCALAR;
+    }
+
+    // Method to pick the implementation; the vector class is only loaded by name, so nothing else links against
+    // jdk.incubator.vector and a JVM without the module falls back to the scalar kernel
+    private static Implementation load() {
+        if (!Boolean.parseBoolean(System.getProperty("fare.vector", "true"))) {
+            return SCALAR;
+        }
+        try {
+            return (Implementation) Class.forName("main.VectorSegmentKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Service area the input is clipped to, opted into with -Dfare.area=minLat,minLng,maxLat,maxLng. The batch path
+// (batch, fixed and the shard workers) then loads the input into a TripStore and drops the points outside the area
+// with TripStore.dropOutsideArea before pricing; loadIndexed also builds a SpatialGridIndex over what is left, in
+// cells of -Dfare.area.cellDegrees (default 0.01). Without the property no point is dropped.
+public class ServiceArea {
+
+    public final double minLat;
+    public final double minLng;
+    public final double maxLat;
+    public final double maxLng;
+    public final double cellDegrees;
+
+    public ServiceArea(double minLat, double minLng, double maxLat, double maxLng, double cellDegrees) {
+        if (!(minLat < maxLat && minLng < maxLng && cellDegrees > 0)) {
+            throw new IllegalArgumentException("Invalid area " + minLat + "," + minLng + " - " + maxLat + "," + maxLng
+                    + " with cells of " + cellDegrees + " degrees");
+        }
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.maxLat = maxLat;
+        this.maxLng = maxLng;
+        this.cellDegrees = cellDegrees;
+    }
+
+    // Method to read the area from -Dfare.area and -Dfare.area.cellDegrees; null when no area is set
+    public static ServiceArea fromSystemProperties() {
+        String value = System.getProperty("fare.area");
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return parse(value, Double.parseDouble(System.getProperty("fare.area.cellDegrees", "0.01")));
+    }
+
+    // Method to parse "minLat,minLng,maxLat,maxLng"
+    public static ServiceArea parse(String value, double cellDegrees) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected minLat,minLng,maxLat,maxLng but got " + value);
+        }
+        return new ServiceArea(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()), cellDegrees);
+    }
+
+    // Method to load the input (CSV or TripFile) into a TripStore without the points outside the area
+    public TripStore load(String filePath) throws IOException {
+        TripStore store = TripStore.load(filePath);
+        store.dropOutsideArea(minLat, minLng, maxLat, maxLng);
+        return store;
+    }
+
+    // Method to load the input without the points outside the area and index the points left
+    public SpatialGridIndex loadIndexed(String filePath) throws IOException {
+        return index(load(filePath));
+    }
+
+    // Method to index the points of the store over the area
+    public SpatialGridIndex index(TripStore store) {
+        return SpatialGridIndex.build(store, minLat, minLng, maxLat, maxLng, cellDegrees);
+    }
+
+    // Method to load the input without the points outside the area, grouped by id_delivery as the batch mode
+    // groups it. A delivery without any point inside the area is left out, as there is nothing to price.
+    public Map<Integer, List<DeliveryPoint>> loadDeliveries(String filePath) throws IOException {
+        TripStore store = load(filePath);
+        double[] lats = store.lats();
+        double[] lngs = store.lngs();
+        long[] timestamps = store.timestamps();
+        Map<Integer, List<DeliveryPoint>> deliveries = new HashMap<>();
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            if (store.length(d) == 0) {
+                continue;
+            }
+            int id = store.deliveryId(d);
+            List<DeliveryPoint> points = deliveries.computeIfAbsent(id, k -> new ArrayList<>());
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                points.add(new DeliveryPoint(id, lats[i], lngs[i], timestamps[i]));
+            }
+        }
+        return deliveries;
+    }
+}
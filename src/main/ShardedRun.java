@@ -0,0 +1,431 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Batch run spread over worker processes. The coordinator hash-partitions the input by id_delivery into shard
+// files in a shared directory, so every delivery lands whole (in input order) in exactly one shard. Each shard is
+// priced by a worker JVM running the batch path ("worker <shard.csv> <shard.out.csv>"), at most `workers` at a
+// time, and the sorted shard outputs are merged line by line into one output sorted by id_delivery: the same
+// file as a single batch run.
+//
+// A worker that exits with a non-zero status, leaves no output or exceeds the timeout is killed and its shard
+// is run again, up to `retries` times. The worker command defaults to this JVM's java and class path and can be
+// replaced with -Dfare.shard.command, e.g. a prefix that starts the JVM on another node sharing the directory.
+// Workers get every -Dfare.* property of the coordinator, and on a local run its JVM options (see workerJvmOptions)
+// with -Dfare.parallelism=cores/workers and -Xmx=heap/workers.
+public class ShardedRun {
+
+    // Outcome of a run
+    public static class Result {
+        public final int shards;
+        public final int workers;
+        public final int retries;
+        public final long partitionMillis;
+        public final long workerMillis;
+        public final long mergeMillis;
+
+        public Result(int shards, int workers, int retries, long partitionMillis, long workerMillis, long mergeMillis) {
+            this.shards = shards;
+            this.workers = workers;
+            this.retries = retries;
+            this.partitionMillis = partitionMillis;
+            this.workerMillis = workerMillis;
+            this.mergeMillis = mergeMillis;
+        }
+    }
+
+    private static final String HEADER = "id_delivery,fare_estimate";
+
+    private final List<String> workerCommand;
+    private final int workers;
+    private final int shards;
+    private final int retries;
+    private final long timeoutSeconds;
+    private final File directory;
+
+    // workerCommand is the command that "worker <shard> <output>" is appended to; directory holds the shard files
+    // (null: a temporary directory next to the output). timeoutSeconds 0 waits for workers without limit.
+    public ShardedRun(List<String> workerCommand, int workers, int shards, int retries, long timeoutSeconds, File directory) {
+        this.workerCommand = new ArrayList<>(workerCommand);
+        this.workers = Math.max(1, workers);
+        this.shards = Math.max(1, shards);
+        this.retries = Math.max(0, retries);
+        this.timeoutSeconds = Math.max(0, timeoutSeconds);
+        this.directory = directory;
+    }
+
+    // Run configured with -Dfare.shard.workers (cores), -Dfare.shard.count (one shard per worker),
+    // -Dfare.shard.retries (2), -Dfare.shard.timeoutSeconds (0), -Dfare.shard.dir and -Dfare.shard.command
+    public static ShardedRun fromSystemProperties() {
+        int workers = Integer.getInteger("fare.shard.workers", Runtime.getRuntime().availableProcessors());
+        String command = System.getProperty("fare.shard.command");
+        String directory = System.getProperty("fare.shard.dir");
+        return new ShardedRun(command != null ? Arrays.asList(command.trim().split("\\s+")) : localWorkerCommand(workers),
+                workers, Integer.getInteger("fare.shard.count", workers), Integer.getInteger("fare.shard.retries", 2),
+                Long.getLong("fare.shard.timeoutSeconds", 0), directory != null ? new File(directory) : null);
+    }
+
+    // Method to build the command starting a worker JVM on this machine: same java, JVM options, class path and
+    // -Dfare.* properties, with the cores and the heap split between the workers unless -Dfare.parallelism is set
+    public static List<String> localWorkerCommand(int workers) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(workerJvmOptions(ManagementFactory.getRuntimeMXBean().getInputArguments(),
+                Runtime.getRuntime().maxMemory(), workers));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("fare.") && !name.startsWith("fare.shard.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        if (System.getProperty("fare.parallelism") == null) {
+            command.add("-Dfare.parallelism=" + Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, workers)));
+        }
+        command.add(DeliveryFareEstimation.class.getName());
+        return command;
+    }
+
+    // Method to pick the options of this JVM a local worker starts with. Options such as --add-modules
+    // jdk.incubator.vector (without which workers silently fall back to the scalar kernels), GC flags and -D system
+    // properties are kept as they are; -Dfare.* come from the system properties instead, so fare.shard.* stay with
+    // the coordinator. The heap options are replaced by -Xmx=maxHeapBytes/workers (at least 64 MB) so the workers
+    // together use what the coordinator was given, and a debugger agent is dropped since its port can only be
+    // bound once.
+    public static List<String> workerJvmOptions(List<String> inputArguments, long maxHeapBytes, int workers) {
+        List<String> options = new ArrayList<>();
+        for (String argument : inputArguments) {
+            boolean heap = argument.startsWith("-Xmx") || argument.startsWith("-Xms") || argument.startsWith("-Xmn")
+                    || argument.matches("-XX:(Max|Initial|Min)HeapSize=.*|-XX:(Max|Initial|Min)RAMPercentage=.*|-XX:MaxRAM=.*");
+            boolean debugger = argument.startsWith("-agentlib:jdwp") || argument.startsWith("-Xrunjdwp");
+            if (!heap && !debugger && !argument.startsWith("-Dfare.")) {
+                options.add(argument);
+            }
+        }
+        long heapMb = Math.max(64, maxHeapBytes / Math.max(1, workers) >> 20);
+        options.add("-Xmx" + heapMb + "m");
+        return options;
+    }
+
+    // Method to price the input into the output through the workers. Shard files are removed after a successful
+    // run and kept, with one log per worker attempt, when a shard still fails after its retries.
+    public Result run(String inputPath, String outputPath) throws IOException {
+        File workDirectory = directory;
+        boolean temporaryDirectory = workDirectory == null;
+        if (temporaryDirectory) {
+            File parent = new File(outputPath).getAbsoluteFile().getParentFile();
+            workDirectory = Files.createTempDirectory(parent.toPath(), "shards").toFile();
+        } else {
+            workDirectory.mkdirs();
+        }
+
+        long startTime = System.nanoTime();
+        File[] inputs = partition(inputPath, workDirectory);
+        long partitionEnd = System.nanoTime();
+
+        File[] outputs = new File[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            outputs[shard] = new File(workDirectory, "shard-" + shard + ".out.csv");
+            Files.deleteIfExists(outputs[shard].toPath());
+        }
+        int retried = runWorkers(inputs, outputs, workDirectory);
+        long workersEnd = System.nanoTime();
+
+        merge(outputs, outputPath);
+        long mergeEnd = System.nanoTime();
+
+        for (int shard = 0; shard < shards; shard++) {
+            Files.deleteIfExists(inputs[shard].toPath());
+            Files.deleteIfExists(outputs[shard].toPath());
+            for (int attempt = 0; attempt <= retries; attempt++) {
+                Files.deleteIfExists(logFile(workDirectory, shard, attempt).toPath());
+            }
+        }
+        if (temporaryDirectory) {
+            Files.deleteIfExists(workDirectory.toPath());
+        }
+
+        return new Result(shards, workers, retried, (partitionEnd - startTime) / 1_000_000,
+                (workersEnd - partitionEnd) / 1_000_000, (mergeEnd - workersEnd) / 1_000_000);
+    }
+
+    // Method to run inside a worker JVM: price one shard with the batch path and publish the output atomically,
+    // so the coordinator never reads a partial file
+    public static void runWorker(String inputPath, String outputPath)
+            throws IOException, InterruptedException, ExecutionException {
+        Path output = Paths.get(outputPath);
+        Path temporary = output.resolveSibling(output.getFileName() + ".tmp");
+        DeliveryFareEstimation.processBatch(inputPath, temporary.toString(), false);
+        try {
+            Files.move(temporary, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Shard of a delivery: the id is mixed first, so consecutive ids spread evenly
+    static int shardOf(int idDelivery, int shards) {
+        return (int) Math.floorMod(FareFingerprintIndex.mix(idDelivery), (long) shards);
+    }
+
+    // Method to split the input into one CSV per shard. CSV rows are copied byte for byte; TripFile rows are written
+    // with Double.toString, which parses back to the same double, so the fares do not change either way.
+    private File[] partition(String inputPath, File workDirectory) throws IOException {
+        File[] inputs = new File[shards];
+        OutputStream[] outputs = new OutputStream[shards];
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                inputs[shard] = new File(workDirectory, "shard-" + shard + ".csv");
+                outputs[shard] = new BufferedOutputStream(new FileOutputStream(inputs[shard]), 1 << 16);
+                outputs[shard].write("id_delivery,lat,lng,timestamp\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            if (TripFile.isTripFile(inputPath)) {
+                partitionRows(inputPath, outputs);
+            } else {
+                partitionLines(inputPath, outputs);
+            }
+        } finally {
+            for (OutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+        return inputs;
+    }
+
+    // Method to write every decoded row to its shard
+    private void partitionRows(String inputPath, OutputStream[] outputs) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        try {
+            MappedCsvReader.forEachRow(inputPath, (idDelivery, lat, lng, timestamp) -> {
+                line.setLength(0);
+                line.append(idDelivery).append(',').append(lat).append(',').append(lng).append(',').append(timestamp).append('\n');
+                try {
+                    outputs[shardOf(idDelivery, shards)].write(line.toString().getBytes(StandardCharsets.US_ASCII));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Method to copy every CSV line to the shard of its id_delivery, parsing only the id. Like MappedCsvReader, the
+    // first line is the header and skipped; empty lines are dropped.
+    private void partitionLines(String inputPath, OutputStream[] outputs) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ)) {
+            byte[] bytes = new byte[1 << 20];
+            int filled = 0;
+            boolean firstLine = true;
+            boolean end = false;
+            while (!end) {
+                int read = channel.read(ByteBuffer.wrap(bytes, filled, bytes.length - filled));
+                if (read < 0) {
+                    end = true;
+                } else {
+                    filled += read;
+                }
+
+                // Copy the complete lines; the last line of the file may have no newline
+                int lineStart = 0;
+                for (int i = 0; i < filled; i++) {
+                    if (bytes[i] == '\n' || (end && i == filled - 1)) {
+                        int lineEnd = i + 1;
+                        if (firstLine) {
+                            firstLine = false;
+                        } else if (bytes[lineStart] != '\n' && bytes[lineStart] != '\r') {
+                            OutputStream output = outputs[shardOf(parseId(bytes, lineStart, lineEnd), shards)];
+                            output.write(bytes, lineStart, lineEnd - lineStart);
+                            if (bytes[i] != '\n') {
+                                output.write('\n');
+                            }
+                        }
+                        lineStart = lineEnd;
+                    }
+                }
+
+                // Keep the incomplete line for the next read, growing the buffer for a line longer than it
+                if (lineStart == 0 && filled == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                } else {
+                    System.arraycopy(bytes, lineStart, bytes, 0, filled - lineStart);
+                    filled -= lineStart;
+                }
+            }
+        }
+    }
+
+    // Method to parse the id_delivery at the start of a row
+    private static int parseId(byte[] bytes, int from, int to) {
+        int position = from;
+        boolean negative = bytes[position] == '-';
+        if (negative) {
+            position++;
+        }
+        long id = 0;
+        int digits = 0;
+        while (position < to && bytes[position] >= '0' && bytes[position] <= '9' && digits < 11) {
+            id = id * 10 + (bytes[position++] - '0');
+            digits++;
+        }
+        id = negative ? -id : id;
+        if (digits == 0 || position == to || bytes[position] != ',' || id != (int) id) {
+            throw new NumberFormatException("Malformed row: " + new String(bytes, from, to - from, StandardCharsets.US_ASCII).trim());
+        }
+        return (int) id;
+    }
+
+    // Method to run every shard on a worker, at most `workers` at a time; returns the number of retries
+    private int runWorkers(File[] inputs, File[] outputs, File workDirectory) throws IOException {
+        AtomicInteger retried = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, shards));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                int current = shard;
+                futures.add(executor.submit(() -> {
+                    runShard(current, inputs[current], outputs[current], workDirectory, retried);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return retried.get();
+    }
+
+    // Method to run one shard until a worker completes it or the retries are used up
+    private void runShard(int shard, File input, File output, File workDirectory, AtomicInteger retried)
+            throws IOException, InterruptedException {
+        String failure = null;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (attempt > 0) {
+                retried.incrementAndGet();
+                System.err.println("Retrying shard " + shard + " (" + failure + ")");
+            }
+            List<String> command = new ArrayList<>(workerCommand);
+            command.addAll(Arrays.asList("worker", input.getPath(), output.getPath()));
+            File log = logFile(workDirectory, shard, attempt);
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+            try {
+                boolean exited = true;
+                if (timeoutSeconds > 0) {
+                    exited = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+                } else {
+                    process.waitFor();
+                }
+                if (!exited) {
+                    failure = "no result after " + timeoutSeconds + " s";
+                } else if (process.exitValue() != 0) {
+                    failure = "exit status " + process.exitValue() + ", see " + log;
+                } else if (!output.isFile()) {
+                    failure = "no output, see " + log;
+                } else {
+                    return;
+                }
+            } finally {
+                process.destroyForcibly();
+            }
+        }
+        throw new IOException("Shard " + shard + " failed after " + (retries + 1) + " attempts: " + failure);
+    }
+
+    private static File logFile(File workDirectory, int shard, int attempt) {
+        return new File(workDirectory, "shard-" + shard + "." + attempt + ".log");
+    }
+
+    // Shard output being merged, positioned on its next row
+    private static final class ShardCursor {
+        final BufferedReader reader;
+        String line;
+        int id;
+
+        ShardCursor(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        boolean advance() throws IOException {
+            line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            id = Integer.parseInt(line, 0, line.indexOf(','), 10);
+            return true;
+        }
+    }
+
+    // Method to merge the sorted shard outputs into one output sorted by id_delivery, copying the rows as they are
+    private static void merge(File[] outputs, String outputPath) throws IOException {
+        PriorityQueue<ShardCursor> queue = new PriorityQueue<>((a, b) -> Integer.compare(a.id, b.id));
+        List<BufferedReader> readers = new ArrayList<>();
+        try (BufferedWriter writer = new BufferedWriter(Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.UTF_8), 1 << 16)) {
+            for (File output : outputs) {
+                BufferedReader reader = Files.newBufferedReader(output.toPath(), StandardCharsets.UTF_8);
+                readers.add(reader);
+                String header = reader.readLine();
+                if (!HEADER.equals(header)) {
+                    throw new IOException(output + " is not a fare output");
+                }
+                ShardCursor cursor = new ShardCursor(reader);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+
+            writer.write(HEADER);
+            writer.write('\n');
+            while (!queue.isEmpty()) {
+                ShardCursor cursor = queue.poll();
+                writer.write(cursor.line);
+                writer.write('\n');
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+}
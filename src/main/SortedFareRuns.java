@@ -0,0 +1,267 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Collects (id_delivery, fare) results from many workers as sorted runs and merges them into one CSV ordered
+// by id_delivery. Every worker hands over its own results as one run, which is sorted on the worker's thread;
+// no global map of boxed results is built. Runs stay in memory up to maxInMemoryRecords in total, later runs are
+// spilled to temporary files (12 bytes per record), and the final k-way merge streams through all runs holding
+// one record per run, so the output is byte-identical whatever the number of workers or the order they finish in.
+public class SortedFareRuns implements AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final File spillDirectory;
+    private final long maxInMemoryRecords;
+    private final List<Run> runs = new ArrayList<>();
+    private long inMemoryRecords;
+
+    // Records held in memory when no limit is given: -Dfare.sortMemoryRecords=N, 4 million (48 MB) by default
+    public static long defaultMaxInMemoryRecords() {
+        return Long.getLong("fare.sortMemoryRecords", 4_000_000);
+    }
+
+    // Creates a collector that spills into the temporary directory once more than maxInMemoryRecords are held
+    public SortedFareRuns(long maxInMemoryRecords) {
+        this(new File(System.getProperty("java.io.tmpdir")), maxInMemoryRecords);
+    }
+
+    public SortedFareRuns(File spillDirectory, long maxInMemoryRecords) {
+        this.spillDirectory = spillDirectory;
+        this.maxInMemoryRecords = maxInMemoryRecords;
+    }
+
+    // Method to add the first count results of the arrays as one run; the arrays are not kept. Thread-safe.
+    public void addRun(int[] ids, double[] fares, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        // Sort by id, keeping the input order of equal ids: the index breaks ties in the low 32 bits
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] sortedIds = new int[count];
+        double[] sortedFares = new double[count];
+        for (int i = 0; i < count; i++) {
+            int index = (int) order[i];
+            sortedIds[i] = ids[index];
+            sortedFares[i] = fares[index];
+        }
+
+        boolean keepInMemory;
+        synchronized (this) {
+            keepInMemory = inMemoryRecords + count <= maxInMemoryRecords;
+            if (keepInMemory) {
+                inMemoryRecords += count;
+                runs.add(new MemoryRun(sortedIds, sortedFares));
+                return;
+            }
+        }
+
+        // Spill outside the lock, so other workers can keep adding runs
+        File file = File.createTempFile("fare-run", ".bin", spillDirectory);
+        file.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            for (int i = 0; i < count; i++) {
+                out.writeInt(sortedIds[i]);
+                out.writeDouble(sortedFares[i]);
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        synchronized (this) {
+            runs.add(new FileRun(file, count));
+        }
+    }
+
+    // Method to add the results of a map as one run
+    public void addRun(Map<Integer, Double> fareEstimates) throws IOException {
+        int[] ids = new int[fareEstimates.size()];
+        double[] fares = new double[ids.length];
+        int count = 0;
+        for (Map.Entry<Integer, Double> entry : fareEstimates.entrySet()) {
+            ids[count] = entry.getKey();
+            fares[count++] = entry.getValue();
+        }
+        addRun(ids, fares, count);
+    }
+
+    // Method to merge every run into the output CSV, ordered by id_delivery. Runs are kept, see close.
+    public synchronized void mergeTo(String outputPath) throws IOException {
+        // Heap of cursors ordered by their current id; the run index breaks ties so equal ids keep run order
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) ->
+                a.id != b.id ? Integer.compare(a.id, b.id) : Integer.compare(a.runIndex, b.runIndex));
+        List<Cursor> cursors = new ArrayList<>();
+        try (FareCsvWriter writer = new FareCsvWriter(outputPath)) {
+            for (int i = 0; i < runs.size(); i++) {
+                Cursor cursor = runs.get(i).open(i);
+                cursors.add(cursor);
+                if (cursor.next()) {
+                    heap.add(cursor);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                Cursor cursor = heap.poll();
+                writer.write(cursor.id, cursor.fare);
+                if (cursor.next()) {
+                    heap.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    public synchronized int runCount() {
+        return runs.size();
+    }
+
+    public synchronized long recordCount() {
+        long records = 0;
+        for (Run run : runs) {
+            records += run.size();
+        }
+        return records;
+    }
+
+    // Number of runs written to temporary files
+    public synchronized int spilledRunCount() {
+        int spilled = 0;
+        for (Run run : runs) {
+            if (run instanceof FileRun) {
+                spilled++;
+            }
+        }
+        return spilled;
+    }
+
+    // Method to drop every run and delete the spill files
+    @Override
+    public synchronized void close() {
+        for (Run run : runs) {
+            if (run instanceof FileRun) {
+                ((FileRun) run).file.delete();
+            }
+        }
+        runs.clear();
+        inMemoryRecords = 0;
+    }
+
+    private interface Run {
+        Cursor open(int runIndex) throws IOException;
+
+        long size();
+    }
+
+    // Reads one run record by record
+    private abstract static class Cursor {
+        final int runIndex;
+        int id;
+        double fare;
+
+        Cursor(int runIndex) {
+            this.runIndex = runIndex;
+        }
+
+        // Moves to the next record; false at the end of the run
+        abstract boolean next() throws IOException;
+
+        void close() throws IOException {
+        }
+    }
+
+    private static final class MemoryRun implements Run {
+        final int[] ids;
+        final double[] fares;
+
+        MemoryRun(int[] ids, double[] fares) {
+            this.ids = ids;
+            this.fares = fares;
+        }
+
+        @Override
+        public Cursor open(int runIndex) {
+            return new Cursor(runIndex) {
+                int position = -1;
+
+                @Override
+                boolean next() {
+                    if (++position >= ids.length) {
+                        return false;
+                    }
+                    id = ids[position];
+                    fare = fares[position];
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public long size() {
+            return ids.length;
+        }
+    }
+
+    private static final class FileRun implements Run {
+        final File file;
+        final long records;
+
+        FileRun(File file, long records) {
+            this.file = file;
+            this.records = records;
+        }
+
+        @Override
+        public Cursor open(int runIndex) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+            return new Cursor(runIndex) {
+                long remaining = records;
+
+                @Override
+                boolean next() throws IOException {
+                    if (remaining == 0) {
+                        return false;
+                    }
+                    try {
+                        id = in.readInt();
+                        fare = in.readDouble();
+                    } catch (EOFException e) {
+                        throw new IOException("Run file " + file + " is shorter than its " + records + " records", e);
+                    }
+                    remaining--;
+                    return true;
+                }
+
+                @Override
+                void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+
+        @Override
+        public long size() {
+            return records;
+        }
+    }
+}
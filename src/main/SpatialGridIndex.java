@@ -0,0 +1,183 @@
+package main;
+
+import java.util.BitSet;
+
+// Grid index over the points of a TripStore. The service area is cut into cells of cellDegrees x cellDegrees and
+// the points of every cell are listed together (compressed sparse rows: cellStarts plus point and delivery indexes
+// in cell order, 8 bytes per point); points outside the area share one extra bucket. Box and radius queries only visit the cells they overlap
+// and return the deliveries with at least one point inside, so repricing a district does not scan every point.
+// The index is built in two passes over the columns (count per cell, then fill) and reflects the store as it was
+// at that time; rebuild it after filtering. The area must not cross the antimeridian.
+public class SpatialGridIndex {
+
+    // Test of a single point, after the cell-level box check
+    private interface PointTest {
+        boolean test(double lat, double lng);
+    }
+
+    private static final double KM_PER_DEGREE = 6371 * Math.PI / 180;
+
+    private final TripStore store;
+    private final double minLat;
+    private final double minLng;
+    private final double maxLat;
+    private final double maxLng;
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+
+    // Cell c holds entries [cellStarts[c], cellStarts[c + 1]); cell rows * columns is the outside bucket
+    private final int[] cellStarts;
+    private final int[] points;
+    private final int[] deliveries;
+
+    private SpatialGridIndex(TripStore store, double minLat, double minLng, double maxLat, double maxLng, double cellDegrees) {
+        if (!(minLat < maxLat && minLng < maxLng && cellDegrees > 0)) {
+            throw new IllegalArgumentException("Invalid area " + minLat + "," + minLng + " - " + maxLat + "," + maxLng
+                    + " with cells of " + cellDegrees + " degrees");
+        }
+        this.store = store;
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.maxLat = maxLat;
+        this.maxLng = maxLng;
+        this.cellDegrees = cellDegrees;
+        this.rows = Math.max(1, (int) Math.ceil((maxLat - minLat) / cellDegrees));
+        this.columns = Math.max(1, (int) Math.ceil((maxLng - minLng) / cellDegrees));
+        if ((long) rows * columns >= Integer.MAX_VALUE - 2) {
+            throw new IllegalArgumentException("Area needs " + (long) rows * columns + " cells");
+        }
+        this.cellStarts = new int[rows * columns + 2];
+
+        // Pass 1: count the points of every cell, shifted by one so the prefix sum gives the starts
+        double[] lats = store.lats();
+        double[] lngs = store.lngs();
+        int indexed = 0;
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                cellStarts[cellOf(lats[i], lngs[i]) + 1]++;
+            }
+            indexed += store.length(d);
+        }
+        for (int c = 1; c < cellStarts.length; c++) {
+            cellStarts[c] += cellStarts[c - 1];
+        }
+
+        // Pass 2: place every point at the next free slot of its cell, so each cell lists its points in store order
+        this.points = new int[indexed];
+        this.deliveries = new int[indexed];
+        int[] next = new int[cellStarts.length - 1];
+        System.arraycopy(cellStarts, 0, next, 0, next.length);
+        for (int d = 0; d < store.deliveryCount(); d++) {
+            for (int i = store.offset(d); i < store.offset(d) + store.length(d); i++) {
+                int entry = next[cellOf(lats[i], lngs[i])]++;
+                points[entry] = i;
+                deliveries[entry] = d;
+            }
+        }
+    }
+
+    // Method to index the points of the store over the area [minLat, maxLat] x [minLng, maxLng]
+    public static SpatialGridIndex build(TripStore store, double minLat, double minLng, double maxLat, double maxLng,
+                                         double cellDegrees) {
+        return new SpatialGridIndex(store, minLat, minLng, maxLat, maxLng, cellDegrees);
+    }
+
+    // Method to get the deliveries (indexes into the store, ascending) with a point in the box
+    public int[] deliveriesInBox(double boxMinLat, double boxMinLng, double boxMaxLat, double boxMaxLng) {
+        return collect(boxMinLat, boxMinLng, boxMaxLat, boxMaxLng, null);
+    }
+
+    // Method to get the deliveries (indexes into the store, ascending) with a point within radiusKm (haversine)
+    // of the centre. Only the cells of the circle's bounding box are visited; the distance cache is not used.
+    public int[] deliveriesWithinRadius(double lat, double lng, double radiusKm) {
+        double deltaLat = radiusKm / KM_PER_DEGREE;
+        // Widest longitude span of the circle; a circle reaching a pole spans every longitude
+        double ratio = Math.sin(radiusKm / 6371) / Math.cos(Math.toRadians(lat));
+        double deltaLng = Math.abs(lat) + deltaLat >= 90 || ratio >= 1 ? 360 : Math.toDegrees(Math.asin(ratio));
+        return collect(lat - deltaLat, lng - deltaLng, lat + deltaLat, lng + deltaLng, (pointLat, pointLng) ->
+                DistanceCalculator.computeHaversine(lat, lng, pointLat, pointLng) <= radiusKm);
+    }
+
+    // Method to list the indexed points outside the area (indexes into the store columns, ascending)
+    public int[] outsidePoints() {
+        int outside = rows * columns;
+        int[] result = new int[cellStarts[outside + 1] - cellStarts[outside]];
+        System.arraycopy(points, cellStarts[outside], result, 0, result.length);
+        return result;
+    }
+
+    public int cellCount() {
+        return rows * columns;
+    }
+
+    public int pointCount() {
+        return points.length;
+    }
+
+    // Method to collect the deliveries with a point in the box that also passes the test (null: no further test).
+    // Cells lying wholly inside the box need no per-point box check.
+    private int[] collect(double boxMinLat, double boxMinLng, double boxMaxLat, double boxMaxLng, PointTest test) {
+        BitSet found = new BitSet(store.deliveryCount());
+        double[] lats = store.lats();
+        double[] lngs = store.lngs();
+
+        if (boxMinLat <= maxLat && boxMaxLat >= minLat && boxMinLng <= maxLng && boxMaxLng >= minLng) {
+            int firstRow = row(Math.max(boxMinLat, minLat));
+            int lastRow = row(Math.min(boxMaxLat, maxLat));
+            int firstColumn = column(Math.max(boxMinLng, minLng));
+            int lastColumn = column(Math.min(boxMaxLng, maxLng));
+            for (int r = firstRow; r <= lastRow; r++) {
+                double cellMinLat = minLat + r * cellDegrees;
+                double cellMaxLat = Math.min(maxLat, cellMinLat + cellDegrees);
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    double cellMinLng = minLng + c * cellDegrees;
+                    double cellMaxLng = Math.min(maxLng, cellMinLng + cellDegrees);
+                    boolean covered = cellMinLat >= boxMinLat && cellMaxLat <= boxMaxLat
+                            && cellMinLng >= boxMinLng && cellMaxLng <= boxMaxLng;
+                    int cell = r * columns + c;
+                    for (int e = cellStarts[cell]; e < cellStarts[cell + 1]; e++) {
+                        int point = points[e];
+                        double lat = lats[point];
+                        double lng = lngs[point];
+                        if ((covered || (lat >= boxMinLat && lat <= boxMaxLat && lng >= boxMinLng && lng <= boxMaxLng))
+                                && (test == null || test.test(lat, lng))) {
+                            found.set(deliveries[e]);
+                        }
+                    }
+                }
+            }
+        }
+
+        // A box reaching beyond the area can also hold points of the outside bucket
+        if (boxMinLat < minLat || boxMaxLat > maxLat || boxMinLng < minLng || boxMaxLng > maxLng) {
+            int outside = rows * columns;
+            for (int e = cellStarts[outside]; e < cellStarts[outside + 1]; e++) {
+                int point = points[e];
+                double lat = lats[point];
+                double lng = lngs[point];
+                if (lat >= boxMinLat && lat <= boxMaxLat && lng >= boxMinLng && lng <= boxMaxLng
+                        && (test == null || test.test(lat, lng))) {
+                    found.set(deliveries[e]);
+                }
+            }
+        }
+        return found.stream().toArray();
+    }
+
+    // Cell of a point; points outside the area (or NaN) go to the outside bucket
+    private int cellOf(double lat, double lng) {
+        if (!(lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng)) {
+            return rows * columns;
+        }
+        return row(lat) * columns + column(lng);
+    }
+
+    private int row(double lat) {
+        return Math.min(rows - 1, (int) ((lat - minLat) / cellDegrees));
+    }
+
+    private int column(double lng) {
+        return Math.min(columns - 1, (int) ((lng - minLng) / cellDegrees));
+    }
+}
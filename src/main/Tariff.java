@@ -0,0 +1,145 @@
+package main;
+
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Properties;
+
+// Immutable, compiled tariff: the rates and limits TariffEngine and the speed filter apply, with the time zone
+// already turned into a ZoneOffsetTable and the night band into seconds of the day. Pricing code reads a Tariff once
+// per delivery or batch and passes it down, so using another tariff costs nothing per segment.
+//
+// Configured as properties "<name>.<key>"; missing keys keep the value of the built-in TEHRAN tariff:
+//   zone=Asia/Tehran  flag=1.30  minimum=3.47  dayRatePerKm=0.74  nightRatePerKm=1.3  nightEnd=05:00
+//   idleRatePerHour=11.9  idleMaxSpeedKmh=10  maxSpeedKmh=100
+// The night band runs from local midnight to nightEnd; the rest of the day is priced at the day rate.
+public final class Tariff {
+
+    // The rates the fare rules were written with
+    public static final Tariff TEHRAN = new Tariff("tehran", "Asia/Tehran", 1.30, 3.47, 0.74, 1.3, 5 * 3600,
+            11.9, 10, 100);
+
+    static final String[] KEYS = {"zone", "flag", "minimum", "dayRatePerKm", "nightRatePerKm", "nightEnd",
+            "idleRatePerHour", "idleMaxSpeedKmh", "maxSpeedKmh"};
+
+    private final String name;
+    private final String zoneId;
+    final ZoneOffsetTable zone;
+    final double flag;
+    final double minimumFare;
+    final double dayRatePerKm;
+    final double nightRatePerKm;
+    final int nightEnd;               // end of the night band as seconds of the local day
+    final double idleRatePerHour;
+    final double idleMaxSpeedKmh;
+    final double maxSpeedKmh;
+    private final long fingerprint;
+
+    private Tariff(String name, String zoneId, double flag, double minimumFare, double dayRatePerKm,
+                   double nightRatePerKm, int nightEnd, double idleRatePerHour, double idleMaxSpeedKmh, double maxSpeedKmh) {
+        this.name = name;
+        this.zoneId = zoneId;
+        this.zone = new ZoneOffsetTable(ZoneId.of(zoneId));
+        this.flag = flag;
+        this.minimumFare = minimumFare;
+        this.dayRatePerKm = dayRatePerKm;
+        this.nightRatePerKm = nightRatePerKm;
+        this.nightEnd = nightEnd;
+        this.idleRatePerHour = idleRatePerHour;
+        this.idleMaxSpeedKmh = idleMaxSpeedKmh;
+        this.maxSpeedKmh = maxSpeedKmh;
+
+        // Everything that changes a fare; the name does not
+        long hash = zoneId.hashCode();
+        for (long value : new long[]{Double.doubleToLongBits(flag), Double.doubleToLongBits(minimumFare),
+                Double.doubleToLongBits(dayRatePerKm), Double.doubleToLongBits(nightRatePerKm), nightEnd,
+                Double.doubleToLongBits(idleRatePerHour), Double.doubleToLongBits(idleMaxSpeedKmh),
+                Double.doubleToLongBits(maxSpeedKmh)}) {
+            hash = FareFingerprintIndex.mix(hash ^ value) * 0x9E3779B97F4A7C15L;
+        }
+        this.fingerprint = FareFingerprintIndex.mix(hash);
+    }
+
+    // Method to compile the tariff called name from "<name>.<key>" properties; keys it does not set keep the values
+    // of TEHRAN. Invalid values throw IllegalArgumentException naming the key.
+    public static Tariff compile(String name, Properties properties) {
+        Tariff base = TEHRAN;
+        String zoneId = properties.getProperty(name + ".zone", base.zoneId).trim();
+        try {
+            ZoneId.of(zoneId);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException(name + ".zone: unknown time zone " + zoneId, e);
+        }
+
+        int nightEnd = base.nightEnd;
+        String nightEndText = properties.getProperty(name + ".nightEnd");
+        if (nightEndText != null) {
+            try {
+                nightEnd = LocalTime.parse(nightEndText.trim()).toSecondOfDay();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException(name + ".nightEnd: expected HH:mm, got " + nightEndText, e);
+            }
+            if (nightEnd == 0) {
+                throw new IllegalArgumentException(name + ".nightEnd: the night band cannot be empty");
+            }
+        }
+
+        return new Tariff(name, zoneId,
+                rate(properties, name, "flag", base.flag),
+                rate(properties, name, "minimum", base.minimumFare),
+                rate(properties, name, "dayRatePerKm", base.dayRatePerKm),
+                rate(properties, name, "nightRatePerKm", base.nightRatePerKm),
+                nightEnd,
+                rate(properties, name, "idleRatePerHour", base.idleRatePerHour),
+                rate(properties, name, "idleMaxSpeedKmh", base.idleMaxSpeedKmh),
+                rate(properties, name, "maxSpeedKmh", base.maxSpeedKmh));
+    }
+
+    private static double rate(Properties properties, String name, String key, double defaultValue) {
+        String text = properties.getProperty(name + "." + key);
+        if (text == null) {
+            return defaultValue;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "." + key + ": not a number: " + text, e);
+        }
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(name + "." + key + ": must be a finite value >= 0, got " + text);
+        }
+        return value;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String zoneId() {
+        return zoneId;
+    }
+
+    // Flag amount every delivery starts with
+    public double flag() {
+        return flag;
+    }
+
+    // Speed above which a point counts as a GPS glitch and is dropped
+    public double maxSpeedKmh() {
+        return maxSpeedKmh;
+    }
+
+    // 64-bit hash of every value that affects a fare, e.g. to tell whether stored fares are still valid
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + zoneId + ", flag " + flag + ", minimum " + minimumFare + ", day " + dayRatePerKm
+                + "/km, night " + nightRatePerKm + "/km until " + LocalTime.ofSecondOfDay(nightEnd) + ", idle "
+                + idleRatePerHour + "/h up to " + idleMaxSpeedKmh + " km/h, max " + maxSpeedKmh + " km/h)";
+    }
+}
@@ -0,0 +1,166 @@
+package main;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+// Prices one segment of a delivery on epoch seconds only, with the rates of a compiled Tariff. The zone offset comes
+// from the tariff's precomputed transition table, local times are seconds of the day, and the 00:00 / night-end
+// boundaries are plain integer comparisons, so no object is created per segment. With Tariff.TEHRAN the result is
+// exactly the one of the original java.time code (segmentFareReference), including its details: durations are
+// truncated to whole minutes, the day starts 1 ns after 05:00, every local time is before 23:59:59.000000059, and
+// the idle rate replaces the running fare instead of adding to it.
+public class TariffEngine {
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    // Method to add the fare of one segment (p1 -> p2) with the built-in Tariff.TEHRAN
+    public static double segmentFare(double fare, double distance, long timestamp1, long timestamp2) {
+        return segmentFare(Tariff.TEHRAN, fare, distance, timestamp1, timestamp2);
+    }
+
+    // Method to add the fare of one segment (p1 -> p2) of the given distance to the running fare of a delivery
+    public static double segmentFare(Tariff tariff, double fare, double distance, long timestamp1, long timestamp2) {
+        // Calculate speed between p1 and p2 from the segment distance
+        double speed = DistanceCalculator.speed(distance, timestamp1, timestamp2);
+        int nightEnd = tariff.nightEnd;
+
+        // Local date-times as seconds since 1970-01-01T00:00 local time, and the local seconds of the day
+        long startLocal = tariff.zone.toLocalSeconds(timestamp1);
+        long endLocal = tariff.zone.toLocalSeconds(timestamp2);
+        long start = Math.floorMod(startLocal, SECONDS_PER_DAY);
+        long end = Math.floorMod(endLocal, SECONDS_PER_DAY);
+
+        // Calculate total time difference in hours (whole minutes, truncated like Duration.toMinutes)
+        double totalDurationInHours = (endLocal - startLocal) / 60 / 60.0;
+
+        if (speed <= tariff.idleMaxSpeedKmh) {
+            // Apply the idle rate per hour (11.9 units) when speed is <= 10 km/h
+            fare = totalDurationInHours * tariff.idleRatePerHour;
+            FareMetrics.segment(FareMetrics.IDLE);
+        } else if (start > 0 && start < nightEnd && end > nightEnd) {
+            // Trip spans both night and day; the day part is measured from 1 ns after the end of the night
+            double nighttimeDuration = (nightEnd - start) / 60 / 60.0;
+            double daytimeDuration = (end - nightEnd - 1) / 60 / 60.0;
+            fare += nighttimeDuration * distance * tariff.nightRatePerKm;  // Night rate
+            fare += daytimeDuration * distance * tariff.dayRatePerKm;      // Day rate
+            FareMetrics.segment(FareMetrics.NIGHT_TO_DAY);
+        } else if (start > nightEnd && end >= start) {
+            // Entire trip during the day
+            fare += distance * tariff.dayRatePerKm;
+            FareMetrics.segment(FareMetrics.DAY);
+        } else if (start > 0 && end < nightEnd && end >= start) {
+            // Entire trip during the night
+            fare += distance * tariff.nightRatePerKm;
+            FareMetrics.segment(FareMetrics.NIGHT);
+        } else if (start > nightEnd && end > 0 && end < nightEnd) {
+            // Trip starts during the day and ends after midnight: split at the next local midnight
+            long adjustedMidnight = startLocal - start + SECONDS_PER_DAY;
+            double daytimeDuration = (adjustedMidnight - startLocal) / 60 / 60.0;
+            double nighttimeDuration = (endLocal - adjustedMidnight) / 60 / 60.0;
+            fare += daytimeDuration * distance * tariff.dayRatePerKm;
+            fare += nighttimeDuration * distance * tariff.nightRatePerKm;
+            FareMetrics.segment(FareMetrics.DAY_TO_NIGHT);
+        } else {
+            // Trip crosses midnight; like the original, the time "before midnight" is measured back to 00:00
+            // of the start day, so it is negative
+            double preMidnightDuration = -start / 60 / 60.0;
+            double postMidnightDuration = totalDurationInHours - preMidnightDuration;
+            fare += preMidnightDuration * distance * tariff.dayRatePerKm;    // Apply day rate for time before midnight
+            fare += postMidnightDuration * distance * tariff.nightRatePerKm; // Apply night rate for time after midnight
+            FareMetrics.segment(FareMetrics.MIDNIGHT_CROSSING);
+        }
+
+        // Ensure the minimum fare (3.47 units)
+        if (fare < tariff.minimumFare) {
+            fare = tariff.minimumFare;
+        }
+
+        return fare;
+    }
+
+    // Method to add the fare of one segment with java.time, as calculateFare originally did. It creates the zone,
+    // the local date-times and the durations for every segment; kept as the reference for segmentFare
+    public static double segmentFareReference(double fare, double distance, long timestamp1, long timestamp2) {
+        // Calculate speed between p1 and p2 from the segment distance
+        double speed = DistanceCalculator.speed(distance, timestamp1, timestamp2);
+
+
+        // Convert timestamps to LocalDateTime in the specified timezone (Tehran)
+        ZoneId zoneId = ZoneId.of("Asia/Tehran");
+        LocalDateTime startTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(timestamp1), zoneId);
+
+        LocalDateTime endTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(timestamp2), zoneId);
+
+        // Calculate total time difference in hours
+        double totalDurationInHours = Duration.between(startTime, endTime).toMinutes() / 60.0;
+
+        LocalTime nightStart = LocalTime.of(0, 0,0,1);
+        LocalTime nightEnd = LocalTime.of(5, 0,0,0);
+
+        LocalTime dayStart = LocalTime.of(5, 0,0, 1);
+        LocalTime dayEnd = LocalTime.of(23, 59,59,59);
+
+        LocalTime midnight = LocalTime.of(0, 0, 0);
+
+        if (speed <= 10) {
+            // Apply 11.9 units per hour when speed is <= 10 km/h
+            fare = totalDurationInHours * 11.9;
+        } else {
+
+            // Check if the trip spans from night to day (before 5:00 AM to after 5:00 AM)
+            if (startTime.toLocalTime().isBefore(nightEnd) && startTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isAfter(dayStart) && endTime.toLocalTime().isBefore(dayEnd)) {
+                // Trip spans both night and day
+                double nighttimeDuration = Duration.between(startTime.toLocalTime(), nightEnd).toMinutes() / 60.0;
+                double daytimeDuration = Duration.between(dayStart, endTime.toLocalTime()).toMinutes() / 60.0;
+                fare += nighttimeDuration * distance * 1.3;  // Night rate
+                fare += daytimeDuration * distance * 0.74;   // Day rate
+
+            } else if (startTime.toLocalTime().isAfter(dayStart) && endTime.toLocalTime().isBefore(dayEnd) && !endTime.toLocalTime().isBefore(startTime.toLocalTime())) {
+                // Entire trip during the day
+                double daytimeDuration = Duration.between(startTime.toLocalTime(), dayEnd).toMinutes() / 60.0;
+                //fare += totalDurationInHours * distance * 0.74;
+                fare += distance * 0.74;
+
+            } else if (startTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isBefore(nightEnd) && !endTime.toLocalTime().isBefore(startTime.toLocalTime()) ) {
+                // Entire trip during the night
+                fare += distance * 1.3;
+
+            } else if (startTime.toLocalTime().isAfter(dayStart) && startTime.toLocalTime().isBefore(dayEnd) && endTime.toLocalTime().isAfter(nightStart) && endTime.toLocalTime().isBefore(nightEnd)) {
+                // Trip starts during the day and ends after midnight (spans two days)
+
+                // Adjust midnight to the next day's midnight
+                LocalDateTime adjustedMidnight = startTime.toLocalDate().plusDays(1).atTime(midnight);
+
+                // Calculate the duration before midnight (day portion)
+                double daytimeDuration = Duration.between(startTime, adjustedMidnight).toMinutes() / 60.0;
+
+                // Calculate the duration after midnight (night portion)
+                double nighttimeDuration = Duration.between(adjustedMidnight, endTime).toMinutes() / 60.0;
+
+                // Apply day rate for daytime portion and night rate for nighttime portion
+                fare += daytimeDuration * distance * 0.74;
+                fare += nighttimeDuration * distance * 1.3;
+
+            } else {
+               // Trip crosses midnight (for example, from 11:30 PM to 12:30 AM)
+
+                // Calculate time before midnight
+                double preMidnightDuration = Duration.between(startTime.toLocalTime(), midnight).toMinutes() / 60.0;
+                double postMidnightDuration = totalDurationInHours - preMidnightDuration;
+
+                fare += preMidnightDuration * distance * 0.74;  // Apply day rate for time before midnight
+                fare += postMidnightDuration * distance * 1.3;  // Apply night rate for time after midnight
+            }
+        }
+
+        // Ensure the minimum fare is 3.47 units
+        if (fare < 3.47) {
+            fare = 3.47;
+        }
+
+        return fare;
+    }
+}
@@ -0,0 +1,167 @@
+package main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The tariffs in use: the named tariffs of the loaded tariff file and the current one that pricing uses unless it
+// is given a Tariff. Both live in one immutable snapshot behind a volatile field, so a reload compiles the new file
+// off to the side and swaps the snapshot in one write: pricing threads never wait, and a delivery or batch that
+// already read its Tariff finishes with it.
+//
+// Tariff file: properties "<name>.<key>" (see Tariff) for every tariff, plus "current=<name>" choosing the current
+// one (default: the only or first tariff by name). Loaded with -Dfare.tariff.file=path, optionally choosing the
+// current tariff with -Dfare.tariff.name=name and re-read every -Dfare.tariff.reloadSeconds=N when it changed.
+public class TariffRegistry {
+
+    // Named tariffs and the current one, replaced as a whole
+    private static final class Snapshot {
+        final Map<String, Tariff> tariffs;
+        final Tariff current;
+
+        Snapshot(Map<String, Tariff> tariffs, Tariff current) {
+            this.tariffs = tariffs;
+            this.current = current;
+        }
+    }
+
+    private static volatile Snapshot snapshot = new Snapshot(Map.of(Tariff.TEHRAN.name(), Tariff.TEHRAN), Tariff.TEHRAN);
+    private static ScheduledExecutorService watcher;
+
+    // Tariff used by pricing calls that are not given one
+    public static Tariff current() {
+        return snapshot.current;
+    }
+
+    // Method to get a tariff of the loaded file by name, e.g. per city; null if there is none
+    public static Tariff get(String name) {
+        return snapshot.tariffs.get(name);
+    }
+
+    public static Map<String, Tariff> tariffs() {
+        return snapshot.tariffs;
+    }
+
+    // Method to make the named tariff the current one
+    public static synchronized void select(String name) {
+        Snapshot previous = snapshot;
+        Tariff tariff = previous.tariffs.get(name);
+        if (tariff == null) {
+            throw new IllegalArgumentException("No tariff named " + name + " in " + previous.tariffs.keySet());
+        }
+        snapshot = new Snapshot(previous.tariffs, tariff);
+    }
+
+    // Method to install the tariffs of a file and make currentName (or the file's "current") the current tariff.
+    // Nothing changes when the file is invalid.
+    public static synchronized void load(Path path, String currentName) throws IOException {
+        snapshot = compile(path, currentName);
+    }
+
+    // Method to go back to the built-in TEHRAN tariff
+    public static synchronized void reset() {
+        snapshot = new Snapshot(Map.of(Tariff.TEHRAN.name(), Tariff.TEHRAN), Tariff.TEHRAN);
+    }
+
+    // Method to compile every tariff of the file into a new snapshot
+    static Snapshot compile(Path path, String currentName) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IllegalArgumentException e) {
+            // Properties.load refuses a malformed unicode escape this way
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+
+        // Every "<name>.<key>" with a known key names a tariff
+        TreeMap<String, Tariff> tariffs = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (dot <= 0) {
+                continue;
+            }
+            String property = key.substring(dot + 1);
+            boolean known = false;
+            for (String tariffKey : Tariff.KEYS) {
+                known |= tariffKey.equals(property);
+            }
+            if (!known) {
+                throw new IOException(path + ": unknown tariff key " + key);
+            }
+            tariffs.put(key.substring(0, dot), null);
+        }
+        if (tariffs.isEmpty()) {
+            throw new IOException(path + " defines no tariff");
+        }
+        try {
+            for (String name : tariffs.keySet()) {
+                tariffs.put(name, Tariff.compile(name, properties));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+
+        String name = currentName != null ? currentName : properties.getProperty("current", tariffs.firstKey()).trim();
+        Tariff current = tariffs.get(name);
+        if (current == null) {
+            throw new IOException(path + " has no tariff named " + name);
+        }
+        return new Snapshot(Collections.unmodifiableMap(tariffs), current);
+    }
+
+    // Method to load -Dfare.tariff.file if set, and watch it with -Dfare.tariff.reloadSeconds
+    public static void loadFromSystemProperties() throws IOException {
+        String file = System.getProperty("fare.tariff.file");
+        if (file == null) {
+            return;
+        }
+        String name = System.getProperty("fare.tariff.name");
+        load(Paths.get(file), name);
+        long seconds = Long.getLong("fare.tariff.reloadSeconds", 0);
+        if (seconds > 0) {
+            startWatching(Paths.get(file), name, seconds);
+        }
+    }
+
+    // Method to re-read the file every interval once its modification time changed. A file that fails to
+    // compile is reported and the tariffs in use stay; any exception is caught, since one escaping the task would
+    // cancel every later run.
+    public static synchronized void startWatching(Path path, String currentName, long intervalSeconds) throws IOException {
+        stopWatching();
+        long[] lastModified = {Files.getLastModifiedTime(path).toMillis()};
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fare-tariff-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                if (modified != lastModified[0]) {
+                    lastModified[0] = modified;
+                    load(path, currentName);
+                    System.err.println("Reloaded tariffs from " + path + ", current: " + current());
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Keeping the current tariffs: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+// Binary columnar trip file, a compact alternative to the CSV input. Deliveries (runs of consecutive rows with the
+// same id_delivery, as in TripStore) are stored whole in blocks of about BLOCK_POINTS points, and an index at the
+// end of the file lets readers decode blocks independently, in parallel or only those that can hold an id.
+//
+// Layout (big-endian fixed-size fields):
+//   header   int magic "TRP1", int version, long deliveries, long points, long indexOffset          (32 bytes)
+//   blocks   per delivery: zigzag varint id delta to the previous delivery of the block, varint point count,
+//            then per point zigzag varint deltas of lat and lng (1e-6 degree fixed point) and of the timestamp,
+//            each against the previous point of the delivery (the first point against 0)
+//   index    per block: long offset, int length, int deliveries, int points, int minId, int maxId, int crc32  (32 bytes)
+// Coordinates with up to 6 decimals read back as exactly the doubles the CSV parser produces. Finer coordinates
+// are refused unless the writer rounds them (about 0.1 m), in which case fares can differ from the CSV run.
+public class TripFile implements AutoCloseable {
+
+    static final int MAGIC = 0x54525031; // "TRP1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int INDEX_ENTRY_BYTES = 32;
+    static final int BLOCK_POINTS = 1 << 16;
+
+    private static final double SCALE = 1e6;
+
+    private final String path;
+    private final FileChannel channel;
+    private final long deliveryCount;
+    private final long pointCount;
+
+    // Block index columns
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockDeliveries;
+    private final int[] blockPoints;
+    private final int[] blockMinIds;
+    private final int[] blockMaxIds;
+    private final int[] blockCrcs;
+
+    private TripFile(String path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException(path + " is not a trip file of version " + VERSION);
+        }
+        deliveryCount = header.getLong();
+        pointCount = header.getLong();
+        long indexOffset = header.getLong();
+        long indexBytes = channel.size() - indexOffset;
+        if (indexOffset < HEADER_BYTES || indexBytes < 0 || indexBytes % INDEX_ENTRY_BYTES != 0
+                || indexBytes / INDEX_ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw new IOException(path + " has a damaged block index");
+        }
+
+        int blocks = (int) (indexBytes / INDEX_ENTRY_BYTES);
+        blockOffsets = new long[blocks];
+        blockLengths = new int[blocks];
+        blockDeliveries = new int[blocks];
+        blockPoints = new int[blocks];
+        blockMinIds = new int[blocks];
+        blockMaxIds = new int[blocks];
+        blockCrcs = new int[blocks];
+        ByteBuffer index = ByteBuffer.allocate((int) indexBytes);
+        readFully(index, indexOffset);
+        index.flip();
+        long points = 0;
+        long deliveries = 0;
+        for (int b = 0; b < blocks; b++) {
+            blockOffsets[b] = index.getLong();
+            blockLengths[b] = index.getInt();
+            blockDeliveries[b] = index.getInt();
+            blockPoints[b] = index.getInt();
+            blockMinIds[b] = index.getInt();
+            blockMaxIds[b] = index.getInt();
+            blockCrcs[b] = index.getInt();
+            if (blockOffsets[b] < HEADER_BYTES || blockLengths[b] < 0 || blockOffsets[b] + blockLengths[b] > indexOffset) {
+                throw new IOException(path + " has a damaged block index");
+            }
+            points += blockPoints[b];
+            deliveries += blockDeliveries[b];
+        }
+        if (points != pointCount || deliveries != deliveryCount) {
+            throw new IOException(path + " has a block index that does not match its header");
+        }
+    }
+
+    // Method to open a trip file and read its block index
+    public static TripFile open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            return new TripFile(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // True when the file starts with the trip file magic, i.e. it is not a CSV file
+    public static boolean isTripFile(String path) throws IOException {
+        Path file = Paths.get(path);
+        if (Files.size(file) < 4) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            channel.read(magic, 0);
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // Method to convert a CSV input file into a trip file holding the same rows in the same order
+    public static void convert(String csvPath, String tripPath) throws IOException {
+        convert(csvPath, tripPath, false);
+    }
+
+    // Method to convert a CSV input file, rounding coordinates to 6 decimals if roundCoordinates is set
+    public static void convert(String csvPath, String tripPath, boolean roundCoordinates) throws IOException {
+        try (Writer writer = new Writer(tripPath, BLOCK_POINTS, roundCoordinates)) {
+            try {
+                MappedCsvReader.forEachRow(csvPath, (idDelivery, lat, lng, timestamp) -> {
+                    try {
+                        writer.add(idDelivery, lat, lng, timestamp);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // Method to read a trip file into a list of DeliveryPoint, the same rows readData gives for the CSV
+    public static List<DeliveryPoint> readData(String path) throws IOException {
+        try (TripFile file = open(path)) {
+            List<DeliveryPoint> data = new ArrayList<>((int) Math.min(file.pointCount, Integer.MAX_VALUE));
+            file.forEachRow((idDelivery, lat, lng, timestamp) -> data.add(new DeliveryPoint(idDelivery, lat, lng, timestamp)));
+            return data;
+        }
+    }
+
+    // Method to load a trip file into a TripStore, decoding the blocks in parallel on the common pool
+    public static TripStore load(String path) throws IOException {
+        try (TripFile file = open(path)) {
+            return file.toStore(ForkJoinPool.commonPool());
+        }
+    }
+
+    public long deliveryCount() {
+        return deliveryCount;
+    }
+
+    public long pointCount() {
+        return pointCount;
+    }
+
+    public int blockCount() {
+        return blockOffsets.length;
+    }
+
+    // Method to decode every row in file order
+    public void forEachRow(MappedCsvReader.RowHandler handler) throws IOException {
+        byte[] bytes = new byte[0];
+        for (int b = 0; b < blockCount(); b++) {
+            bytes = readBlock(b, bytes);
+            decodeBlock(bytes, blockDeliveries[b], handler);
+        }
+    }
+
+    // Method to decode the rows of one block in file order
+    public void forEachRow(int block, MappedCsvReader.RowHandler handler) throws IOException {
+        decodeBlock(readBlock(block, new byte[0]), blockDeliveries[block], handler);
+    }
+
+    // Method to read the points of a delivery, decoding only the blocks whose id range holds it.
+    // Rows of the id in several places of the file are returned together, in file order.
+    public List<DeliveryPoint> readDelivery(int idDelivery) throws IOException {
+        List<DeliveryPoint> points = new ArrayList<>();
+        byte[] bytes = new byte[0];
+        for (int b = 0; b < blockCount(); b++) {
+            if (idDelivery < blockMinIds[b] || idDelivery > blockMaxIds[b]) {
+                continue;
+            }
+            bytes = readBlock(b, bytes);
+            decodeBlock(bytes, blockDeliveries[b], (id, lat, lng, timestamp) -> {
+                if (id == idDelivery) {
+                    points.add(new DeliveryPoint(id, lat, lng, timestamp));
+                }
+            });
+        }
+        return points;
+    }
+
+    // Method to decode the whole file into a TripStore, one task per block. Every block knows its first point and
+    // delivery from the index, so the tasks write straight into the shared columns.
+    public TripStore toStore(ExecutorService executor) throws IOException {
+        if (pointCount > Integer.MAX_VALUE - 8) {
+            throw new IOException(path + " has " + pointCount + " points, more than a TripStore holds");
+        }
+        int blocks = blockCount();
+        double[] lats = new double[(int) pointCount];
+        double[] lngs = new double[(int) pointCount];
+        long[] timestamps = new long[(int) pointCount];
+        int[] ids = new int[(int) deliveryCount];
+        int[] offsets = new int[(int) deliveryCount];
+        int[] lengths = new int[(int) deliveryCount];
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            int firstPoint = 0;
+            int firstDelivery = 0;
+            for (int b = 0; b < blocks; b++) {
+                int block = b;
+                int pointStart = firstPoint;
+                int deliveryStart = firstDelivery;
+                futures.add(executor.submit(() -> {
+                    byte[] bytes = readBlock(block, new byte[0]);
+                    decodeBlock(bytes, blockDeliveries[block], pointStart, deliveryStart,
+                            lats, lngs, timestamps, ids, offsets, lengths);
+                    return null;
+                }));
+                firstPoint += blockPoints[b];
+                firstDelivery += blockDeliveries[b];
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + path, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to read " + path, cause);
+        }
+        return new TripStore(lats, lngs, timestamps, (int) pointCount, ids, offsets, lengths, (int) deliveryCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Method to read a block into the buffer (reallocated when too small) and verify its checksum
+    private byte[] readBlock(int block, byte[] bytes) throws IOException {
+        int length = blockLengths[block];
+        if (bytes.length < length) {
+            bytes = new byte[length];
+        }
+        readFully(ByteBuffer.wrap(bytes, 0, length), blockOffsets[block]);
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, length);
+        if ((int) checksum.getValue() != blockCrcs[block]) {
+            throw new IOException(path + " fails the checksum of block " + block);
+        }
+        return bytes;
+    }
+
+    // Method to decode the deliveries of a block row by row
+    private static void decodeBlock(byte[] bytes, int deliveries, MappedCsvReader.RowHandler handler) {
+        Decoder in = new Decoder(bytes);
+        int id = 0;
+        long rows = 0;
+        for (int d = 0; d < deliveries; d++) {
+            id += (int) in.readSigned();
+            int points = (int) in.readUnsigned();
+            long lat = 0;
+            long lng = 0;
+            long timestamp = 0;
+            for (int p = 0; p < points; p++) {
+                lat += in.readSigned();
+                lng += in.readSigned();
+                timestamp += in.readSigned();
+                handler.onRow(id, lat / SCALE, lng / SCALE, timestamp);
+                rows++;
+            }
+        }
+        FareMetrics.rowsParsed(rows);
+    }
+
+    // Method to decode the deliveries of a block into TripStore columns, starting at the given point and delivery
+    private static void decodeBlock(byte[] bytes, int deliveries, int pointStart, int deliveryStart,
+                                    double[] lats, double[] lngs, long[] timestamps,
+                                    int[] ids, int[] offsets, int[] lengths) {
+        Decoder in = new Decoder(bytes);
+        int id = 0;
+        int point = pointStart;
+        for (int d = deliveryStart; d < deliveryStart + deliveries; d++) {
+            id += (int) in.readSigned();
+            int points = (int) in.readUnsigned();
+            ids[d] = id;
+            offsets[d] = point;
+            lengths[d] = points;
+            long lat = 0;
+            long lng = 0;
+            long timestamp = 0;
+            for (int p = 0; p < points; p++, point++) {
+                lat += in.readSigned();
+                lng += in.readSigned();
+                timestamp += in.readSigned();
+                lats[point] = lat / SCALE;
+                lngs[point] = lng / SCALE;
+                timestamps[point] = timestamp;
+            }
+        }
+        FareMetrics.rowsParsed(point - pointStart);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException(path + " is truncated");
+            }
+            position += read;
+        }
+    }
+
+    // Varint cursor over a block; the index CRC has been checked, so the bytes are trusted
+    private static final class Decoder {
+        private final byte[] bytes;
+        private int pos;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        long readSigned() {
+            long zigzag = readUnsigned();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+
+    // Writes a trip file row by row; rows must come in file order, as they would in the CSV
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final int maxBlockPoints;
+        private final boolean roundCoordinates;
+        private long position = HEADER_BYTES;
+        private long deliveryCount;
+        private long pointCount;
+
+        // Current block
+        private final Encoder block = new Encoder();
+        private int blockDeliveries;
+        private int blockPoints;
+        private int blockMinId;
+        private int blockMaxId;
+        private int previousId;
+
+        // Current delivery, whose point count is only known once it ends
+        private final Encoder delivery = new Encoder();
+        private boolean open;
+        private int deliveryId;
+        private int deliveryPoints;
+        private long previousLat;
+        private long previousLng;
+        private long previousTimestamp;
+
+        private final Encoder index = new Encoder();
+
+        public Writer(String path) throws IOException {
+            this(path, BLOCK_POINTS, false);
+        }
+
+        // Writer closing a block once it holds at least maxBlockPoints points; roundCoordinates accepts coordinates
+        // with more than 6 decimals and rounds them
+        public Writer(String path, int maxBlockPoints, boolean roundCoordinates) throws IOException {
+            this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.maxBlockPoints = Math.max(1, maxBlockPoints);
+            this.roundCoordinates = roundCoordinates;
+        }
+
+        // Method to append a row; a different id than the previous row starts a new delivery.
+        // Unless the writer rounds, coordinates with more than 6 decimals throw IllegalArgumentException.
+        public void add(int idDelivery, double lat, double lng, long timestamp) throws IOException {
+            long fixedLat = toFixed(lat, idDelivery);
+            long fixedLng = toFixed(lng, idDelivery);
+            if (!open || idDelivery != deliveryId) {
+                endDelivery();
+                open = true;
+                deliveryId = idDelivery;
+            }
+            delivery.writeSigned(fixedLat - previousLat);
+            delivery.writeSigned(fixedLng - previousLng);
+            delivery.writeSigned(timestamp - previousTimestamp);
+            previousLat = fixedLat;
+            previousLng = fixedLng;
+            previousTimestamp = timestamp;
+            deliveryPoints++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                endDelivery();
+                flushBlock();
+                long indexOffset = position;
+                write(ByteBuffer.wrap(index.bytes, 0, index.size));
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(deliveryCount).putLong(pointCount).putLong(indexOffset);
+                header.flip();
+                position = 0;
+                write(header);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private long toFixed(double degrees, int idDelivery) {
+            long fixed = Math.round(degrees * SCALE);
+            if (fixed / SCALE != degrees && !roundCoordinates) {
+                throw new IllegalArgumentException("Coordinate " + degrees + " of delivery " + idDelivery
+                        + " has more than 6 decimals");
+            }
+            return fixed;
+        }
+
+        // Method to move the finished delivery into the block, closing the block when it is full
+        private void endDelivery() throws IOException {
+            if (!open) {
+                return;
+            }
+            if (blockDeliveries == 0) {
+                blockMinId = deliveryId;
+                blockMaxId = deliveryId;
+            }
+            blockMinId = Math.min(blockMinId, deliveryId);
+            blockMaxId = Math.max(blockMaxId, deliveryId);
+            block.writeSigned((long) deliveryId - previousId);
+            block.writeUnsigned(deliveryPoints);
+            block.write(delivery);
+            previousId = deliveryId;
+            blockDeliveries++;
+            blockPoints += deliveryPoints;
+
+            delivery.size = 0;
+            open = false;
+            deliveryPoints = 0;
+            previousLat = 0;
+            previousLng = 0;
+            previousTimestamp = 0;
+            if (blockPoints >= maxBlockPoints) {
+                flushBlock();
+            }
+        }
+
+        // Method to write the block and its index entry
+        private void flushBlock() throws IOException {
+            if (blockDeliveries == 0) {
+                return;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(block.bytes, 0, block.size);
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+            entry.putLong(position).putInt(block.size).putInt(blockDeliveries).putInt(blockPoints)
+                    .putInt(blockMinId).putInt(blockMaxId).putInt((int) checksum.getValue());
+            index.write(entry.array(), INDEX_ENTRY_BYTES);
+
+            write(ByteBuffer.wrap(block.bytes, 0, block.size));
+            deliveryCount += blockDeliveries;
+            pointCount += blockPoints;
+            block.size = 0;
+            blockDeliveries = 0;
+            blockPoints = 0;
+            previousId = 0;
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    // Growable byte array with varint writes
+    private static final class Encoder {
+        byte[] bytes = new byte[4096];
+        int size;
+
+        void writeUnsigned(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void write(byte[] source, int length) {
+            ensure(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        void write(Encoder other) {
+            write(other.bytes, other.size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
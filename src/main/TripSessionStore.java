@@ -0,0 +1,392 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Concurrent store of the deliveries currently in progress, keyed by the primitive id_delivery.
+// The store is split into shards with their own lock, so ingest threads only contend when they update
+// deliveries of the same shard. Each shard is an open-addressing int -> FareAccumulator table (no boxing)
+// and a hashed timer wheel: a delivery sits in the wheel slot of its idle deadline, updates only record the
+// time of the last point, and when the wheel reaches the slot the delivery is either evicted (idle) or moved
+// to the slot of its new deadline. A wheel tick is 1/16 of the idle timeout, so an idle delivery is evicted
+// at most one tick after its timeout, provided expireIdle runs every tick. Evicted and completed deliveries
+// are reported to the FareListener with their final fare; the listener is called outside the shard locks.
+public class TripSessionStore implements AutoCloseable {
+
+    // Why a delivery left the store
+    public enum Reason {
+        COMPLETED,  // complete() was called for it
+        IDLE,       // no point arrived for idleTimeoutMillis
+        FLUSHED     // flush() was called, e.g. on shutdown
+    }
+
+    // Receives the final fare of every delivery that leaves the store
+    public interface FareListener {
+        void onFinalFare(FareAccumulator delivery, Reason reason);
+    }
+
+    // Slots of each timer wheel; a deadline is at most WHEEL_SLOTS / 4 ticks ahead, so slots never wrap in use
+    private static final int WHEEL_SLOTS = 64;
+    private static final int TICKS_PER_TIMEOUT = WHEEL_SLOTS / 4;
+
+    private final Shard[] shards;
+    private final int shardShift;
+    private final long idleTimeoutMillis;
+    private final long tickMillis;
+    private final FareListener listener;
+    private final LongSupplier clockMillis;
+    private ScheduledExecutorService expiryTimer;
+
+    // Creates a store on the system clock
+    public TripSessionStore(int shardCount, long idleTimeoutMillis, FareListener listener) {
+        this(shardCount, idleTimeoutMillis, listener, System::currentTimeMillis);
+    }
+
+    // Creates a store with the given clock (in milliseconds), e.g. a manual clock in tests
+    public TripSessionStore(int shardCount, long idleTimeoutMillis, FareListener listener, LongSupplier clockMillis) {
+        int shardsRoundedUp = Integer.highestOneBit(Math.max(1, Math.min(1 << 16, shardCount) * 2 - 1));
+        this.shards = new Shard[shardsRoundedUp];
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(shardsRoundedUp);
+        this.idleTimeoutMillis = Math.max(1, idleTimeoutMillis);
+        this.tickMillis = Math.max(1, this.idleTimeoutMillis / TICKS_PER_TIMEOUT);
+        this.listener = listener;
+        this.clockMillis = clockMillis;
+
+        long nowTick = clockMillis.getAsLong() / tickMillis;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(nowTick);
+        }
+    }
+
+    // Method to add a point to a delivery, opening the delivery on its first point.
+    // Returns false if the point was dropped by the speed rule.
+    public boolean accept(int idDelivery, double lat, double lng, long timestamp) {
+        int hash = hash(idDelivery);
+        Shard shard = shardOf(hash);
+        long now = clockMillis.getAsLong();
+
+        shard.lock.lock();
+        try {
+            int slot = shard.find(idDelivery, hash);
+            if (slot < 0) {
+                slot = shard.insert(idDelivery, hash, new FareAccumulator(idDelivery));
+                shard.schedule(slot, deadlineTick(now));
+            }
+            shard.lastTouched[slot] = now;
+            return shard.values[slot].accept(lat, lng, timestamp);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Method to add a point to a delivery
+    public boolean accept(DeliveryPoint point) {
+        return accept(point.idDelivery, point.lat, point.lng, point.timestamp);
+    }
+
+    // Current fare of an open delivery, NaN if the delivery is not in the store
+    public double currentFare(int idDelivery) {
+        int hash = hash(idDelivery);
+        Shard shard = shardOf(hash);
+        shard.lock.lock();
+        try {
+            int slot = shard.find(idDelivery, hash);
+            return slot < 0 ? Double.NaN : shard.values[slot].currentFare();
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    // Method to close a delivery that has finished; its final fare goes to the listener.
+    // Returns false if the delivery was not open.
+    public boolean complete(int idDelivery) {
+        int hash = hash(idDelivery);
+        Shard shard = shardOf(hash);
+        FareAccumulator removed;
+        shard.lock.lock();
+        try {
+            int slot = shard.find(idDelivery, hash);
+            if (slot < 0) {
+                return false;
+            }
+            // The timer wheel entry is dropped lazily when its slot comes up
+            removed = shard.remove(slot);
+        } finally {
+            shard.lock.unlock();
+        }
+        listener.onFinalFare(removed, Reason.COMPLETED);
+        return true;
+    }
+
+    // Method to advance the timer wheels to the current time and evict the deliveries that have gone idle.
+    // Returns the number of evicted deliveries.
+    public int expireIdle() {
+        long now = clockMillis.getAsLong();
+        int evicted = 0;
+        List<FareAccumulator> expired = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.advance(now, expired);
+            } finally {
+                shard.lock.unlock();
+            }
+
+            // Report outside the lock, so a slow listener does not block the writers of this shard
+            for (FareAccumulator delivery : expired) {
+                listener.onFinalFare(delivery, Reason.IDLE);
+            }
+            evicted += expired.size();
+            expired.clear();
+        }
+        return evicted;
+    }
+
+    // Method to evict every open delivery, reporting them as FLUSHED
+    public int flush() {
+        int flushed = 0;
+        List<FareAccumulator> removed = new ArrayList<>();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.removeAll(removed);
+            } finally {
+                shard.lock.unlock();
+            }
+            for (FareAccumulator delivery : removed) {
+                listener.onFinalFare(delivery, Reason.FLUSHED);
+            }
+            flushed += removed.size();
+            removed.clear();
+        }
+        return flushed;
+    }
+
+    // Method to run expireIdle once per wheel tick on a daemon thread
+    public synchronized void startExpiryTimer() {
+        if (expiryTimer == null) {
+            expiryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "trip-session-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            expiryTimer.scheduleAtFixedRate(this::expireIdle, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Method to stop the expiry timer; open deliveries stay in the store (see flush)
+    @Override
+    public synchronized void close() {
+        if (expiryTimer != null) {
+            expiryTimer.shutdownNow();
+            expiryTimer = null;
+        }
+    }
+
+    // Number of open deliveries
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                size += shard.size;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    private long deadlineTick(long lastTouched) {
+        // Round up, so a delivery is never evicted before it has been idle for idleTimeoutMillis
+        return (lastTouched + idleTimeoutMillis + tickMillis - 1) / tickMillis;
+    }
+
+    private Shard shardOf(int hash) {
+        return shards.length == 1 ? shards[0] : shards[hash >>> shardShift];
+    }
+
+    // Method to spread consecutive ids over shards and table slots (murmur3 finalizer)
+    private static int hash(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    // One shard: an open-addressing table with linear probing, plus its timer wheel
+    private final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+
+        // Table columns; a slot is free when its value is null
+        int[] keys = new int[16];
+        FareAccumulator[] values = new FareAccumulator[16];
+        long[] lastTouched = new long[16];
+        long[] dueTicks = new long[16];
+        int size;
+
+        // Timer wheel: the ids due in each slot
+        final int[][] wheel = new int[WHEEL_SLOTS][];
+        final int[] wheelSizes = new int[WHEEL_SLOTS];
+        long currentTick;
+
+        Shard(long nowTick) {
+            this.currentTick = nowTick;
+            for (int i = 0; i < WHEEL_SLOTS; i++) {
+                wheel[i] = new int[4];
+            }
+        }
+
+        int find(int key, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int insert(int key, int hash, FareAccumulator value) {
+            // Keep the table at most half full, so probe sequences stay short
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+            return slot;
+        }
+
+        // Removes the entry and shifts later entries of the probe sequence back, so no tombstones are needed
+        FareAccumulator remove(int slot) {
+            FareAccumulator removed = values[slot];
+            int mask = keys.length - 1;
+            int free = slot;
+            int next = (free + 1) & mask;
+            while (values[next] != null) {
+                int home = hash(keys[next]) & mask;
+                // Move the entry if the free slot lies between its home slot and its current slot
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    move(next, free);
+                    free = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[free] = null;
+            size--;
+            return removed;
+        }
+
+        void removeAll(List<FareAccumulator> removed) {
+            for (int slot = 0; slot < values.length; slot++) {
+                if (values[slot] != null) {
+                    removed.add(values[slot]);
+                    values[slot] = null;
+                }
+            }
+            size = 0;
+            Arrays.fill(wheelSizes, 0);
+        }
+
+        void schedule(int slot, long dueTick) {
+            dueTicks[slot] = dueTick;
+            int wheelSlot = (int) (dueTick & (WHEEL_SLOTS - 1));
+            if (wheelSizes[wheelSlot] == wheel[wheelSlot].length) {
+                wheel[wheelSlot] = Arrays.copyOf(wheel[wheelSlot], wheelSizes[wheelSlot] * 2);
+            }
+            wheel[wheelSlot][wheelSizes[wheelSlot]++] = keys[slot];
+        }
+
+        // Method to process every wheel slot from the last processed tick up to now
+        void advance(long now, List<FareAccumulator> expired) {
+            long nowTick = now / tickMillis;
+            // After a long pause every slot is visited once
+            long fromTick = Math.max(currentTick + 1, nowTick - WHEEL_SLOTS + 1);
+            for (long tick = fromTick; tick <= nowTick; tick++) {
+                processSlot((int) (tick & (WHEEL_SLOTS - 1)), now, nowTick, expired);
+            }
+            currentTick = Math.max(currentTick, nowTick);
+        }
+
+        private void processSlot(int wheelSlot, long now, long nowTick, List<FareAccumulator> expired) {
+            int[] ids = wheel[wheelSlot];
+            int count = wheelSizes[wheelSlot];
+            wheelSizes[wheelSlot] = 0;
+
+            for (int i = 0; i < count; i++) {
+                int id = ids[i];
+                int slot = find(id, hash(id));
+                if (slot < 0 || (dueTicks[slot] & (WHEEL_SLOTS - 1)) != wheelSlot) {
+                    // Completed meanwhile, or a stale entry of an earlier delivery with the same id
+                    continue;
+                }
+                if (dueTicks[slot] > nowTick) {
+                    // Due in a later turn of the wheel; keep it in this slot
+                    ids[wheelSizes[wheelSlot]++] = id;
+                    continue;
+                }
+
+                long deadline = deadlineTick(lastTouched[slot]);
+                if (deadline <= nowTick) {
+                    expired.add(remove(slot));
+                } else {
+                    // Touched since it was scheduled: move it to the slot of its new deadline
+                    schedule(slot, deadline);
+                }
+            }
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            values[to] = values[from];
+            lastTouched[to] = lastTouched[from];
+            dueTicks[to] = dueTicks[from];
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            FareAccumulator[] oldValues = values;
+            long[] oldLastTouched = lastTouched;
+            long[] oldDueTicks = dueTicks;
+
+            keys = new int[capacity];
+            values = new FareAccumulator[capacity];
+            lastTouched = new long[capacity];
+            dueTicks = new long[capacity];
+            size = 0;
+
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    lastTouched[slot] = oldLastTouched[i];
+                    dueTicks[slot] = oldDueTicks[i];
+                    size++;
+                }
+            }
+        }
+    }
+}
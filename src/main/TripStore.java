@@ -0,0 +1,215 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Columnar (struct-of-arrays) storage for deliveries: the points of all deliveries live in parallel
+// lat/lng/timestamp arrays, and every delivery is an id plus an offset and length into them.
+// Consecutive rows with the same id_delivery form one delivery, like in the streaming mode.
+public class TripStore {
+
+    private static final int INITIAL_POINTS = 1024;
+    private static final int INITIAL_DELIVERIES = 64;
+
+    // Per point columns
+    private double[] lats = new double[INITIAL_POINTS];
+    private double[] lngs = new double[INITIAL_POINTS];
+    private long[] timestamps = new long[INITIAL_POINTS];
+    private int pointCount;
+
+    // Per delivery columns
+    private int[] deliveryIds = new int[INITIAL_DELIVERIES];
+    private int[] offsets = new int[INITIAL_DELIVERIES];
+    private int[] lengths = new int[INITIAL_DELIVERIES];
+    private int deliveryCount;
+
+    public TripStore() {
+    }
+
+    // Store over already filled columns, e.g. decoded by TripFile; the arrays are used as they are
+    TripStore(double[] lats, double[] lngs, long[] timestamps, int pointCount,
+              int[] deliveryIds, int[] offsets, int[] lengths, int deliveryCount) {
+        this.lats = lats;
+        this.lngs = lngs;
+        this.timestamps = timestamps;
+        this.pointCount = pointCount;
+        this.deliveryIds = deliveryIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.deliveryCount = deliveryCount;
+    }
+
+    // Method to load a CSV file straight into the columns, without DeliveryPoint objects; a TripFile is decoded
+    public static TripStore load(String filePath) throws IOException {
+        if (TripFile.isTripFile(filePath)) {
+            return TripFile.load(filePath);
+        }
+        TripStore store = new TripStore();
+        MappedCsvReader.forEachRow(filePath, store::add);
+        return store;
+    }
+
+    // Method to build a store from already loaded points
+    public static TripStore fromPoints(List<DeliveryPoint> points) {
+        TripStore store = new TripStore();
+        for (DeliveryPoint point : points) {
+            store.add(point.idDelivery, point.lat, point.lng, point.timestamp);
+        }
+        return store;
+    }
+
+    // Method to append a point; a different id than the previous point starts a new delivery
+    public void add(int idDelivery, double lat, double lng, long timestamp) {
+        if (pointCount == lats.length) {
+            int capacity = lats.length * 2;
+            lats = Arrays.copyOf(lats, capacity);
+            lngs = Arrays.copyOf(lngs, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        lats[pointCount] = lat;
+        lngs[pointCount] = lng;
+        timestamps[pointCount] = timestamp;
+
+        if (deliveryCount == 0 || deliveryIds[deliveryCount - 1] != idDelivery) {
+            if (deliveryCount == deliveryIds.length) {
+                int capacity = deliveryIds.length * 2;
+                deliveryIds = Arrays.copyOf(deliveryIds, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            deliveryIds[deliveryCount] = idDelivery;
+            offsets[deliveryCount] = pointCount;
+            lengths[deliveryCount] = 0;
+            deliveryCount++;
+        }
+        lengths[deliveryCount - 1]++;
+        pointCount++;
+    }
+
+    // Method to filter the invalid points of a delivery in place; the delivery keeps only its valid points
+    public void filterInvalidPoints(int delivery) {
+        lengths[delivery] = DeliveryFareEstimation.filterInvalidPoints(lats, lngs, timestamps, offsets[delivery], lengths[delivery]);
+    }
+
+    // Method to drop the points outside the area [minLat, maxLat] x [minLng, maxLng] from every delivery with
+    // AreaFilter, e.g. before filterInvalidPoints; returns the number of points dropped
+    public long dropOutsideArea(double minLat, double minLng, double maxLat, double maxLng) {
+        long dropped = 0;
+        for (int delivery = 0; delivery < deliveryCount; delivery++) {
+            int kept = AreaFilter.filter(lats, lngs, timestamps, offsets[delivery], lengths[delivery], minLat, minLng, maxLat, maxLng);
+            dropped += lengths[delivery] - kept;
+            lengths[delivery] = kept;
+        }
+        return dropped;
+    }
+
+    // Method to calculate the fare of a delivery from its (filtered) points
+    public double calculateFare(int delivery) {
+        return DeliveryFareEstimation.calculateFare(lats, lngs, timestamps, offsets[delivery], lengths[delivery]);
+    }
+
+    // Method to filter and price a delivery in one pass without modifying its points
+    public double priceDelivery(int delivery) {
+        return DeliveryFareEstimation.priceDelivery(lats, lngs, timestamps, offsets[delivery], lengths[delivery]);
+    }
+
+    // Method to price every delivery with SegmentKernel: all consecutive distances and speeds of a delivery are
+    // computed in one pass (vectorized when the Vector API is available) and then fed to the filter and the fare
+    public double[] priceAll() {
+        double[] fares = new double[deliveryCount];
+        priceRange(0, deliveryCount, fares);
+        return fares;
+    }
+
+    // Method to price the deliveries [from, to) like priceAll into fares[from, to); ranges that do not overlap can
+    // be priced concurrently
+    public void priceRange(int from, int to, double[] fares) {
+        int longest = 0;
+        for (int delivery = from; delivery < to; delivery++) {
+            longest = Math.max(longest, lengths[delivery]);
+        }
+        double[] distances = new double[longest];
+        double[] speeds = new double[longest];
+
+        Tariff tariff = TariffRegistry.current();
+        for (int delivery = from; delivery < to; delivery++) {
+            int offset = offsets[delivery];
+            int length = lengths[delivery];
+            SegmentKernel.segments(lats, lngs, timestamps, offset, length, distances, speeds);
+            fares[delivery] = DeliveryFareEstimation.priceDelivery(tariff, lats, lngs, timestamps, offset, length,
+                    distances, speeds);
+        }
+    }
+
+    // Method to get a store with one delivery per id_delivery, as the batch mode groups them: the runs of an id
+    // are joined in input order and deliveries left without points are dropped. Returns this store when every id
+    // already has one non-empty run.
+    public TripStore groupedById() {
+        Map<Integer, List<Integer>> runs = new LinkedHashMap<>();
+        boolean grouped = true;
+        for (int delivery = 0; delivery < deliveryCount; delivery++) {
+            List<Integer> idRuns = runs.computeIfAbsent(deliveryIds[delivery], k -> new ArrayList<>());
+            idRuns.add(delivery);
+            grouped &= idRuns.size() == 1 && lengths[delivery] > 0;
+        }
+        if (grouped) {
+            return this;
+        }
+        TripStore store = new TripStore();
+        for (List<Integer> idRuns : runs.values()) {
+            for (int delivery : idRuns) {
+                for (int i = offsets[delivery]; i < offsets[delivery] + lengths[delivery]; i++) {
+                    store.add(deliveryIds[delivery], lats[i], lngs[i], timestamps[i]);
+                }
+            }
+        }
+        return store;
+    }
+
+    // Method to trim the columns to their used size once loading is done
+    public void trimToSize() {
+        lats = Arrays.copyOf(lats, pointCount);
+        lngs = Arrays.copyOf(lngs, pointCount);
+        timestamps = Arrays.copyOf(timestamps, pointCount);
+        deliveryIds = Arrays.copyOf(deliveryIds, deliveryCount);
+        offsets = Arrays.copyOf(offsets, deliveryCount);
+        lengths = Arrays.copyOf(lengths, deliveryCount);
+    }
+
+    public int deliveryCount() {
+        return deliveryCount;
+    }
+
+    public int pointCount() {
+        return pointCount;
+    }
+
+    public int deliveryId(int delivery) {
+        return deliveryIds[delivery];
+    }
+
+    public int offset(int delivery) {
+        return offsets[delivery];
+    }
+
+    public int length(int delivery) {
+        return lengths[delivery];
+    }
+
+    // The columns are shared, not copied; points of delivery d are at [offset(d), offset(d) + length(d))
+    public double[] lats() {
+        return lats;
+    }
+
+    public double[] lngs() {
+        return lngs;
+    }
+
+    public long[] timestamps() {
+        return timestamps;
+    }
+}
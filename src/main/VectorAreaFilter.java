@@ -0,0 +1,63 @@
+package main;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API implementation of AreaFilter; only loaded by name from AreaFilter. Every step compares a vector of
+// points with the area and compresses the inside lanes to the write position. A full vector is stored there, but
+// the write position never passes the lanes just read, so only already consumed entries are overwritten.
+// The tail is scalar.
+final class VectorAreaFilter implements AreaFilter.Implementation {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+
+    @Override
+    public int filter(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                      double minLat, double minLng, double maxLat, double maxLng) {
+        int lanes = DOUBLES.length();
+        int end = offset + length;
+        int kept = offset;
+        int i = offset;
+        for (; i + lanes <= end; i += lanes) {
+            DoubleVector lat = DoubleVector.fromArray(DOUBLES, lats, i);
+            DoubleVector lng = DoubleVector.fromArray(DOUBLES, lngs, i);
+            VectorMask<Double> inside = lat.compare(VectorOperators.GE, minLat)
+                    .and(lat.compare(VectorOperators.LE, maxLat))
+                    .and(lng.compare(VectorOperators.GE, minLng))
+                    .and(lng.compare(VectorOperators.LE, maxLng));
+
+            if (inside.allTrue()) {
+                // The common case: nothing to drop, only to move if earlier points were dropped
+                if (kept != i) {
+                    lat.intoArray(lats, kept);
+                    lng.intoArray(lngs, kept);
+                    LongVector.fromArray(LONGS, timestamps, i).intoArray(timestamps, kept);
+                }
+                kept += lanes;
+                continue;
+            }
+            int count = inside.trueCount();
+            if (count > 0) {
+                lat.compress(inside).intoArray(lats, kept);
+                lng.compress(inside).intoArray(lngs, kept);
+                LongVector.fromArray(LONGS, timestamps, i).compress(inside.cast(LONGS)).intoArray(timestamps, kept);
+                kept += count;
+            }
+        }
+        for (; i < end; i++) {
+            double lat = lats[i];
+            double lng = lngs[i];
+            if (lat >= minLat && lat <= maxLat && lng >= minLng && lng <= maxLng) {
+                lats[kept] = lat;
+                lngs[kept] = lng;
+                timestamps[kept] = timestamps[i];
+                kept++;
+            }
+        }
+        return kept - offset;
+    }
+}
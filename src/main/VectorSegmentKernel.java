@@ -0,0 +1,77 @@
+package main;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API implementation of SegmentKernel; compiled and run with --add-modules jdk.incubator.vector and only
+// loaded by name from SegmentKernel. It performs the operations of DistanceCalculator.haversine lane-wise, in the
+// same order, with the library's vector sin/cos/atan2 (within about 1 ulp of Math). Three passes over the delivery:
+// cos(lat) of every point (kept in speeds), the distances, then the speeds; the tail of each pass is scalar.
+final class VectorSegmentKernel implements SegmentKernel.Implementation {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+
+    private static final double DEGREES_TO_RADIANS = Math.toRadians(1);
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    @Override
+    public void segments(double[] lats, double[] lngs, long[] timestamps, int offset, int length,
+                         double[] distances, double[] speeds) {
+        if (length == 0) {
+            return;
+        }
+        int lanes = DOUBLES.length();
+
+        // Pass 1: cos(lat) of every point, stored in speeds until pass 3 overwrites it
+        int k = 0;
+        for (; k + lanes <= length; k += lanes) {
+            DoubleVector.fromArray(DOUBLES, lats, offset + k).mul(DEGREES_TO_RADIANS)
+                    .lanewise(VectorOperators.COS).intoArray(speeds, k);
+        }
+        for (; k < length; k++) {
+            speeds[k] = Math.cos(Math.toRadians(lats[offset + k]));
+        }
+
+        // Pass 2: haversine from point k - 1 to point k
+        distances[0] = 0;
+        k = 1;
+        for (; k + lanes <= length; k += lanes) {
+            int i = offset + k;
+            DoubleVector lat1 = DoubleVector.fromArray(DOUBLES, lats, i - 1);
+            DoubleVector lat2 = DoubleVector.fromArray(DOUBLES, lats, i);
+            DoubleVector lng1 = DoubleVector.fromArray(DOUBLES, lngs, i - 1);
+            DoubleVector lng2 = DoubleVector.fromArray(DOUBLES, lngs, i);
+            DoubleVector cosLat1 = DoubleVector.fromArray(DOUBLES, speeds, k - 1);
+            DoubleVector cosLat2 = DoubleVector.fromArray(DOUBLES, speeds, k);
+
+            DoubleVector sinLat = lat2.sub(lat1).mul(DEGREES_TO_RADIANS).div(2).lanewise(VectorOperators.SIN);
+            DoubleVector sinLon = lng2.sub(lng1).mul(DEGREES_TO_RADIANS).div(2).lanewise(VectorOperators.SIN);
+            DoubleVector a = sinLat.mul(sinLat).add(cosLat1.mul(cosLat2).mul(sinLon).mul(sinLon));
+            DoubleVector c = a.sqrt().lanewise(VectorOperators.ATAN2, a.neg().add(1).sqrt()).mul(2);
+            c.mul(EARTH_RADIUS_KM).intoArray(distances, k);
+        }
+        for (; k < length; k++) {
+            int i = offset + k;
+            distances[k] = DistanceCalculator.haversine(lats[i - 1], lngs[i - 1], speeds[k - 1], lats[i], lngs[i], speeds[k]);
+        }
+
+        // Pass 3: speed in km/h, 0 when both timestamps are equal
+        speeds[0] = 0;
+        k = 1;
+        for (; k + lanes <= length; k += lanes) {
+            int i = offset + k;
+            LongVector seconds = LongVector.fromArray(LONGS, timestamps, i).sub(LongVector.fromArray(LONGS, timestamps, i - 1));
+            DoubleVector hours = ((DoubleVector) seconds.convert(VectorOperators.L2D, 0)).div(3600.0);
+            VectorMask<Double> still = hours.eq(0);
+            DoubleVector.fromArray(DOUBLES, distances, k).div(hours).blend(0, still).intoArray(speeds, k);
+        }
+        for (; k < length; k++) {
+            int i = offset + k;
+            speeds[k] = DistanceCalculator.speed(distances[k], timestamps[i - 1], timestamps[i]);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package main;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.List;
+
+// Offsets of a time zone as a table of transition instants, so the offset of an epoch second is found with a
+// binary search over two primitive arrays instead of a ZoneRules lookup that creates Instant and ZoneOffset objects.
+// Transitions are precomputed up to TABLE_END; later instants of zones that still change their clocks every year
+// fall back to ZoneRules.
+public class ZoneOffsetTable {
+
+    // 2100-01-01T00:00:00Z
+    private static final long TABLE_END = 4102444800L;
+
+    private final ZoneRules rules;
+    private final long[] transitions;    // epoch second at which offsets[i + 1] starts
+    private final int[] offsets;         // offsets[0] applies before the first transition
+    private final boolean recurring;     // true if the zone keeps changing after the table ends
+
+    public ZoneOffsetTable(ZoneId zoneId) {
+        this.rules = zoneId.getRules();
+        this.recurring = !rules.getTransitionRules().isEmpty();
+
+        List<ZoneOffsetTransition> history = rules.getTransitions();
+        Instant cursor = history.isEmpty() ? Instant.ofEpochSecond(0) : history.get(0).getInstant().minusSeconds(1);
+
+        long[] transitionList = new long[16];
+        int[] offsetList = new int[17];
+        offsetList[0] = rules.getOffset(cursor).getTotalSeconds();
+        int count = 0;
+
+        ZoneOffsetTransition transition = rules.nextTransition(cursor);
+        while (transition != null && transition.toEpochSecond() < TABLE_END) {
+            if (count == transitionList.length) {
+                transitionList = Arrays.copyOf(transitionList, count * 2);
+                offsetList = Arrays.copyOf(offsetList, count * 2 + 1);
+            }
+            transitionList[count] = transition.toEpochSecond();
+            offsetList[count + 1] = transition.getOffsetAfter().getTotalSeconds();
+            count++;
+            transition = rules.nextTransition(transition.getInstant());
+        }
+
+        this.transitions = Arrays.copyOf(transitionList, count);
+        this.offsets = Arrays.copyOf(offsetList, count + 1);
+    }
+
+    // Method to get the offset from UTC (in seconds) in effect at the given epoch second
+    public int offsetSeconds(long epochSecond) {
+        int count = transitions.length;
+        // Common case: after the last transition (Asia/Tehran has no DST since 2022)
+        if (count == 0 || epochSecond >= transitions[count - 1]) {
+            if (recurring && epochSecond >= TABLE_END) {
+                return rules.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+            }
+            return offsets[count];
+        }
+
+        // Number of transitions at or before epochSecond
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (transitions[mid] <= epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return offsets[low];
+    }
+
+    // Method to convert an epoch second to local seconds, i.e. the epoch second of the same local date-time in UTC
+    public long toLocalSeconds(long epochSecond) {
+        return epochSecond + offsetSeconds(epochSecond);
+    }
+}